@@ -1,7 +1,13 @@
 package tuomaan.pdftest;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Stores a time in 30 hour clock format.
+ * <p>
+ * The time is stored as minutes after midnight. The static methods work on that packed int form
+ * directly, so times can be kept as primitives and parsed and formatted without creating any
+ * objects.
  */
 /*
  * Version 0.1 (2017-12-19)
@@ -11,21 +17,152 @@ public class HSLTime {
 
     int minsAfterMidnight = 0;
 
+    public HSLTime() {
+    }
+
+    /**
+     * Creates a time from minutes after midnight.
+     * @param minsAfterMidnight The minutes after midnight.
+     */
+    public HSLTime(int minsAfterMidnight) {
+        this.minsAfterMidnight = minsAfterMidnight;
+    }
+
     /** Sets the time. It should be given in a string format so that it is formatted
      * "hh:mm" or "h:mm". 30 hour clock is used. */
     public void setHhmmS(String startTime) {
-        int hours = Integer.parseInt(startTime.substring(0, startTime.indexOf(":")));
-        int mins = Integer.parseInt(startTime.substring(startTime.indexOf(":")+1));
-        this.minsAfterMidnight = hours*60 + mins;
+        this.minsAfterMidnight = parseMinutes(startTime, 0, startTime.length());
     }
 
     /** Gets the starting time. It is returned as a string, which is formatted either "h:mm" or
      * "hh:mm". 30 hour clock is used. */
     public String getHhmmS() {
-        int hours = this.minsAfterMidnight / 60;
-        int mins = this.minsAfterMidnight % 60;
-        return String.format("%d:%02d", hours, mins);
+        StringBuilder sb = new StringBuilder(5);
+        appendHhmm(minsAfterMidnight, sb);
+        return sb.toString();
+    }
+
+    public int getMinutes() {
+        return minsAfterMidnight;
+    }
+
+    public void setMinutes(int minsAfterMidnight) {
+        this.minsAfterMidnight = minsAfterMidnight;
     }
 
+    /**
+     * Parses a time formatted "hh:mm" or "h:mm" from a part of a character sequence.
+     * @param text The character sequence.
+     * @param start The index of the first character, inclusive.
+     * @param end The index of the last character, exclusive.
+     * @return The time in minutes after midnight.
+     * @throws NumberFormatException If the text isn't a time.
+     */
+    public static int parseMinutes(CharSequence text, int start, int end) {
+        int colon = start;
+        while (colon < end && text.charAt(colon) != ':') {
+            colon++;
+        }
+        int hours = 0;
+        int mins = 0;
+        for (int i=start; i < end; i++) {
+            int digit = text.charAt(i) - '0';
+            if (i == colon) {
+                continue;
+            } else if (digit < 0 || digit > 9) {
+                throw notATime(text.subSequence(start, end));
+            } else if (i < colon) {
+                hours = hours*10 + digit;
+            } else {
+                mins = mins*10 + digit;
+            }
+        }
+        if (colon == start || colon >= end - 1) {
+            throw notATime(text.subSequence(start, end));
+        }
+        return hours*60 + mins;
+    }
+
+    /**
+     * Parses a time formatted "hh:mm" or "h:mm" from a part of a byte array. The bytes are ASCII.
+     * @param bytes The byte array.
+     * @param start The index of the first byte, inclusive.
+     * @param end The index of the last byte, exclusive.
+     * @return The time in minutes after midnight.
+     * @throws NumberFormatException If the bytes aren't a time.
+     */
+    public static int parseMinutes(byte[] bytes, int start, int end) {
+        int colon = start;
+        while (colon < end && bytes[colon] != ':') {
+            colon++;
+        }
+        int hours = 0;
+        int mins = 0;
+        for (int i=start; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (i == colon) {
+                continue;
+            } else if (digit < 0 || digit > 9) {
+                throw notATime(new String(bytes, start, end - start, StandardCharsets.ISO_8859_1));
+            } else if (i < colon) {
+                hours = hours*10 + digit;
+            } else {
+                mins = mins*10 + digit;
+            }
+        }
+        if (colon == start || colon >= end - 1) {
+            throw notATime(new String(bytes, start, end - start, StandardCharsets.ISO_8859_1));
+        }
+        return hours*60 + mins;
+    }
+
+    private static NumberFormatException notATime(CharSequence text) {
+        return new NumberFormatException("Not a time: \"" + text + "\"");
+    }
+
+    /**
+     * Appends a time formatted "h:mm" or "hh:mm" to a StringBuilder.
+     * @param minsAfterMidnight The time in minutes after midnight.
+     * @param sb The StringBuilder.
+     */
+    public static void appendHhmm(int minsAfterMidnight, StringBuilder sb) {
+        if (minsAfterMidnight < 0) {
+            sb.append('-');
+            minsAfterMidnight = -minsAfterMidnight;
+        }
+        int mins = minsAfterMidnight % 60;
+        sb.append(minsAfterMidnight / 60).append(':');
+        sb.append((char) ('0' + mins / 10)).append((char) ('0' + mins % 10));
+    }
+
+    /**
+     * Writes a time formatted "h:mm" or "hh:mm" to a byte array as ASCII. There must be room for
+     * at least 12 bytes.
+     * @param minsAfterMidnight The time in minutes after midnight.
+     * @param bytes The byte array.
+     * @param offset The index, where the first byte is written.
+     * @return The index after the last byte written.
+     */
+    public static int formatHhmm(int minsAfterMidnight, byte[] bytes, int offset) {
+        if (minsAfterMidnight < 0) {
+            bytes[offset++] = '-';
+            minsAfterMidnight = -minsAfterMidnight;
+        }
+        int hours = minsAfterMidnight / 60;
+        int mins = minsAfterMidnight % 60;
+        int digits = 1;
+        for (int h = hours; h >= 10; h /= 10) {
+            digits++;
+        }
+        for (int i=offset+digits-1; i >= offset; i--) {
+            bytes[i] = (byte) ('0' + hours % 10);
+            hours /= 10;
+        }
+        offset += digits;
+        bytes[offset++] = ':';
+        bytes[offset++] = (byte) ('0' + mins / 10);
+        bytes[offset++] = (byte) ('0' + mins % 10);
+        return offset;
+    }
 
 }
@@ -12,11 +12,12 @@ public class HelBDutyItem {
      * log PDF-files. */
     public String dutyType = "";
 
-    /** The starting time of this duty item. */
-    public HSLTime startTime = new HSLTime();
+    /** The starting time of this duty item in minutes after midnight. It is kept as a primitive,
+     * and getStartTime gives it as an HSLTime. */
+    public int startMinutes = 0;
 
-    /** The ending time of this duty item. */
-    public HSLTime endTime = new HSLTime();
+    /** The ending time of this duty item in minutes after midnight. */
+    public int endMinutes = 0;
 
     /** The starting place. It is stored as it is written in the duty log files. */
     public String startPlace = "";
@@ -38,18 +39,40 @@ public class HelBDutyItem {
      * duty log PDF file. */
     public int direction = -1;
 
+    public HSLTime getStartTime() {
+        return new HSLTime(startMinutes);
+    }
+
+    public void setStartTime(HSLTime startTime) {
+        startMinutes = startTime.getMinutes();
+    }
+
+    public HSLTime getEndTime() {
+        return new HSLTime(endMinutes);
+    }
+
+    public void setEndTime(HSLTime endTime) {
+        endMinutes = endTime.getMinutes();
+    }
+
     @Override
     public String toString() {
         return String.format(
                 "%-30s %5s %-30s s %-2d - %5s %-30s (vuoro %d, linjat %s)",
                 dutyType,
-                startTime.getHhmmS(),
+                hhmm(startMinutes),
                 startPlace,
                 direction,
-                endTime.getHhmmS(),
+                hhmm(endMinutes),
                 endPlace,
                 block,
                 routes);
     }
 
+    private static String hhmm(int minutes) {
+        StringBuilder sb = new StringBuilder(5);
+        HSLTime.appendHhmm(minutes, sb);
+        return sb.toString();
+    }
+
 }
@@ -20,4 +20,12 @@ public class HelBDutyList {
         list.clear();
     }
 
+    public int size() {
+        return list.size();
+    }
+
+    public HelBDuty get(int index) {
+        return list.get(index);
+    }
+
 }
@@ -0,0 +1,301 @@
+package tuomaan.pdftest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Reads a duty list from a binary file written by HelBDutyListBinaryWriter. The file is mapped
+ * to memory, and nothing is read until it is asked for. Duties and items are accessed by their
+ * index through the getXxx-methods, which read the fixed-width records directly from the mapped
+ * file. Strings are decoded on first use and then kept.
+ * <p>
+ * read turns the whole file into a HelBDutyList, where the old classes are needed. asList gives
+ * a HelBDutyList too, but one which reads each duty from the file only when it is asked for.
+ * <p>
+ * The constructor checks that the parts of the file fit in it. The records themselves are
+ * checked only when they are read, and a broken one gives an UncheckedIOException. validate
+ * checks all records at once, so that a file can be trusted before it is handed out as a view.
+ */
+public class HelBDutyListBinaryReader extends HelBDutyListReader {
+
+    private final ByteBuffer data;
+
+    private final int dutyCount;
+    private final int itemCount;
+    private final int stringCount;
+    private final int dutyIndexOffset;
+    private final int itemsOffset;
+    private final int stringTableOffset;
+    private final int stringDataOffset;
+
+    private final String[] strings;
+
+    /**
+     * Opens a file and checks its header.
+     * @param file The file.
+     * @throws IOException If the file can't be read, it isn't a duty list file of a supported
+     *                     version, or its parts don't fit in it.
+     */
+    public HelBDutyListBinaryReader(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+        if (data.capacity() < HelBDutyListBinaryWriter.HEADER_SIZE
+                || data.getInt(0) != HelBDutyListBinaryWriter.MAGIC) {
+            throw new IOException("Not a duty list file.");
+        }
+        if (data.getInt(4) != HelBDutyListBinaryWriter.VERSION) {
+            throw new IOException("Unsupported duty list file version " + data.getInt(4) + ".");
+        }
+        dutyCount = data.getInt(8);
+        itemCount = data.getInt(12);
+        stringCount = data.getInt(16);
+        dutyIndexOffset = data.getInt(20);
+        itemsOffset = data.getInt(24);
+        stringTableOffset = data.getInt(28);
+        if (!fits(dutyIndexOffset, dutyCount, HelBDutyListBinaryWriter.DUTY_RECORD_SIZE)
+                || !fits(itemsOffset, itemCount, HelBDutyListBinaryWriter.ITEM_RECORD_SIZE)
+                || !fits(stringTableOffset, stringCount, 4)
+                || dutyIndexOffset < HelBDutyListBinaryWriter.HEADER_SIZE
+                || itemsOffset < HelBDutyListBinaryWriter.HEADER_SIZE
+                || stringTableOffset < HelBDutyListBinaryWriter.HEADER_SIZE) {
+            throw broken();
+        }
+        stringDataOffset = stringTableOffset + 4 * stringCount;
+        // The string data is the last part, so a cut file is noticed by its end.
+        int stringDataLength = stringCount == 0 ? 0 : data.getInt(stringDataOffset - 4);
+        if (stringDataLength < 0 || (long) stringDataOffset + stringDataLength > data.capacity()) {
+            throw broken();
+        }
+        strings = new String[stringCount];
+    }
+
+    /**
+     * Tells whether a part of the file with count records of a size starting from an offset
+     * fits in the file. The numbers come from the file, so they are checked as longs.
+     */
+    private boolean fits(int offset, int count, int recordSize) {
+        return offset >= 0 && count >= 0 && (long) offset + (long) count * recordSize <= data.capacity();
+    }
+
+    private static IOException broken() {
+        return new IOException("Broken duty list file.");
+    }
+
+    /**
+     * Checks all records of the file: the items of each duty must be among the items, each string
+     * id must be in the string table, and the strings must be in the file one after another.
+     * @throws IOException If the file is broken.
+     */
+    public void validate() throws IOException {
+        int end = 0;
+        for (int id=0; id < stringCount; id++) {
+            int start = end;
+            end = data.getInt(stringTableOffset + 4 * id);
+            if (end < start || (long) stringDataOffset + end > data.capacity()) {
+                throw broken();
+            }
+        }
+        for (int d=0; d < dutyCount; d++) {
+            int first = getFirstItem(d);
+            int count = getItemCount(d);
+            if (first < 0 || count < 0 || (long) first + count > itemCount
+                    || !isStringId(data.getInt(dutyRecord(d)))) {
+                throw broken();
+            }
+        }
+        for (int i=0; i < itemCount; i++) {
+            if (!isStringId(getDutyTypeId(i)) || !isStringId(getStartPlaceId(i))
+                    || !isStringId(getEndPlaceId(i)) || !isStringId(getRoutesId(i))) {
+                throw broken();
+            }
+        }
+    }
+
+    private boolean isStringId(int id) {
+        return id >= HelBDutyListBinaryWriter.NO_STRING && id < stringCount;
+    }
+
+    /**
+     * Returns the number of duties.
+     * @return The number of duties.
+     */
+    public int dutyCount() {
+        return dutyCount;
+    }
+
+    /**
+     * Returns the number of duty items in all duties.
+     * @return The number of duty items.
+     */
+    public int itemCount() {
+        return itemCount;
+    }
+
+    private int dutyRecord(int duty) {
+        return dutyIndexOffset + duty * HelBDutyListBinaryWriter.DUTY_RECORD_SIZE;
+    }
+
+    private int itemRecord(int item) {
+        return itemsOffset + item * HelBDutyListBinaryWriter.ITEM_RECORD_SIZE;
+    }
+
+    public String getDutyId(int duty) { return getString(data.getInt(dutyRecord(duty))); }
+
+    /**
+     * Returns the date of a duty.
+     * @param duty The index of the duty.
+     * @return The date, or null if the duty had no date.
+     */
+    public Date getDutyDate(int duty) {
+        long millis = data.getLong(dutyRecord(duty) + 4);
+        return millis == HelBDutyListBinaryWriter.NO_DATE ? null : new Date(millis);
+    }
+
+    /**
+     * Returns the index of the first item of a duty. The items of a duty are one after another.
+     * @param duty The index of the duty.
+     * @return The index of the first item.
+     */
+    public int getFirstItem(int duty) { return data.getInt(dutyRecord(duty) + 12); }
+
+    public int getItemCount(int duty) { return data.getInt(dutyRecord(duty) + 16); }
+
+    public int getStartMinutes(int item) { return data.getInt(itemRecord(item)) >> 16; }
+    public int getEndMinutes(int item) { return (short) data.getInt(itemRecord(item)); }
+    public int getBlock(int item) { return data.getInt(itemRecord(item) + 4); }
+    public int getDirection(int item) { return data.getShort(itemRecord(item) + 8); }
+
+    public int getDutyTypeId(int item) { return data.getInt(itemRecord(item) + 12); }
+    public int getStartPlaceId(int item) { return data.getInt(itemRecord(item) + 16); }
+    public int getEndPlaceId(int item) { return data.getInt(itemRecord(item) + 20); }
+    public int getRoutesId(int item) { return data.getInt(itemRecord(item) + 24); }
+
+    public String getDutyType(int item) { return getString(getDutyTypeId(item)); }
+    public String getStartPlace(int item) { return getString(getStartPlaceId(item)); }
+    public String getEndPlace(int item) { return getString(getEndPlaceId(item)); }
+    public String getRoutes(int item) { return getString(getRoutesId(item)); }
+
+    /**
+     * Returns a string from the string table. Equal strings have the same id, so the ids can be
+     * compared instead of the strings.
+     * @param id The id of the string.
+     * @return The string, or null if the id is -1.
+     * @throws UncheckedIOException If the id or the string is broken.
+     */
+    public String getString(int id) {
+        if (id == HelBDutyListBinaryWriter.NO_STRING) {
+            return null;
+        }
+        if (!isStringId(id)) {
+            throw new UncheckedIOException(broken());
+        }
+        String string = strings[id];
+        if (string == null) {
+            int start = id == 0 ? 0 : data.getInt(stringTableOffset + 4 * (id - 1));
+            int end = data.getInt(stringTableOffset + 4 * id);
+            if (start < 0 || end < start || (long) stringDataOffset + end > data.capacity()) {
+                throw new UncheckedIOException(broken());
+            }
+            byte[] bytes = new byte[end - start];
+            ByteBuffer source = data.duplicate();
+            source.position(stringDataOffset + start);
+            source.get(bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = string;
+        }
+        return string;
+    }
+
+    /**
+     * Returns a duty item as a HelBDutyItem.
+     * @param item The index of the item.
+     * @return A new HelBDutyItem.
+     */
+    public HelBDutyItem getItem(int item) {
+        HelBDutyItem dutyItem = new HelBDutyItem();
+        dutyItem.dutyType = getDutyType(item);
+        dutyItem.startMinutes = getStartMinutes(item);
+        dutyItem.endMinutes = getEndMinutes(item);
+        dutyItem.startPlace = getStartPlace(item);
+        dutyItem.endPlace = getEndPlace(item);
+        dutyItem.routes = getRoutes(item);
+        dutyItem.block = getBlock(item);
+        dutyItem.direction = getDirection(item);
+        return dutyItem;
+    }
+
+    /**
+     * Returns a duty with its items as a HelBDuty.
+     * @param duty The index of the duty.
+     * @return A new HelBDuty.
+     * @throws UncheckedIOException If the duty is broken.
+     */
+    public HelBDuty getDuty(int duty) {
+        HelBDuty helbDuty = new HelBDuty();
+        helbDuty.dutyId = getDutyId(duty);
+        helbDuty.date = getDutyDate(duty);
+        int first = getFirstItem(duty);
+        int count = getItemCount(duty);
+        if (first < 0 || count < 0 || (long) first + count > itemCount) {
+            throw new UncheckedIOException(broken());
+        }
+        for (int i=first; i < first + count; i++) {
+            helbDuty.duty.add(getItem(i));
+        }
+        return helbDuty;
+    }
+
+    /**
+     * Returns a view to the duties as a HelBDutyList. Nothing is read when the view is made.
+     * Each call to get reads the duty from the mapped file and returns a new HelBDuty. The view
+     * can't be changed.
+     * @return The view.
+     */
+    public HelBDutyList asList() {
+        return new HelBDutyList() {
+            @Override
+            public void add(HelBDuty duty) {
+                throw new UnsupportedOperationException("A mapped duty list can't be changed.");
+            }
+
+            @Override
+            public void clear() {
+                throw new UnsupportedOperationException("A mapped duty list can't be changed.");
+            }
+
+            @Override
+            public int size() {
+                return dutyCount;
+            }
+
+            @Override
+            public HelBDuty get(int index) {
+                if (index < 0 || index >= dutyCount) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + dutyCount);
+                }
+                return getDuty(index);
+            }
+        };
+    }
+
+    @Override
+    public HelBDutyList read() {
+        HelBDutyList list = new HelBDutyList();
+        for (int d=0; d < dutyCount; d++) {
+            list.add(getDuty(d));
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,147 @@
+package tuomaan.pdftest;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Writes a duty list to a compact binary file, which HelBDutyListBinaryReader reads back without
+ * parsing. All numbers are big-endian. The file has four parts:
+ * <ul>
+ *   <li>The header: the magic number, the format version, the number of duties, the number of
+ *       duty items, the number of strings, and the offsets of the duty index, the items and the
+ *       string table. Each of these is an int.</li>
+ *   <li>The duty index, a fixed-width record per duty: the string id of the duty id, the date in
+ *       milliseconds as a long, the index of the first item of the duty, and the number of its
+ *       items.</li>
+ *   <li>The items, a fixed-width record per duty item: the starting and the ending time in
+ *       minutes after midnight packed into an int, the block, the direction as a short, a
+ *       reserved short, and the string ids of the duty type, the starting place, the ending
+ *       place and the routes.</li>
+ *   <li>The string table: the end offsets of the strings in the string data, followed by the
+ *       strings in UTF-8. Each distinct string is stored once.</li>
+ * </ul>
+ * A missing string has the id -1, and a missing date is Long.MIN_VALUE.
+ */
+public class HelBDutyListBinaryWriter extends HelBDutyListWriter {
+
+    /** The magic number at the start of the file, "HDLB" in ASCII. */
+    static final int MAGIC = 0x48444c42;
+
+    /** The version of the format. It is changed whenever the format changes. */
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 8 * 4;
+    static final int DUTY_RECORD_SIZE = 4 + 8 + 4 + 4;
+    static final int ITEM_RECORD_SIZE = 4 + 4 + 2 + 2 + 4 * 4;
+
+    static final int NO_STRING = -1;
+    static final long NO_DATE = Long.MIN_VALUE;
+
+    private final OutputStream out;
+
+    private final HashMap<String, Integer> stringIds = new HashMap<>();
+    private final ArrayList<byte[]> strings = new ArrayList<>();
+
+    /**
+     * Creates a writer, which writes to an output stream. The stream is flushed, but not closed.
+     * @param out The output stream.
+     */
+    public HelBDutyListBinaryWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(HelBDutyList list) throws IOException {
+        // The first pass collects the strings and counts the items, so that the offsets of all
+        // parts are known before anything is written.
+        stringIds.clear();
+        strings.clear();
+        int itemCount = 0;
+        for (int d=0; d < list.size(); d++) {
+            HelBDuty duty = list.get(d);
+            stringId(duty.dutyId);
+            for (HelBDutyItem item : duty.duty) {
+                stringId(item.dutyType);
+                stringId(item.startPlace);
+                stringId(item.endPlace);
+                stringId(item.routes);
+                itemCount++;
+            }
+        }
+        int dutyIndexOffset = HEADER_SIZE;
+        int itemsOffset = dutyIndexOffset + list.size() * DUTY_RECORD_SIZE;
+        int stringTableOffset = itemsOffset + itemCount * ITEM_RECORD_SIZE;
+
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64 * 1024));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(list.size());
+        data.writeInt(itemCount);
+        data.writeInt(strings.size());
+        data.writeInt(dutyIndexOffset);
+        data.writeInt(itemsOffset);
+        data.writeInt(stringTableOffset);
+
+        int firstItem = 0;
+        for (int d=0; d < list.size(); d++) {
+            HelBDuty duty = list.get(d);
+            data.writeInt(stringId(duty.dutyId));
+            data.writeLong(duty.date != null ? duty.date.getTime() : NO_DATE);
+            data.writeInt(firstItem);
+            data.writeInt(duty.duty.size());
+            firstItem += duty.duty.size();
+        }
+
+        for (int d=0; d < list.size(); d++) {
+            for (HelBDutyItem item : list.get(d).duty) {
+                data.writeInt(packTimes(item.startMinutes, item.endMinutes));
+                data.writeInt(item.block);
+                data.writeShort(item.direction);
+                data.writeShort(0);
+                data.writeInt(stringId(item.dutyType));
+                data.writeInt(stringId(item.startPlace));
+                data.writeInt(stringId(item.endPlace));
+                data.writeInt(stringId(item.routes));
+            }
+        }
+
+        int end = 0;
+        for (byte[] string : strings) {
+            end += string.length;
+            data.writeInt(end);
+        }
+        for (byte[] string : strings) {
+            data.write(string);
+        }
+        data.flush();
+    }
+
+    /**
+     * Packs two times into an int. Times are at most 30 hours, so 16 bits is plenty for each.
+     */
+    static int packTimes(int startMinutes, int endMinutes) {
+        return (startMinutes << 16) | (endMinutes & 0xffff);
+    }
+
+    /**
+     * Returns the id of a string, and adds the string to the table if it isn't there yet.
+     */
+    private int stringId(String string) {
+        if (string == null) {
+            return NO_STRING;
+        }
+        Integer id = stringIds.get(string);
+        if (id == null) {
+            id = strings.size();
+            stringIds.put(string, id);
+            strings.add(string.getBytes(StandardCharsets.UTF_8));
+        }
+        return id;
+    }
+
+}
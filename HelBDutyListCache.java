@@ -0,0 +1,227 @@
+package tuomaan.pdftest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the duty lists read from duty log PDF files in a directory on disk, so that a file which
+ * has been read before doesn't have to be parsed again. Drivers forward the same files many
+ * times, and HelB sends unchanged files again.
+ * <p>
+ * A file is recognized by the SHA-256 hash of its contents, so the name and the location of the
+ * file don't matter. The duty lists are stored in the binary format of
+ * HelBDutyListBinaryWriter, which is mapped to memory when it is read back.
+ * <p>
+ * The names of the cached files contain the version of the PDF reader and the version of the
+ * binary format. Files with other versions are deleted when the cache is opened, so a change in
+ * the reader or the format makes the old results go away.
+ * <p>
+ * A duty list found in the cache is returned as a view to the mapped file, so a hit costs only
+ * hashing the PDF file, mapping the cached one and checking its records. The duties are read
+ * from the file as they are asked for. A cached file, which is broken, is deleted and the PDF
+ * file is read again.
+ * <p>
+ * The total size of the cached files is bounded. When it is exceeded, the least recently used
+ * files are deleted. The last modification time of a file is used as its last use time, so the
+ * order is kept also when the cache is opened again.
+ * <p>
+ * Many caches, also in different processes, may use the same directory. A file is written under
+ * a temporary name and renamed when it is complete. Temporary files are deleted when a cache is
+ * opened only if they are old enough to be left over from a crash.
+ */
+public class HelBDutyListCache {
+
+    private static final String SUFFIX = ".v" + HelBDutyListPDFReader.PARSER_VERSION
+            + "." + HelBDutyListBinaryWriter.VERSION + ".hdl";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The age, after which a temporary file is taken to be left over from a crash. Writing a
+     * file takes far less, so a younger one may still be written by another cache.
+     */
+    private static final long STALE_TEMPORARY_MILLIS = 60 * 60 * 1000;
+
+    private final File directory;
+    private final long maxBytes;
+
+    /** The cached files by their hash, in the order of last use, and their sizes. */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    /**
+     * Opens a cache in a directory. The directory is created, if it doesn't exist.
+     * @param directory The directory.
+     * @param maxBytes The maximum total size of the cached files.
+     */
+    public HelBDutyListCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        directory.mkdirs();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        long staleBefore = System.currentTimeMillis() - STALE_TEMPORARY_MILLIS;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(SUFFIX)) {
+                entries.put(name.substring(0, name.length() - SUFFIX.length()), file.length());
+                totalBytes += file.length();
+            } else if (name.endsWith(".hdl")) {
+                // A result of another version.
+                file.delete();
+            } else if (name.endsWith(".tmp") && file.lastModified() < staleBefore) {
+                // A file left over from a crash.
+                file.delete();
+            }
+        }
+        evict();
+    }
+
+    /**
+     * Reads the duty list of a duty log PDF file. The list is taken from the cache if the same
+     * contents have been read before. Otherwise the file is read with HelBDutyListPDFReader, and
+     * the list is stored in the cache.
+     * @param pdfFile The duty log PDF file.
+     * @return The duty list. A list from the cache is a view to the cached file, which can't be
+     *         changed.
+     * @throws IOException If the file can't be read.
+     */
+    public HelBDutyList read(File pdfFile) throws IOException {
+        String hash = hash(pdfFile);
+        HelBDutyList list = get(hash);
+        if (list == null) {
+            list = new HelBDutyListPDFReader(pdfFile).read();
+            put(hash, list);
+        }
+        return list;
+    }
+
+    /**
+     * Returns a cached duty list. The list is a view to the mapped file, and its duties are read
+     * only when they are asked for.
+     * @param hash The hash of the PDF file as returned by hash.
+     * @return The duty list, or null if it isn't in the cache.
+     */
+    public HelBDutyList get(String hash) {
+        File file = cacheFile(hash);
+        synchronized (this) {
+            if (entries.get(hash) == null) {
+                return null;
+            }
+            file.setLastModified(System.currentTimeMillis());
+        }
+        try {
+            // The view reads the file later, so it is checked now, while a broken file can still
+            // be forgotten.
+            HelBDutyListBinaryReader reader = new HelBDutyListBinaryReader(file);
+            reader.validate();
+            return reader.asList();
+        } catch (IOException | RuntimeException e) {
+            // The file has gone missing or it is broken. Forget it.
+            remove(hash);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a duty list in the cache. The file is written under a temporary name first, so a
+     * half-written file is never read.
+     * @param hash The hash of the PDF file as returned by hash.
+     * @param list The duty list.
+     * @throws IOException If the file can't be written.
+     */
+    public void put(String hash, HelBDutyList list) throws IOException {
+        File temporary = File.createTempFile(hash, ".tmp", directory);
+        FileOutputStream out = new FileOutputStream(temporary);
+        try {
+            new HelBDutyListBinaryWriter(out).write(list);
+        } finally {
+            out.close();
+        }
+        File file = cacheFile(hash);
+        synchronized (this) {
+            if (!temporary.renameTo(file)) {
+                file.delete();
+                if (!temporary.renameTo(file)) {
+                    temporary.delete();
+                    throw new IOException("Couldn't store " + file.getName() + ".");
+                }
+            }
+            Long old = entries.put(hash, file.length());
+            totalBytes += file.length() - (old != null ? old : 0);
+            evict();
+        }
+    }
+
+    private synchronized void remove(String hash) {
+        Long size = entries.remove(hash);
+        if (size != null) {
+            totalBytes -= size;
+            cacheFile(hash).delete();
+        }
+    }
+
+    /** Deletes the least recently used files, until the cache is within its size. */
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            cacheFile(eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private File cacheFile(String hash) {
+        return new File(directory, hash + SUFFIX);
+    }
+
+    /**
+     * Calculates the SHA-256 hash of the contents of a file.
+     * @param file The file.
+     * @return The hash as a hexadecimal string.
+     * @throws IOException If the file can't be read.
+     */
+    public static String hash(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256.
+            throw new IllegalStateException(e);
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            digest.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            raf.close();
+        }
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i=0; i < bytes.length; i++) {
+            hex[2*i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2*i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+}
@@ -0,0 +1,264 @@
+package tuomaan.pdftest;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.function.Consumer;
+
+/**
+ * Reads a duty list from HelB's duty log PDF file. The file is read a page at a time, and each
+ * page is turned into a duty as soon as it has been parsed. All PDF files produced by HelB so
+ * far have had a single duty on each page.
+ * <p>
+ * A page is first grouped into lines by PDFTextLineIndex, and then the lines are recognized by
+ * their contents:
+ * <ul>
+ *   <li>A line whose second snippet is a time and which has another time later on is a duty
+ *       item. The columns are the duty type, the starting time, the starting place, the
+ *       direction, the ending time, the ending place, the block and the routes. The direction,
+ *       the ending place, the block and the routes might be missing.</li>
+ *   <li>A line which has a date formatted "d.m.yyyy" is the header of the duty. The first
+ *       snippet on it, which isn't the date or a label ending with a colon, is the duty id.</li>
+ *   <li>Other lines are ignored.</li>
+ * </ul>
+ * Duties can be read all at once with read, or given to a consumer one by one with
+ * read(Consumer). In the latter case only a single page is held in memory at a time, and the
+ * consumer can start working on the first duties while the rest of the file is being parsed.
+ * <p>
+ * The texts of the duties are kept in a HelBStringDictionary.
+ */
+public class HelBDutyListPDFReader extends HelBDutyListReader {
+
+    /**
+     * The version of the reader. It must be changed whenever the reader starts to give different
+     * results for the same file, so that results stored by HelBDutyListCache are read again.
+     */
+    public static final int PARSER_VERSION = 1;
+
+    private final File file;
+    private final HelBStringDictionary dictionary;
+
+    /**
+     * Creates a reader with a dictionary of its own.
+     * @param file The duty log PDF file.
+     */
+    public HelBDutyListPDFReader(File file) {
+        this(file, new HelBStringDictionary());
+    }
+
+    /**
+     * Creates a reader, which keeps the texts of the duty items in a dictionary. The same
+     * dictionary can be given to the readers of all files in a batch, so that each duty type and
+     * place is in memory only once.
+     * @param file The duty log PDF file.
+     * @param dictionary The dictionary.
+     */
+    public HelBDutyListPDFReader(File file, HelBStringDictionary dictionary) {
+        this.file = file;
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public HelBDutyList read() {
+        final HelBDutyList list = new HelBDutyList();
+        read(list::add);
+        return list;
+    }
+
+    /**
+     * Reads the file and gives each duty to a consumer as soon as its page has been parsed.
+     * Pages without a duty are skipped.
+     * @param consumer The consumer of the duties. It is called in the reading thread in page
+     *                 order.
+     */
+    public void read(Consumer<HelBDuty> consumer) {
+        PDFTextExtractor extractor = new PDFTextExtractor();
+        extractor.openFile(file);
+        readDuties(extractor, dictionary, consumer);
+    }
+
+    /**
+     * Reads the duties from a file, which has already been opened, and gives each duty to a
+     * consumer as soon as its page has been parsed. Pages without a duty are skipped.
+     * @param extractor The extractor, which has the file open.
+     * @param dictionary The dictionary, which keeps the texts of the duties.
+     * @param consumer The consumer of the duties. It is called in the reading thread in page
+     *                 order.
+     */
+    static void readDuties(PDFTextExtractor extractor, HelBStringDictionary dictionary,
+                           Consumer<HelBDuty> consumer) {
+        int pageCount = extractor.getPageCount();
+        for (int page=0; page < pageCount; page++) {
+            HelBDuty duty = readDuty(extractor.getTextLinesOfPage(page));
+            if (duty != null) {
+                dictionary.intern(duty);
+                consumer.accept(duty);
+            }
+        }
+    }
+
+    /**
+     * Makes a duty from the lines of a page.
+     * @param lines The lines of the page.
+     * @return The duty, or null if the page has neither a header nor duty items.
+     */
+    static HelBDuty readDuty(PDFTextLineIndex lines) {
+        HelBDuty duty = new HelBDuty();
+        boolean found = false;
+        for (int line=0; line < lines.lineCount(); line++) {
+            ArrayList<String> texts = lines.getLineTexts(line);
+            HelBDutyItem item = readDutyItem(texts);
+            if (item != null) {
+                duty.duty.add(item);
+                found = true;
+            } else if (readHeader(texts, duty)) {
+                found = true;
+            }
+        }
+        return found ? duty : null;
+    }
+
+    /**
+     * Makes a duty item from the snippets of a line.
+     * @param texts The snippets from left to right.
+     * @return The duty item, or null if the line isn't a duty item.
+     */
+    static HelBDutyItem readDutyItem(ArrayList<String> texts) {
+        int size = texts.size();
+        if (size < 3 || isTime(texts.get(0)) || !isTime(texts.get(1))) {
+            return null;
+        }
+        int endTimePos = 2;
+        while (endTimePos < size && !isTime(texts.get(endTimePos))) {
+            endTimePos++;
+        }
+        if (endTimePos == size) {
+            return null;
+        }
+
+        HelBDutyItem item = new HelBDutyItem();
+        item.dutyType = texts.get(0);
+        String startTime = texts.get(1);
+        item.startMinutes = HSLTime.parseMinutes(startTime, 0, startTime.length());
+        // The direction is a number right before the ending time, if there is a starting place
+        // before it.
+        int startPlaceEnd = endTimePos;
+        item.direction = 0;
+        if (startPlaceEnd > 3 && isNumber(texts.get(startPlaceEnd - 1))) {
+            startPlaceEnd--;
+            item.direction = Integer.parseInt(texts.get(startPlaceEnd));
+        }
+        item.startPlace = join(texts, 2, startPlaceEnd, " ");
+        String endTime = texts.get(endTimePos);
+        item.endMinutes = HSLTime.parseMinutes(endTime, 0, endTime.length());
+        // The ending place goes on until the block, which is the first number after it.
+        int blockPos = endTimePos + 1;
+        while (blockPos < size && !isNumber(texts.get(blockPos))) {
+            blockPos++;
+        }
+        item.endPlace = join(texts, endTimePos + 1, blockPos, " ");
+        item.block = 0;
+        if (blockPos < size) {
+            item.block = Integer.parseInt(texts.get(blockPos));
+            item.routes = join(texts, blockPos + 1, size, ", ");
+        }
+        return item;
+    }
+
+    /**
+     * Reads the date and the duty id from a header line.
+     * @param texts The snippets from left to right.
+     * @param duty The duty, whose date and id are set.
+     * @return True, if the line was a header.
+     */
+    static boolean readHeader(ArrayList<String> texts, HelBDuty duty) {
+        int datePos = -1;
+        for (int i=0; i < texts.size(); i++) {
+            if (isDate(texts.get(i))) {
+                datePos = i;
+                break;
+            }
+        }
+        if (datePos < 0) {
+            return false;
+        }
+        duty.date = parseDate(texts.get(datePos));
+        for (int i=0; i < texts.size(); i++) {
+            String text = texts.get(i);
+            if (i != datePos && !text.isEmpty() && !text.endsWith(":")) {
+                duty.dutyId = text;
+                break;
+            }
+        }
+        return true;
+    }
+
+    /** Checks whether a text is a time formatted "h:mm" or "hh:mm". */
+    private static boolean isTime(String text) {
+        int colon = text.length() - 3;
+        if (colon < 1 || colon > 2 || text.charAt(colon) != ':') {
+            return false;
+        }
+        for (int i=0; i < text.length(); i++) {
+            if (i != colon && !isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Checks whether a text is a date formatted "d.m.yyyy". */
+    private static boolean isDate(String text) {
+        int firstDot = text.indexOf('.');
+        int secondDot = text.indexOf('.', firstDot + 1);
+        if (firstDot < 1 || firstDot > 2 || secondDot - firstDot < 2 || secondDot - firstDot > 3
+                || text.length() - secondDot != 5) {
+            return false;
+        }
+        for (int i=0; i < text.length(); i++) {
+            if (i != firstDot && i != secondDot && !isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Date parseDate(String text) {
+        int firstDot = text.indexOf('.');
+        int secondDot = text.indexOf('.', firstDot + 1);
+        int day = Integer.parseInt(text.substring(0, firstDot));
+        int month = Integer.parseInt(text.substring(firstDot + 1, secondDot));
+        int year = Integer.parseInt(text.substring(secondDot + 1));
+        return new GregorianCalendar(year, month - 1, day).getTime();
+    }
+
+    /** Checks whether a text is a small positive integer, like a direction or a block. */
+    private static boolean isNumber(String text) {
+        if (text.isEmpty() || text.length() > 9) {
+            return false;
+        }
+        for (int i=0; i < text.length(); i++) {
+            if (!isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static String join(ArrayList<String> texts, int from, int to, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (int i=from; i < to; i++) {
+            if (i > from) {
+                sb.append(separator);
+            }
+            sb.append(texts.get(i));
+        }
+        return sb.toString();
+    }
+
+}
@@ -1,5 +1,7 @@
 package tuomaan.pdftest;
 
+import java.io.IOException;
+
 /**
  * An abstract class, whose descendants write a duty list from memory to a file.
  */
@@ -7,4 +9,5 @@ package tuomaan.pdftest;
  */
 
 public abstract class HelBDutyListWriter {
+    abstract public void write(HelBDutyList list) throws IOException;
 }
@@ -0,0 +1,245 @@
+package tuomaan.pdftest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * Writes a duty list to XML. The XML is encoded to UTF-8 by hand into a byte buffer, which is
+ * written out whenever it gets full, so no DOM or strings are built and the memory needed doesn't
+ * depend on the size of the list. Times and numbers are written digit by digit.
+ * <p>
+ * The XML looks like this:
+ * <pre>
+ * &lt;?xml version="1.0" encoding="UTF-8"?&gt;
+ * &lt;dutyList&gt;
+ *   &lt;duty id="10123" date="2019-03-21"&gt;
+ *     &lt;item type="Linja-ajoa" start="5:00" startPlace="Rautatientori" direction="1"
+ *           end="6:01" endPlace="Kamppi" block="42" routes="55, 56"/&gt;
+ *   &lt;/duty&gt;
+ * &lt;/dutyList&gt;
+ * </pre>
+ * A list can be written with write, or duty by duty with writeStart, write(HelBDuty) and
+ * writeEnd. The latter works with HelBDutyListPDFReader.read(Consumer), so that a duty log can be
+ * converted without holding the whole list in memory.
+ */
+public class HelBDutyListXMLWriter extends HelBDutyListWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final WritableByteChannel channel;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    private int position = 0;
+
+    private final Calendar calendar = new GregorianCalendar();
+
+    /**
+     * Creates a writer, which writes to an output stream. The stream is flushed, but not closed.
+     * @param out The output stream.
+     */
+    public HelBDutyListXMLWriter(OutputStream out) {
+        this.out = out;
+        this.channel = null;
+    }
+
+    /**
+     * Creates a writer, which writes to a channel. The channel is not closed.
+     * @param channel The channel.
+     */
+    public HelBDutyListXMLWriter(WritableByteChannel channel) {
+        this.out = null;
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(HelBDutyList list) throws IOException {
+        writeStart();
+        for (int i=0; i < list.size(); i++) {
+            write(list.get(i));
+        }
+        writeEnd();
+    }
+
+    /**
+     * Writes the XML declaration and the start tag of the duty list.
+     */
+    public void writeStart() throws IOException {
+        ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<dutyList>\n");
+    }
+
+    /**
+     * Writes a duty with its items.
+     * @param duty The duty.
+     */
+    public void write(HelBDuty duty) throws IOException {
+        ascii("  <duty");
+        if (duty.dutyId != null) {
+            attribute("id", duty.dutyId);
+        }
+        if (duty.date != null) {
+            ascii(" date=\"");
+            date(duty.date.getTime());
+            put('"');
+        }
+        ascii(">\n");
+        for (HelBDutyItem item : duty.duty) {
+            write(item);
+        }
+        ascii("  </duty>\n");
+    }
+
+    private void write(HelBDutyItem item) throws IOException {
+        ascii("    <item");
+        attribute("type", item.dutyType);
+        ascii(" start=\"");
+        time(item.startMinutes);
+        put('"');
+        attribute("startPlace", item.startPlace);
+        ascii(" direction=\"");
+        integer(item.direction);
+        ascii("\" end=\"");
+        time(item.endMinutes);
+        put('"');
+        attribute("endPlace", item.endPlace);
+        ascii(" block=\"");
+        integer(item.block);
+        put('"');
+        attribute("routes", item.routes);
+        ascii("/>\n");
+    }
+
+    /**
+     * Writes the end tag of the duty list and flushes the buffer.
+     */
+    public void writeEnd() throws IOException {
+        ascii("</dutyList>\n");
+        flush();
+    }
+
+    /**
+     * Writes the buffered bytes out.
+     */
+    public void flush() throws IOException {
+        if (out != null) {
+            out.write(buffer, 0, position);
+            out.flush();
+        } else {
+            byteBuffer.clear();
+            byteBuffer.limit(position);
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        }
+        position = 0;
+    }
+
+    private void put(char c) throws IOException {
+        if (position == BUFFER_SIZE) {
+            flush();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    /** Writes a text, which is known to be ASCII and to need no escaping. */
+    private void ascii(String text) throws IOException {
+        for (int i=0; i < text.length(); i++) {
+            put(text.charAt(i));
+        }
+    }
+
+    private void attribute(String name, String value) throws IOException {
+        put(' ');
+        ascii(name);
+        ascii("=\"");
+        if (value != null) {
+            escaped(value);
+        }
+        put('"');
+    }
+
+    /** Writes a text encoded to UTF-8, with the characters special in attributes escaped. */
+    private void escaped(String text) throws IOException {
+        for (int i=0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '<': ascii("&lt;"); break;
+                    case '>': ascii("&gt;"); break;
+                    case '&': ascii("&amp;"); break;
+                    case '"': ascii("&quot;"); break;
+                    case '\n': ascii("&#10;"); break;
+                    case '\r': ascii("&#13;"); break;
+                    case '\t': ascii("&#9;"); break;
+                    default:
+                        // Other control characters are not allowed in XML 1.0.
+                        put(c < 0x20 ? '?' : c);
+                        break;
+                }
+            } else if (c < 0x800) {
+                put((char) (0xc0 | (c >> 6)));
+                put((char) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                put((char) (0xf0 | (codePoint >> 18)));
+                put((char) (0x80 | ((codePoint >> 12) & 0x3f)));
+                put((char) (0x80 | ((codePoint >> 6) & 0x3f)));
+                put((char) (0x80 | (codePoint & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                // A lone surrogate can't be encoded.
+                put('?');
+            } else {
+                put((char) (0xe0 | (c >> 12)));
+                put((char) (0x80 | ((c >> 6) & 0x3f)));
+                put((char) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    private void integer(int value) throws IOException {
+        if (value < 0) {
+            put('-');
+            // The minimum value has no positive counterpart, so its last digit is written apart.
+            if (value == Integer.MIN_VALUE) {
+                integer(-(value / 10));
+                put('8');
+                return;
+            }
+            value = -value;
+        }
+        if (value >= 10) {
+            integer(value / 10);
+        }
+        put((char) ('0' + value % 10));
+    }
+
+    /** Writes a time formatted "h:mm" or "hh:mm" like HSLTime.getHhmmS. */
+    private void time(int minsAfterMidnight) throws IOException {
+        if (position > BUFFER_SIZE - 12) {
+            flush();
+        }
+        position = HSLTime.formatHhmm(minsAfterMidnight, buffer, position);
+    }
+
+    /** Writes a date formatted "yyyy-mm-dd". */
+    private void date(long millis) throws IOException {
+        calendar.setTimeInMillis(millis);
+        integer(calendar.get(Calendar.YEAR));
+        put('-');
+        twoDigits(calendar.get(Calendar.MONTH) + 1);
+        put('-');
+        twoDigits(calendar.get(Calendar.DAY_OF_MONTH));
+    }
+
+    private void twoDigits(int value) throws IOException {
+        put((char) ('0' + value / 10));
+        put((char) ('0' + value % 10));
+    }
+
+}
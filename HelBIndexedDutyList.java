@@ -0,0 +1,381 @@
+package tuomaan.pdftest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A duty list, which indexes its duties as they are added, so that questions like "who drives
+ * block 42 at 14:30 on friday" don't have to go through the whole list.
+ * <p>
+ * Duties are indexed in hash tables by their date and duty id, and their items by the block, by
+ * each route, and by the starting and the ending place. The times of the items are indexed in interval trees, one for each day and one
+ * for all items: the items are sorted by their starting time, and a tree over them knows the
+ * latest ending time in each range, so that ranges ending before the time asked for are
+ * skipped. A tree is built again on the first query after items have been added to it.
+ * <p>
+ * The items of a duty are indexed when the duty is added. Changing a duty after that isn't seen
+ * by the indexes. Queries may be run from many threads, but adding duties may not be run at the
+ * same time with anything else.
+ */
+public class HelBIndexedDutyList extends HelBDutyList {
+
+    private final HashMap<Integer, ArrayList<HelBDuty>> dutiesByDay = new HashMap<>();
+    private final HashMap<String, ArrayList<HelBDuty>> dutiesById = new HashMap<>();
+    private final HashMap<Integer, ArrayList<HelBDutyItem>> itemsByBlock = new HashMap<>();
+    private final HashMap<String, ArrayList<HelBDutyItem>> itemsByRoute = new HashMap<>();
+    private final HashMap<String, ArrayList<HelBDutyItem>> itemsByPlace = new HashMap<>();
+    private final IdentityHashMap<HelBDutyItem, HelBDuty> dutyOfItem = new IdentityHashMap<>();
+
+    /** The times of all items. */
+    private final IntervalIndex allTimes = new IntervalIndex();
+
+    /** The times of the items of each day, keyed like dutiesByDay. */
+    private final HashMap<Integer, IntervalIndex> timesByDay = new HashMap<>();
+
+    @Override
+    public void add(HelBDuty duty) {
+        super.add(duty);
+        IntervalIndex dayTimes = null;
+        if (duty.date != null) {
+            int day = dayKey(duty.date);
+            addTo(dutiesByDay, day, duty);
+            dayTimes = timesByDay.get(day);
+            if (dayTimes == null) {
+                dayTimes = new IntervalIndex();
+                timesByDay.put(day, dayTimes);
+            }
+        }
+        if (duty.dutyId != null) {
+            addTo(dutiesById, duty.dutyId, duty);
+        }
+        for (HelBDutyItem item : duty.duty) {
+            dutyOfItem.put(item, duty);
+            addTo(itemsByBlock, item.block, item);
+            for (String route : splitRoutes(item.routes)) {
+                addTo(itemsByRoute, route, item);
+            }
+            if (item.startPlace != null && !item.startPlace.isEmpty()) {
+                addTo(itemsByPlace, item.startPlace, item);
+            }
+            // An item which starts and ends at the same place is listed once.
+            if (item.endPlace != null && !item.endPlace.isEmpty()
+                    && !item.endPlace.equals(item.startPlace)) {
+                addTo(itemsByPlace, item.endPlace, item);
+            }
+            allTimes.add(item);
+            if (dayTimes != null) {
+                dayTimes.add(item);
+            }
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        dutiesByDay.clear();
+        dutiesById.clear();
+        itemsByBlock.clear();
+        itemsByRoute.clear();
+        itemsByPlace.clear();
+        dutyOfItem.clear();
+        allTimes.clear();
+        timesByDay.clear();
+    }
+
+    private static <K, V> void addTo(HashMap<K, ArrayList<V>> index, K key, V value) {
+        ArrayList<V> values = index.get(key);
+        if (values == null) {
+            values = new ArrayList<>(4);
+            index.put(key, values);
+        }
+        values.add(value);
+    }
+
+    private static <K, V> List<V> getFrom(HashMap<K, ArrayList<V>> index, K key) {
+        ArrayList<V> values = index.get(key);
+        return values == null ? Collections.<V>emptyList() : Collections.unmodifiableList(values);
+    }
+
+    /**
+     * Splits the routes of an item. Routes are separated by a comma and a space, but a plain
+     * comma or a space is accepted too.
+     */
+    private static ArrayList<String> splitRoutes(String routes) {
+        ArrayList<String> result = new ArrayList<>(2);
+        if (routes == null) {
+            return result;
+        }
+        int start = 0;
+        for (int i=0; i <= routes.length(); i++) {
+            if (i == routes.length() || routes.charAt(i) == ',' || routes.charAt(i) == ' ') {
+                if (i > start) {
+                    result.add(routes.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Makes a key of the calendar day of a date in the default time zone, formatted like
+     * yyyymmdd.
+     */
+    private static int dayKey(Date date) {
+        Calendar calendar = new GregorianCalendar();
+        calendar.setTime(date);
+        return calendar.get(Calendar.YEAR) * 10000 + (calendar.get(Calendar.MONTH) + 1) * 100
+                + calendar.get(Calendar.DAY_OF_MONTH);
+    }
+
+    /**
+     * Returns the duties to be driven on a day.
+     * @param date Any moment of the day.
+     * @return The duties in the order they were added.
+     */
+    public List<HelBDuty> getDutiesOn(Date date) {
+        return getFrom(dutiesByDay, dayKey(date));
+    }
+
+    /**
+     * Returns the duties with a duty id. The same duty might be driven on many days.
+     * @param dutyId The duty id.
+     * @return The duties in the order they were added.
+     */
+    public List<HelBDuty> getDutiesById(String dutyId) {
+        return getFrom(dutiesById, dutyId);
+    }
+
+    /**
+     * Returns the items in which a block is driven.
+     * @param block The block.
+     * @return The items in the order they were added.
+     */
+    public List<HelBDutyItem> getItemsOfBlock(int block) {
+        return getFrom(itemsByBlock, block);
+    }
+
+    /**
+     * Returns the items in which a route is driven.
+     * @param route The route id, for example "550".
+     * @return The items in the order they were added.
+     */
+    public List<HelBDutyItem> getItemsOfRoute(String route) {
+        return getFrom(itemsByRoute, route);
+    }
+
+    /**
+     * Returns the items, which start or end at a place.
+     * @param place The place as it is written in the duty log files, for example "Rautatientori".
+     * @return The items in the order they were added.
+     */
+    public List<HelBDutyItem> getItemsAtPlace(String place) {
+        return getFrom(itemsByPlace, place);
+    }
+
+    /**
+     * Returns the duty, which an item belongs to.
+     * @param item The item.
+     * @return The duty, or null if the item isn't in this list.
+     */
+    public HelBDuty getDutyOf(HelBDutyItem item) {
+        return dutyOfItem.get(item);
+    }
+
+    /**
+     * Returns the items going on at a moment on any day, that is, the items which have started
+     * at or before it and end after it.
+     * @param minutes The time in minutes after midnight.
+     * @return The items in the order of their starting times.
+     */
+    public ArrayList<HelBDutyItem> getItemsAt(int minutes) {
+        return getItemsOverlapping(minutes, minutes + 1);
+    }
+
+    /**
+     * Returns the items going on at a moment on a day.
+     * @param date Any moment of the day.
+     * @param minutes The time in minutes after midnight of the day of the duty.
+     * @return The items in the order of their starting times.
+     */
+    public ArrayList<HelBDutyItem> getItemsAt(Date date, int minutes) {
+        return getItemsOverlapping(date, minutes, minutes + 1);
+    }
+
+    /**
+     * Returns the items, which overlap a time range on any day, that is, the items which start
+     * before the end of the range and end after the start of it.
+     * @param fromMinutes The start of the range in minutes after midnight, inclusive.
+     * @param toMinutes The end of the range in minutes after midnight, exclusive.
+     * @return The items in the order of their starting times.
+     */
+    public ArrayList<HelBDutyItem> getItemsOverlapping(int fromMinutes, int toMinutes) {
+        ArrayList<HelBDutyItem> result = new ArrayList<>();
+        allTimes.collectOverlapping(fromMinutes, toMinutes, result);
+        return result;
+    }
+
+    /**
+     * Returns the items of the duties of a day, which overlap a time range.
+     * @param date Any moment of the day.
+     * @param fromMinutes The start of the range in minutes after midnight, inclusive.
+     * @param toMinutes The end of the range in minutes after midnight, exclusive.
+     * @return The items in the order of their starting times.
+     */
+    public ArrayList<HelBDutyItem> getItemsOverlapping(Date date, int fromMinutes, int toMinutes) {
+        ArrayList<HelBDutyItem> result = new ArrayList<>();
+        IntervalIndex dayTimes = timesByDay.get(dayKey(date));
+        if (dayTimes != null) {
+            dayTimes.collectOverlapping(fromMinutes, toMinutes, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the items, in which a block is driven at a moment on a day. This answers
+     * questions like "who drives block 42 at 14:30 on friday". The items going on at the
+     * moment are found from the interval tree of the day, and only they are checked for the
+     * block.
+     * @param date Any moment of the day.
+     * @param block The block.
+     * @param minutes The time in minutes after midnight of the day of the duty.
+     * @return The items in the order of their starting times.
+     */
+    public ArrayList<HelBDutyItem> getItemsOfBlockAt(Date date, int block, int minutes) {
+        ArrayList<HelBDutyItem> result = getItemsAt(date, minutes);
+        for (int i=result.size()-1; i >= 0; i--) {
+            if (result.get(i).block != block) {
+                result.remove(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * An interval tree over the times of items. Items are added one by one, and the tree is
+     * built on the first query after that.
+     */
+    private static class IntervalIndex {
+
+        // The items in the order they were added, and their times.
+        private HelBDutyItem[] items = new HelBDutyItem[16];
+        private int[] itemStart = new int[16];
+        private int[] itemEnd = new int[16];
+        private int itemCount = 0;
+
+        // The tree: item numbers sorted by starting time, their starting times, and the latest
+        // ending time in each node of a binary tree over them.
+        private int[] byStart;
+        private int[] sortedStart;
+        private int[] maxEnd;
+        private boolean treeValid = false;
+
+        void add(HelBDutyItem item) {
+            if (itemCount == items.length) {
+                items = Arrays.copyOf(items, itemCount * 2);
+                itemStart = Arrays.copyOf(itemStart, itemCount * 2);
+                itemEnd = Arrays.copyOf(itemEnd, itemCount * 2);
+            }
+            items[itemCount] = item;
+            itemStart[itemCount] = item.startMinutes;
+            itemEnd[itemCount] = item.endMinutes;
+            itemCount++;
+            treeValid = false;
+        }
+
+        void clear() {
+            Arrays.fill(items, 0, itemCount, null);
+            itemCount = 0;
+            treeValid = false;
+        }
+
+        /**
+         * Adds the items, which start before the end of a range and end after the start of it,
+         * to a list in the order of their starting times.
+         */
+        void collectOverlapping(int fromMinutes, int toMinutes, ArrayList<HelBDutyItem> result) {
+            ensureTree();
+            // Only the items starting before the end of the range can overlap it.
+            int candidates = upperBound(toMinutes - 1);
+            if (candidates > 0) {
+                collect(1, 0, itemCount, candidates, fromMinutes, result);
+            }
+        }
+
+        /**
+         * Collects the items of a node, whose position in the starting time order is below a
+         * limit and which end after a time. Nodes, which end before the time, are skipped as a
+         * whole.
+         */
+        private void collect(int node, int lo, int hi, int limit, int after,
+                             ArrayList<HelBDutyItem> result) {
+            if (lo >= limit || maxEnd[node] <= after) {
+                return;
+            }
+            if (hi - lo == 1) {
+                result.add(items[byStart[lo]]);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            collect(2*node, lo, mid, limit, after, result);
+            collect(2*node + 1, mid, hi, limit, after, result);
+        }
+
+        /** Returns the number of items, which start at or before a time. */
+        private int upperBound(int minutes) {
+            int lo = 0;
+            int hi = itemCount;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sortedStart[mid] <= minutes) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        private synchronized void ensureTree() {
+            if (treeValid) {
+                return;
+            }
+            // Sort the item numbers by starting time. The starting time and the item number
+            // are packed into a long, so that a primitive sort can be used.
+            long[] keys = new long[itemCount];
+            for (int i=0; i < itemCount; i++) {
+                keys[i] = ((long) itemStart[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+            byStart = new int[itemCount];
+            sortedStart = new int[itemCount];
+            for (int i=0; i < itemCount; i++) {
+                byStart[i] = (int) keys[i];
+                sortedStart[i] = (int) (keys[i] >> 32);
+            }
+            maxEnd = new int[Math.max(4 * itemCount, 1)];
+            if (itemCount > 0) {
+                build(1, 0, itemCount);
+            }
+            treeValid = true;
+        }
+
+        private int build(int node, int lo, int hi) {
+            if (hi - lo == 1) {
+                maxEnd[node] = itemEnd[byStart[lo]];
+            } else {
+                int mid = (lo + hi) >>> 1;
+                maxEnd[node] = Math.max(build(2*node, lo, mid), build(2*node + 1, mid, hi));
+            }
+            return maxEnd[node];
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package tuomaan.pdftest;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a single copy of each string used in duty items. Duty types, places and routes repeat a
+ * small vocabulary across thousands of duties, so when they go through a dictionary, each word
+ * is in memory only once, and equal words are the same object and can be compared with ==.
+ * <p>
+ * Each string also gets an int code in the order the strings are added. The codes can be kept
+ * instead of the strings, and turned back to strings with get.
+ * <p>
+ * A dictionary can be shared by the readers of many files, also when they are run in different
+ * threads. Looking up a string, which is already in the dictionary, doesn't lock.
+ */
+public class HelBStringDictionary {
+
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+
+    private volatile String[] strings = new String[64];
+    private int size = 0;
+
+    /**
+     * Returns the number of strings in the dictionary.
+     * @return The number of strings.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Returns the code of a string, and adds the string to the dictionary if it isn't there yet.
+     * @param string The string.
+     * @return The code.
+     */
+    public int code(String string) {
+        Integer code = codes.get(string);
+        if (code != null) {
+            return code;
+        }
+        return add(string);
+    }
+
+    private synchronized int add(String string) {
+        Integer code = codes.get(string);
+        if (code != null) {
+            return code;
+        }
+        if (size == strings.length) {
+            strings = Arrays.copyOf(strings, size * 2);
+        }
+        strings[size] = string;
+        // The string is in the array before its code is published, so anyone who gets the code
+        // also finds the string.
+        codes.put(string, size);
+        return size++;
+    }
+
+    /**
+     * Returns the string of a code.
+     * @param code The code.
+     * @return The string.
+     */
+    public String get(int code) {
+        return strings[code];
+    }
+
+    /**
+     * Returns the copy of a string kept in the dictionary. The string is added, if it isn't there
+     * yet.
+     * @param string The string, or null.
+     * @return The copy in the dictionary, or null if the string was null.
+     */
+    public String intern(String string) {
+        if (string == null) {
+            return null;
+        }
+        return get(code(string));
+    }
+
+    /**
+     * Replaces the text fields of a duty item with their copies in the dictionary.
+     * @param item The duty item.
+     */
+    public void intern(HelBDutyItem item) {
+        item.dutyType = intern(item.dutyType);
+        item.startPlace = intern(item.startPlace);
+        item.endPlace = intern(item.endPlace);
+        item.routes = intern(item.routes);
+    }
+
+    /**
+     * Replaces the text fields of all items of a duty with their copies in the dictionary.
+     * @param duty The duty.
+     */
+    public void intern(HelBDuty duty) {
+        duty.dutyId = intern(duty.dutyId);
+        for (HelBDutyItem item : duty.duty) {
+            intern(item);
+        }
+    }
+
+}
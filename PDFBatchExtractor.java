@@ -0,0 +1,239 @@
+package pdftextextractor;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Extracts text from many PDF files concurrently. Each file is read, parsed and extracted by
+ * its own PDFTextExtractor in a task of its own, so the number of files handled per second
+ * grows with the number of cores. If duty assembly is turned on, the text of each file is
+ * also turned into duties with HelBDutyListPDFReader.
+ * <p>
+ * At most a certain number of files are handled at the same time. When that many files are in
+ * progress, adding more waits for one of them to finish. When the results are given to a
+ * consumer as the files finish, the memory needed doesn't grow with the size of the batch.
+ * The methods returning a list of results keep all of them until the whole batch is done.
+ * <p>
+ * An error in one file doesn't stop the others. The result of each file holds either its text
+ * items, its duties or the error. Also errors like a stack overflow caused by a broken file are
+ * caught and kept in the result of the file.
+ */
+public class PDFBatchExtractor {
+
+    /**
+     * The result of a single file.
+     */
+    public static class Result {
+
+        /** The file. */
+        public final File file;
+
+        /** The text items of the file, or null if extraction failed or duties were assembled. */
+        public final ArrayList<PDFTextItem> items;
+
+        /** The duties of the file, or null if extraction failed or duties weren't assembled. */
+        public final HelBDutyList duties;
+
+        /** The error which stopped the extraction, or null if extraction succeeded. */
+        public final Throwable error;
+
+        Result(File file, ArrayList<PDFTextItem> items, HelBDutyList duties, Throwable error) {
+            this.file = file;
+            this.items = items;
+            this.duties = duties;
+            this.error = error;
+        }
+
+        public boolean succeeded() {
+            return error == null;
+        }
+    }
+
+    private final Executor executor;
+    private final int concurrency;
+    private PDFMetricsListener metrics = PDFMetricsListener.NONE;
+    private HelBStringDictionary dutyDictionary = null;
+
+    /**
+     * Creates a batch extractor with its own threads, one per core.
+     */
+    public PDFBatchExtractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a batch extractor, which handles at most a certain number of files at the same
+     * time. Tasks are run in threads created for each batch.
+     * @param concurrency The maximum number of files in progress.
+     */
+    public PDFBatchExtractor(int concurrency) {
+        this(null, concurrency);
+    }
+
+    /**
+     * Creates a batch extractor, which runs its tasks using an executor. The executor might for
+     * example create a virtual thread for each task, where the platform supports them.
+     * @param executor The executor, which runs the tasks. If null, threads are created for each
+     *                 batch.
+     * @param concurrency The maximum number of files in progress.
+     */
+    public PDFBatchExtractor(Executor executor, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1.");
+        }
+        this.executor = executor;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Sets the listener, which is given to the extractor of each file. The listener is called
+     * from many threads at the same time.
+     * @param metrics The listener, for example a PDFMetricsAggregator.
+     */
+    public void setMetricsListener(PDFMetricsListener metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Turns on the last stage of the pipeline, which assembles the text of each file into
+     * duties. The results then hold the duties instead of the text items. The texts of the
+     * duties of all files are kept in a dictionary shared by the batch.
+     * @param dictionary The dictionary, or null to turn duty assembly off.
+     */
+    public void setDutyAssembly(HelBStringDictionary dictionary) {
+        this.dutyDictionary = dictionary;
+    }
+
+    /**
+     * Extracts text from all PDF files in a directory. Subdirectories are not searched.
+     * @param directory The directory.
+     * @return The results in the order of the file names.
+     */
+    public ArrayList<Result> extractDirectory(File directory) {
+        return extract(listPDFFiles(directory));
+    }
+
+    /**
+     * Extracts text from all PDF files in a directory, and gives each result to a consumer as
+     * soon as its file is done. Subdirectories are not searched.
+     * @param directory The directory.
+     * @param consumer The consumer of the results. See extract(List, Consumer).
+     */
+    public void extractDirectory(File directory, Consumer<Result> consumer) {
+        extract(listPDFFiles(directory), consumer);
+    }
+
+    private static List<File> listPDFFiles(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().toLowerCase().endsWith(".pdf");
+            }
+        });
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Extracts text from a list of files.
+     * @param files The files.
+     * @return The results in the same order as the files.
+     */
+    public ArrayList<Result> extract(List<File> files) {
+        Result[] results = new Result[files.size()];
+        run(files, results, null);
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * Extracts text from a list of files, and gives each result to a consumer as soon as its
+     * file is done. Only the files in progress are kept in memory, so batches of any size can
+     * be handled. The method returns when all results have been given to the consumer.
+     * @param files The files.
+     * @param consumer The consumer of the results. It is called from the threads running the
+     *                 tasks in the order the files finish, but only by one thread at a time.
+     */
+    public void extract(List<File> files, Consumer<Result> consumer) {
+        run(files, null, consumer);
+    }
+
+    /**
+     * Runs the tasks of a batch. Each result is either put to its place in an array, or given
+     * to a consumer.
+     */
+    private void run(List<File> files, final Result[] results, final Consumer<Result> consumer) {
+        ExecutorService ownExecutor = null;
+        Executor taskExecutor = executor;
+        if (taskExecutor == null) {
+            ownExecutor = Executors.newFixedThreadPool(concurrency);
+            taskExecutor = ownExecutor;
+        }
+        try {
+            final Semaphore inProgress = new Semaphore(concurrency);
+            for (int i=0; i < files.size(); i++) {
+                final File file = files.get(i);
+                final int index = i;
+                inProgress.acquireUninterruptibly();
+                try {
+                    taskExecutor.execute(() -> {
+                        try {
+                            deliver(extractFile(file), index, results, consumer);
+                        } finally {
+                            inProgress.release();
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // The executor refused the task.
+                    inProgress.release();
+                    deliver(new Result(file, null, null, e), index, results, consumer);
+                }
+            }
+            // All tasks are done, when all permits are free again.
+            inProgress.acquireUninterruptibly(concurrency);
+        } finally {
+            if (ownExecutor != null) {
+                ownExecutor.shutdown();
+            }
+        }
+    }
+
+    private synchronized void deliver(Result result, int index, Result[] results,
+                                      Consumer<Result> consumer) {
+        if (results != null) {
+            results[index] = result;
+        } else {
+            consumer.accept(result);
+        }
+    }
+
+    private Result extractFile(File file) {
+        try {
+            PDFTextExtractor extractor = new PDFTextExtractor();
+            extractor.setMetricsListener(metrics);
+            extractor.openFile(file);
+            HelBStringDictionary dictionary = dutyDictionary;
+            if (dictionary == null) {
+                return new Result(file, extractor.getText(), null, null);
+            }
+            final HelBDutyList duties = new HelBDutyList();
+            HelBDutyListPDFReader.readDuties(extractor, dictionary, duties::add);
+            return new Result(file, null, duties, null);
+        } catch (Throwable e) {
+            // A broken file may cause any error from a stack overflow to running out of memory
+            // on a huge table. Only this file is lost.
+            return new Result(file, null, null, e);
+        }
+    }
+
+}
@@ -6,7 +6,14 @@ package tuomaan.pdftest;
 import android.util.Log;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Reads bytes from a file in a PDF fashion. PDF specification 32000_2008 used.
@@ -30,9 +37,11 @@ public class PDFByteArray {
     public static final String ENDOFLINE = new String(new byte[] {10, 13});
 
     /**
-     * The byte array itself.
+     * The bytes themselves. This is either a byte array wrapped into a buffer or a read-only
+     * memory mapped file. Only absolute get-methods are used, so the position of the buffer
+     * itself is never touched.
      */
-    private byte[] pdfArray;
+    private ByteBuffer pdfArray = ByteBuffer.allocate(0);
 
     /**
      * Current position in the array.
@@ -60,7 +69,16 @@ public class PDFByteArray {
      * @return The length of the array.
      */
     public int getLength() {
-        return pdfArray.length;
+        return pdfArray.limit();
+    }
+
+    /**
+     * Returns a single byte from the array.
+     * @param pos The position of the byte.
+     * @return The byte.
+     */
+    public byte getByte(int pos) {
+        return pdfArray.get(pos);
     }
 
     /**
@@ -70,7 +88,7 @@ public class PDFByteArray {
      * @return Returns true if the character at "pos" is one of characters in "chars".
      */
     public boolean isChar(int pos, String chars) {
-        return chars.indexOf(pdfArray[pos]) > -1;
+        return chars.indexOf(pdfArray.get(pos)) > -1;
     }
 
     /**
@@ -89,7 +107,7 @@ public class PDFByteArray {
      */
     public int searchChar(int start, String chars) {
         int pos = start;
-        while (pos < pdfArray.length && !isChar(pos, chars)) {
+        while (pos < pdfArray.limit() && !isChar(pos, chars)) {
             pos++;
         }
         return pos;
@@ -113,7 +131,7 @@ public class PDFByteArray {
      */
     public int searchNotChar(int start, String chars) {
         int pos = start;
-        while (pos < pdfArray.length && isChar(pos, chars)) {
+        while (pos < pdfArray.limit() && isChar(pos, chars)) {
             pos++;
         }
         return pos;
@@ -129,11 +147,29 @@ public class PDFByteArray {
         setPosition(searchNotChar(getPosition(), chars));
     }
 
+    /**
+     * Reads a whole file into a byte array in the heap.
+     * @param file The file to be read.
+     */
     void openFile(File file) {
         try {
             InputStream inputStream = new FileInputStream(file);
-            pdfArray = new byte[(int)file.length()];
-            inputStream.read(pdfArray);
+            try {
+                byte[] bytes = new byte[(int)file.length()];
+                // A single read might return less than asked for, so keep on reading until the
+                // whole file is in the array.
+                int read = 0;
+                while (read < bytes.length) {
+                    int n = inputStream.read(bytes, read, bytes.length - read);
+                    if (n < 0) {
+                        break;
+                    }
+                    read += n;
+                }
+                pdfArray = ByteBuffer.wrap(bytes, 0, read);
+            } finally {
+                inputStream.close();
+            }
         } catch (FileNotFoundException e) {
             Log.i("pdftesteri", "File doesn't exists!");
         } catch (IOException e) {
@@ -146,8 +182,142 @@ public class PDFByteArray {
         openFile(file);
     }
 
+    /**
+     * Maps a whole file to memory read-only instead of reading it into the heap. The bytes are
+     * read from the page cache of the operating system as they are accessed, and only the parts
+     * which are actually decoded are copied to the heap.
+     * <p>
+     * The mapping stays valid after the channel is closed. It is released when this object
+     * (and all buffers sharing the mapping) are garbage collected.
+     * @param file The file to be mapped.
+     * @throws UncheckedIOException If the file can't be read. Carrying on with the bytes of the
+     *         previous file or none at all would only fail later with a less helpful error.
+     */
+    void mapFile(File file) {
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                pdfArray = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                raf.close();
+            }
+        } catch (FileNotFoundException e) {
+            Log.i("pdftesteri", "File doesn't exists!");
+            throw new UncheckedIOException("Can't open " + file, e);
+        } catch (IOException e) {
+            Log.i("pdftesteri", "IO error!");
+            throw new UncheckedIOException("Can't read " + file, e);
+        }
+    }
+
+    void mapFile(String filename) {
+        mapFile(new File(filename));
+    }
+
+    /**
+     * Reads a whole file into the heap without blocking the calling thread. The file is read
+     * with an AsynchronousFileChannel, whose reads are completed by the shared threads of the
+     * platform, so any number of files can be read at the same time without a thread for each.
+     * @param file The file to be read.
+     * @return A future, which completes with the bytes of the file, or exceptionally with an
+     *         IOException if the file can't be read.
+     */
+    static CompletableFuture<byte[]> readFileAsync(File file) {
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        final AsynchronousFileChannel channel;
+        final byte[] bytes;
+        try {
+            channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                channel.close();
+                throw new IOException("File " + file + " is too large.");
+            }
+            bytes = new byte[(int) size];
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        // A single read might return less than asked for, so the handler keeps on reading from
+        // where the previous read ended until the buffer is full or the file ends.
+        channel.read(buffer, 0, null, new CompletionHandler<Integer, Void>() {
+            @Override
+            public void completed(Integer n, Void attachment) {
+                if (n >= 0 && buffer.hasRemaining()) {
+                    channel.read(buffer, buffer.position(), null, this);
+                    return;
+                }
+                close();
+                future.complete(buffer.hasRemaining() ? Arrays.copyOf(bytes, buffer.position()) : bytes);
+            }
+
+            @Override
+            public void failed(Throwable e, Void attachment) {
+                close();
+                future.completeExceptionally(e);
+            }
+
+            private void close() {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    Log.i("pdftesteri", "IO error!");
+                }
+            }
+        });
+        return future;
+    }
+
     void setBytes(byte[] bytes) {
-        pdfArray = bytes;
+        pdfArray = ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Uses the start of a byte array as the bytes of this array. The byte array isn't copied.
+     * @param bytes The byte array.
+     * @param length The number of bytes in use.
+     */
+    void setBytes(byte[] bytes, int length) {
+        pdfArray = ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    /**
+     * Returns a view to a part of this array. The view shares the bytes with this array, so
+     * nothing is copied. Positions in the view start from 0, and the view has its own current
+     * position.
+     * @param start The starting index, inclusive.
+     * @param end The ending index, exclusive.
+     * @return The view.
+     */
+    PDFByteArray getView(int start, int end) {
+        ByteBuffer source = pdfArray.duplicate();
+        source.limit(end);
+        source.position(start);
+        PDFByteArray view = new PDFByteArray();
+        view.pdfArray = source.slice();
+        return view;
+    }
+
+    /**
+     * Returns the bytes as a read-only buffer without copying them. The buffer is independent of
+     * the current position of this array.
+     * @return The bytes from the start to the end of this array.
+     */
+    ByteBuffer asByteBuffer() {
+        return pdfArray.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the bytes as a buffer sharing them with this array without copying. Unlike the
+     * buffer from asByteBuffer, a buffer on bytes in the heap gives access to its backing array,
+     * so the bytes can be given to methods taking a byte array. The bytes must not be changed
+     * through the buffer.
+     * @return The bytes from the start to the end of this array.
+     */
+    ByteBuffer asSharedByteBuffer() {
+        return pdfArray.duplicate();
     }
 
     /**
@@ -157,10 +327,8 @@ public class PDFByteArray {
      * Encoding ISO-8859-1 is used. This is because the PDF files from HelB are encoded with
      * WinAnsiEncoding, and ISO-8859-1 happens to encode characters right on this occasion.
      *
-     * If ISO-8859-1 is unsupported, platform's default charset is used. The so-called scandic
-     * characters will most probably be turned into garbage, but the strings will most likely
-     * remain readable by humans. If strings are handled further by other code, problems may
-     * arise.
+     * When the bytes are in the heap, the string is decoded straight from them without copying
+     * them to a temporary array first.
      *
      * @param start The position, from which to get the string.
      * @param trimChars The characters, which are trimmed from the front of the string.
@@ -170,11 +338,7 @@ public class PDFByteArray {
     public String getString(int start, String trimChars, String delimiterChars) {
         int s = searchNotChar(start, trimChars);
         int end = searchChar(s, delimiterChars);
-        try {
-            return new String(getBytes(s, end), "ISO-8859-1");
-        } catch (UnsupportedEncodingException e) {
-            return new String(getBytes(s, end));
-        }
+        return decodeString(s, end);
     }
 
     /**
@@ -190,32 +354,85 @@ public class PDFByteArray {
         int s = getPosition();
         searchChar(delimiterChars);
         int end = getPosition();
-        try {
-            return new String(getBytes(s, end), "ISO-8859-1");
-        } catch (UnsupportedEncodingException e) {
-            return new String(getBytes(s, end));
+        return decodeString(s, end);
+    }
+
+    /**
+     * Decodes bytes from the array to a string. See documentation for getString(int, String,
+     * String) for details about character encoding.
+     * @param start The starting index, inclusive.
+     * @param end The ending index, exclusive.
+     * @return The string.
+     */
+    String decodeString(int start, int end) {
+        if (pdfArray.hasArray() && start >= 0 && start <= end && end <= pdfArray.limit()) {
+            return new String(pdfArray.array(), pdfArray.arrayOffset() + start, end - start,
+                    StandardCharsets.ISO_8859_1);
+        }
+        return new String(getBytes(start, end), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Searches for the first occurrence of a pattern in the byte array. If there is no such
+     * pattern in the byte array, returns -1.
+     * @param start The position from which to start the search.
+     * @param pattern The pattern which is searched.
+     * @return The position of the first occurrence of the pattern, or -1 if not found.
+     */
+    int searchPattern(int start, PDFSearchPattern pattern) {
+        byte[] p = pattern.bytes;
+        int m = p.length;
+        int last = pdfArray.limit() - m;
+        int i = Math.max(start, 0);
+        while (i <= last) {
+            int j = m - 1;
+            while (j >= 0 && pdfArray.get(i + j) == p[j]) {
+                j--;
+            }
+            if (j < 0) {
+                return i;
+            }
+            i += pattern.forwardSkip[pdfArray.get(i + m - 1) & 0xff];
+        }
+        return -1;
+    }
+
+    /**
+     * Searches backwards for the last occurrence of a pattern, which starts at or before a
+     * certain position. This is meant for structures at the end of the file, like startxref
+     * and trailer, which can then be found without scanning the whole file.
+     * @param start The position from which to start the search backwards. The pattern may start
+     *              at this position.
+     * @param pattern The pattern which is searched.
+     * @return The position of the last occurrence of the pattern, or -1 if not found.
+     */
+    int searchPatternBackwards(int start, PDFSearchPattern pattern) {
+        byte[] p = pattern.bytes;
+        int m = p.length;
+        int i = Math.min(start, pdfArray.limit() - m);
+        while (i >= 0) {
+            int j = 0;
+            while (j < m && pdfArray.get(i + j) == p[j]) {
+                j++;
+            }
+            if (j == m) {
+                return i;
+            }
+            i -= pattern.backwardSkip[pdfArray.get(i) & 0xff];
         }
+        return -1;
     }
 
     /**
      * Searches for the first occurrence of a string in the byte array. If there is no such string
-     * in the byte array, returns -1.
+     * in the byte array, returns -1. If the same string is searched many times, it is better to
+     * create a PDFSearchPattern once and use searchPattern.
      * @param start The position from which to start the search.
      * @param search The string which is searched.
      * @return The position of the first occurrence of the string, or -1 if not found.
      */
     int searchString(int start, String search) {
-        int i = start;
-        String found = new String(pdfArray, i, search.length());
-        while (i < (pdfArray.length - search.length()) && !found.equals(search)) {
-            i++;
-            found = new String(pdfArray, i, search.length());
-        }
-        if (found.equals(search)) {
-            return i;
-        } else {
-            return -1;
-        }
+        return searchPattern(start, new PDFSearchPattern(search));
     }
 
     /**
@@ -228,17 +445,31 @@ public class PDFByteArray {
         setPosition(searchString(getPosition(), search));
     }
 
+    /**
+     * Searches backwards for the last occurrence of a pattern in the whole byte array. The
+     * current position is moved to the position of the pattern which is found. If there is no
+     * such pattern in the byte array, the current position is set to -1.
+     * @param pattern The pattern which is searched.
+     */
+    void searchPatternFromEnd(PDFSearchPattern pattern) {
+        setPosition(searchPatternBackwards(getLength(), pattern));
+    }
+
 
     /**
      * Returns bytes from the array.
      * @param start The starting index, inclusive.
      * @param end The ending index, exclusive.
-     * @return
+     * @return The bytes. If the ending index is past the end of the array, the rest of the
+     * result is filled with zeros.
      */
     byte[] getBytes(int start, int end) {
         byte[] result;
         try {
-            result = Arrays.copyOfRange(pdfArray, start, end);
+            result = new byte[end - start];
+            ByteBuffer source = pdfArray.duplicate();
+            source.position(start);
+            source.get(result, 0, Math.min(end, source.limit()) - start);
         } catch (Exception e) {
             Log.i("pdftesteri", "getBytes exception!");
             result = new byte[0];
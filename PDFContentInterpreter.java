@@ -0,0 +1,347 @@
+package pdftextextractor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Reads a decoded content stream sequentially, operator by operator, and emits a PDFTextItem for
+ * every text string shown. This is still not a conforming reader, but it reads the stream the way
+ * the PDF specification means it to be read, so it doesn't depend on HelB writing each operator
+ * on its own line or on the number of lines between a clipping path and its text.
+ * <p>
+ * Only the graphics state needed by PDFTextItem is tracked:
+ * <ul>
+ *   <li>The clipping path set by W or W* and the path before it, which gives the surrounding
+ *       box. Only the bounding box of the path is used. q and Q save and restore it.</li>
+ *   <li>The text position set by BT, Tm, Td, TD, T* and TL.</li>
+ *   <li>The strings shown by Tj, TJ, ' and ".</li>
+ * </ul>
+ * Like before, the coordinates are taken as they are in the stream, and the current
+ * transformation matrix (cm) is not applied. The y-coordinates are flipped, because in pdf the
+ * origin of the coordinate system is in the lower left corner, and us humans in the western
+ * world at least read from top to bottom.
+ * <p>
+ * If a text isn't clipped at all, the position of the text is used as its surrounding box.
+ */
+public class PDFContentInterpreter {
+
+    private static final PDFSearchPattern END_OF_INLINE_IMAGE = new PDFSearchPattern("EI");
+
+    // Numeric operands of the current operator.
+    private float[] operands = new float[16];
+    private int operandCount;
+
+    // The strings of the current operator. TJ has many of them in an array.
+    private StringBuilder textOperand = new StringBuilder();
+    private boolean hasTextOperand;
+
+    // The bounding box of the current path.
+    private float pathMinX, pathMinY, pathMaxX, pathMaxY;
+    private boolean hasPath;
+    private boolean clipPending;
+
+    // The current clipping box and the saved ones.
+    private float clipMinX, clipMinY, clipMaxX, clipMaxY;
+    private boolean hasClip;
+    private float[] clipStack = new float[5*8];
+    private int clipStackSize;
+
+    // Where the text items go. Either a consumer or a store is in use.
+    private Consumer<PDFTextItem> consumer;
+    private PDFTextItemStore store;
+    private int pageNum;
+
+    // The text line matrix. Only the translation is used.
+    private float lineX, lineY;
+    private float leading;
+
+    /**
+     * Reads a content stream and returns its text items in the order they are in the stream.
+     * @param contents The decoded content stream.
+     * @param pageNum The page number given to the text items.
+     * @return The text items.
+     */
+    public ArrayList<PDFTextItem> getTextItems(PDFByteArray contents, int pageNum) {
+        final ArrayList<PDFTextItem> items = new ArrayList<>();
+        interpret(contents, pageNum, items::add);
+        return items;
+    }
+
+    /**
+     * Reads a content stream and gives each text item to a consumer as soon as it is found.
+     * @param contents The decoded content stream.
+     * @param pageNum The page number given to the text items.
+     * @param consumer The consumer of the text items.
+     */
+    public void interpret(PDFByteArray contents, int pageNum, Consumer<PDFTextItem> consumer) {
+        this.consumer = consumer;
+        this.store = null;
+        interpret(contents, pageNum);
+    }
+
+    /**
+     * Reads a content stream and adds its text items to a store. No PDFTextItems or strings are
+     * created for them.
+     * @param contents The decoded content stream.
+     * @param pageNum The page number given to the text items.
+     * @param store The store.
+     */
+    public void interpret(PDFByteArray contents, int pageNum, PDFTextItemStore store) {
+        this.consumer = null;
+        this.store = store;
+        interpret(contents, pageNum);
+    }
+
+    private void interpret(PDFByteArray contents, int pageNum) {
+        reset();
+        this.pageNum = pageNum;
+        PDFLexer lexer = new PDFLexer(contents, 0);
+        int type;
+        while ((type = lexer.next()) != PDFLexer.TT_EOF) {
+            switch (type) {
+                case PDFLexer.TT_INTEGER:
+                case PDFLexer.TT_REAL:
+                    pushOperand(lexer.getReal());
+                    break;
+                case PDFLexer.TT_STRING:
+                    textOperand.append(lexer.getString());
+                    hasTextOperand = true;
+                    break;
+                case PDFLexer.TT_KEYWORD:
+                    operator(contents, lexer);
+                    operandCount = 0;
+                    textOperand.setLength(0);
+                    hasTextOperand = false;
+                    break;
+                default:
+                    // Names, array brackets and dictionaries are not needed by any of the
+                    // operators handled here. The strings inside a TJ array are collected
+                    // above, and the numbers inside it are ignored.
+                    if (type == PDFLexer.TT_ARRAY_START) {
+                        readTextArray(lexer);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private void reset() {
+        operandCount = 0;
+        textOperand.setLength(0);
+        hasTextOperand = false;
+        hasPath = false;
+        clipPending = false;
+        hasClip = false;
+        clipStackSize = 0;
+        lineX = 0;
+        lineY = 0;
+        leading = 0;
+    }
+
+    /**
+     * Collects the strings from an array operand, which is used by TJ. The numbers in the
+     * array adjust the spacing of the text, and they are skipped.
+     */
+    private void readTextArray(PDFLexer lexer) {
+        int type;
+        while ((type = lexer.next()) != PDFLexer.TT_ARRAY_END && type != PDFLexer.TT_EOF) {
+            if (type == PDFLexer.TT_STRING) {
+                textOperand.append(lexer.getString());
+                hasTextOperand = true;
+            }
+        }
+    }
+
+    private void pushOperand(float value) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operands.length * 2);
+        }
+        operands[operandCount++] = value;
+    }
+
+    /**
+     * Returns an operand counted from the end, so that extra operands in a broken stream don't
+     * matter. 0 is the last operand.
+     */
+    private float operand(int fromEnd) {
+        int i = operandCount - 1 - fromEnd;
+        return i >= 0 ? operands[i] : 0;
+    }
+
+    private void operator(PDFByteArray contents, PDFLexer lexer) {
+        int start = lexer.getTokenStart();
+        int length = lexer.getTokenEnd() - start;
+        byte c0 = contents.getByte(start);
+        byte c1 = length > 1 ? contents.getByte(start + 1) : 0;
+        if (length == 1) {
+            switch (c0) {
+                case 'q':
+                    saveClip();
+                    break;
+                case 'Q':
+                    restoreClip();
+                    break;
+                case 'm':
+                case 'l':
+                    addToPath(operand(1), operand(0));
+                    break;
+                case 'c':
+                    addToPath(operand(5), operand(4));
+                    addToPath(operand(3), operand(2));
+                    addToPath(operand(1), operand(0));
+                    break;
+                case 'v':
+                case 'y':
+                    addToPath(operand(3), operand(2));
+                    addToPath(operand(1), operand(0));
+                    break;
+                case 'h':
+                    break;
+                case 'W':
+                    clipPending = true;
+                    break;
+                case 'n': case 'S': case 's': case 'f': case 'F': case 'B': case 'b':
+                    endPath();
+                    break;
+                case '\'':
+                    nextLine();
+                    showText();
+                    break;
+                case '"':
+                    nextLine();
+                    showText();
+                    break;
+                default:
+                    break;
+            }
+        } else if (length == 2) {
+            if (c0 == 'r' && c1 == 'e') {
+                float x = operand(3);
+                float y = operand(2);
+                addToPath(x, y);
+                addToPath(x + operand(1), y + operand(0));
+            } else if (c0 == 'W' && c1 == '*') {
+                clipPending = true;
+            } else if ((c0 == 'f' || c0 == 'B' || c0 == 'b') && c1 == '*') {
+                endPath();
+            } else if (c0 == 'B' && c1 == 'T') {
+                lineX = 0;
+                lineY = 0;
+            } else if (c0 == 'T') {
+                switch (c1) {
+                    case 'm':
+                        lineX = operand(1);
+                        lineY = operand(0);
+                        break;
+                    case 'd':
+                        lineX += operand(1);
+                        lineY += operand(0);
+                        break;
+                    case 'D':
+                        leading = -operand(0);
+                        lineX += operand(1);
+                        lineY += operand(0);
+                        break;
+                    case 'L':
+                        leading = operand(0);
+                        break;
+                    case '*':
+                        nextLine();
+                        break;
+                    case 'j':
+                    case 'J':
+                        showText();
+                        break;
+                    default:
+                        break;
+                }
+            } else if (c0 == 'I' && c1 == 'D') {
+                // Inline image data is binary, and it isn't made of tokens. Skip it.
+                int end = contents.searchPattern(lexer.getTokenEnd(), END_OF_INLINE_IMAGE);
+                lexer.setPosition(end < 0 ? contents.getLength() : end + END_OF_INLINE_IMAGE.length());
+            }
+        }
+    }
+
+    private void nextLine() {
+        lineY -= leading;
+    }
+
+    private void addToPath(float x, float y) {
+        if (!hasPath) {
+            pathMinX = pathMaxX = x;
+            pathMinY = pathMaxY = y;
+            hasPath = true;
+        } else {
+            pathMinX = Math.min(pathMinX, x);
+            pathMaxX = Math.max(pathMaxX, x);
+            pathMinY = Math.min(pathMinY, y);
+            pathMaxY = Math.max(pathMaxY, y);
+        }
+    }
+
+    /**
+     * Ends the current path. If the path was marked for clipping, it becomes the new clipping
+     * box. HelB sets a new clipping box inside q and Q for every text, so the new box replaces
+     * the old one instead of being intersected with it.
+     */
+    private void endPath() {
+        if (clipPending && hasPath) {
+            clipMinX = pathMinX;
+            clipMinY = pathMinY;
+            clipMaxX = pathMaxX;
+            clipMaxY = pathMaxY;
+            hasClip = true;
+        }
+        clipPending = false;
+        hasPath = false;
+    }
+
+    private void saveClip() {
+        if (clipStackSize + 5 > clipStack.length) {
+            clipStack = Arrays.copyOf(clipStack, clipStack.length * 2);
+        }
+        clipStack[clipStackSize++] = clipMinX;
+        clipStack[clipStackSize++] = clipMinY;
+        clipStack[clipStackSize++] = clipMaxX;
+        clipStack[clipStackSize++] = clipMaxY;
+        clipStack[clipStackSize++] = hasClip ? 1 : 0;
+    }
+
+    private void restoreClip() {
+        if (clipStackSize < 5) {
+            return;
+        }
+        hasClip = clipStack[--clipStackSize] != 0;
+        clipMaxY = clipStack[--clipStackSize];
+        clipMaxX = clipStack[--clipStackSize];
+        clipMinY = clipStack[--clipStackSize];
+        clipMinX = clipStack[--clipStackSize];
+    }
+
+    private void showText() {
+        if (!hasTextOperand) {
+            return;
+        }
+        float minX = hasClip ? clipMinX : lineX;
+        float minY = hasClip ? clipMinY : lineY;
+        float maxX = hasClip ? clipMaxX : lineX;
+        float maxY = hasClip ? clipMaxY : lineY;
+        if (store != null) {
+            store.add(pageNum, minX, -maxY, maxX, -minY, lineX, -lineY, textOperand);
+            return;
+        }
+        PDFTextItem textItem = new PDFTextItem();
+        textItem.page = pageNum;
+        textItem.topLeftX = minX;
+        textItem.topLeftY = -maxY;
+        textItem.bottomRightX = maxX;
+        textItem.bottomRightY = -minY;
+        textItem.x = lineX;
+        textItem.y = -lineY;
+        textItem.text = textOperand.toString();
+        consumer.accept(textItem);
+    }
+
+}
@@ -0,0 +1,475 @@
+package tuomaan.pdftest;
+
+/**
+ * Splits the bytes of a PDFByteArray into tokens. Each byte is classified once with a lookup
+ * table, and each token is read only once. Numbers are parsed directly from the bytes, so
+ * reading integers, reals and keywords doesn't create any strings.
+ * <p>
+ * PDFObject reads objects from the tokens. Indirect references and indirect objects both start
+ * with two integers, so the lexer keeps a small buffer of tokens which have been looked at but
+ * not yet consumed.
+ *
+ * TODO: Strings are returned as ISO-8859-1, see PDFByteArray.getString for details.
+ */
+public class PDFLexer {
+
+    public static final int TT_EOF = 0;
+    public static final int TT_INTEGER = 1;
+    public static final int TT_REAL = 2;
+    public static final int TT_NAME = 3;
+    public static final int TT_STRING = 4;
+    public static final int TT_KEYWORD = 5;
+    public static final int TT_ARRAY_START = 6;
+    public static final int TT_ARRAY_END = 7;
+    public static final int TT_DICTIONARY_START = 8;
+    public static final int TT_DICTIONARY_END = 9;
+
+    /** Character classes from PDF specification. */
+    private static final byte CC_REGULAR = 0;
+    private static final byte CC_WHITESPACE = 1;
+    private static final byte CC_DELIMITER = 2;
+
+    private static final byte[] CHAR_CLASS = new byte[256];
+
+    static {
+        for (int i=0; i < PDFByteArray.WHITESPACE.length(); i++) {
+            CHAR_CLASS[PDFByteArray.WHITESPACE.charAt(i)] = CC_WHITESPACE;
+        }
+        for (int i=0; i < PDFByteArray.DELIMITERS.length(); i++) {
+            CHAR_CLASS[PDFByteArray.DELIMITERS.charAt(i)] = CC_DELIMITER;
+        }
+    }
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L };
+
+    /**
+     * The maximum number of tokens, which can be looked ahead.
+     */
+    private static final int LOOKAHEAD = 3;
+
+    private PDFByteArray pdfArray;
+
+    /**
+     * The position from which the next token is scanned.
+     */
+    private int scanPosition;
+
+    // The tokens which have been scanned but not consumed are stored in a ring buffer of
+    // parallel arrays, so that peeking doesn't allocate.
+    private final int[] tokenType = new int[LOOKAHEAD];
+    private final int[] tokenStart = new int[LOOKAHEAD];
+    private final int[] tokenEnd = new int[LOOKAHEAD];
+    private final int[] tokenInteger = new int[LOOKAHEAD];
+    private final float[] tokenReal = new float[LOOKAHEAD];
+    private final String[] tokenString = new String[LOOKAHEAD];
+    private int first = 0;
+    private int buffered = 0;
+
+    public PDFLexer(PDFByteArray pdfArray, int start) {
+        this.pdfArray = pdfArray;
+        this.scanPosition = start;
+    }
+
+    /**
+     * Returns the position of the first byte, which hasn't been consumed. If tokens have been
+     * peeked at, this is the start of the first of them.
+     * @return The position in the byte array.
+     */
+    public int getPosition() {
+        if (buffered > 0) {
+            return tokenStart[first];
+        }
+        return scanPosition;
+    }
+
+    /**
+     * Moves to a position in the byte array. All peeked tokens are forgotten. This is used to
+     * skip over the data of a stream, which isn't made of tokens.
+     * @param position The new position.
+     */
+    public void setPosition(int position) {
+        scanPosition = position;
+        buffered = 0;
+    }
+
+    /**
+     * Returns the type of a token without consuming it.
+     * @param ahead How many tokens to look ahead. 0 is the next token.
+     * @return The type of the token (TT_XXX).
+     */
+    public int peekType(int ahead) {
+        fill(ahead);
+        return tokenType[slot(ahead)];
+    }
+
+    /**
+     * Tests if a token is a certain keyword without consuming it.
+     * @param ahead How many tokens to look ahead. 0 is the next token.
+     * @param keyword The keyword.
+     * @return True, if the token is the keyword.
+     */
+    public boolean peekKeyword(int ahead, String keyword) {
+        fill(ahead);
+        int s = slot(ahead);
+        if (tokenType[s] != TT_KEYWORD || tokenEnd[s] - tokenStart[s] != keyword.length()) {
+            return false;
+        }
+        for (int i=0; i < keyword.length(); i++) {
+            if (pdfArray.getByte(tokenStart[s] + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the integer value of the next token without consuming it.
+     * @param ahead How many tokens to look ahead. 0 is the next token.
+     * @return The value, or 0 if the token isn't an integer.
+     */
+    public int peekInteger(int ahead) {
+        fill(ahead);
+        return tokenInteger[slot(ahead)];
+    }
+
+    /**
+     * Consumes the next token.
+     * @return The type of the consumed token.
+     */
+    public int next() {
+        fill(0);
+        int type = tokenType[first];
+        first = (first + 1) % LOOKAHEAD;
+        buffered--;
+        return type;
+    }
+
+    // The values of the last consumed token stay in its slot until the slot is scanned again,
+    // so they should be fetched right after next() and before peeking further.
+
+    /**
+     * Returns the integer value of the token, which was consumed last.
+     * @return The value.
+     */
+    public int getInteger() {
+        return tokenInteger[lastSlot()];
+    }
+
+    /**
+     * Returns the real value of the token, which was consumed last. Integers are also returned
+     * as reals.
+     * @return The value.
+     */
+    public float getReal() {
+        return tokenReal[lastSlot()];
+    }
+
+    /**
+     * Returns the string value of the token, which was consumed last. For names this is the name
+     * without the slash, and for strings the decoded contents of the string.
+     * @return The value.
+     */
+    public String getString() {
+        return tokenString[lastSlot()];
+    }
+
+    /**
+     * Returns the position of the token, which was consumed last.
+     * @return The position in the byte array.
+     */
+    public int getTokenStart() {
+        return tokenStart[lastSlot()];
+    }
+
+    /**
+     * Returns the position after the token, which was consumed last.
+     * @return The position in the byte array.
+     */
+    public int getTokenEnd() {
+        return tokenEnd[lastSlot()];
+    }
+
+    private int slot(int ahead) {
+        return (first + ahead) % LOOKAHEAD;
+    }
+
+    private int lastSlot() {
+        return (first + LOOKAHEAD - 1) % LOOKAHEAD;
+    }
+
+    private void fill(int ahead) {
+        while (buffered <= ahead) {
+            scan(slot(buffered));
+            buffered++;
+        }
+    }
+
+    private static int charClass(int b) {
+        return CHAR_CLASS[b & 0xff];
+    }
+
+    /**
+     * Scans the next token from the byte array into a slot of the token buffer.
+     */
+    private void scan(int s) {
+        int length = pdfArray.getLength();
+        int pos = skipWhitespaceAndComments(scanPosition);
+        tokenStart[s] = pos;
+        tokenString[s] = null;
+        tokenInteger[s] = 0;
+        tokenReal[s] = 0;
+        if (pos >= length) {
+            tokenType[s] = TT_EOF;
+            tokenEnd[s] = pos;
+            scanPosition = pos;
+            return;
+        }
+        byte b = pdfArray.getByte(pos);
+        switch (b) {
+            case '[':
+                tokenType[s] = TT_ARRAY_START;
+                pos++;
+                break;
+            case ']':
+                tokenType[s] = TT_ARRAY_END;
+                pos++;
+                break;
+            case '<':
+                if (pos+1 < length && pdfArray.getByte(pos+1) == '<') {
+                    tokenType[s] = TT_DICTIONARY_START;
+                    pos += 2;
+                } else {
+                    pos = scanHexString(s, pos+1);
+                }
+                break;
+            case '>':
+                tokenType[s] = TT_DICTIONARY_END;
+                pos += (pos+1 < length && pdfArray.getByte(pos+1) == '>') ? 2 : 1;
+                break;
+            case '(':
+                pos = scanLiteralString(s, pos+1);
+                break;
+            case '/':
+                pos = scanName(s, pos+1);
+                break;
+            default:
+                pos = scanRegular(s, pos);
+                break;
+        }
+        tokenEnd[s] = pos;
+        scanPosition = pos;
+    }
+
+    private int skipWhitespaceAndComments(int pos) {
+        int length = pdfArray.getLength();
+        while (pos < length) {
+            byte b = pdfArray.getByte(pos);
+            if (charClass(b) == CC_WHITESPACE) {
+                pos++;
+            } else if (b == '%') {
+                // A comment runs to the end of the line.
+                while (pos < length && (b = pdfArray.getByte(pos)) != 10 && b != 13) {
+                    pos++;
+                }
+            } else {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Scans a run of regular characters. It is either a number or a keyword.
+     */
+    private int scanRegular(int s, int pos) {
+        int length = pdfArray.getLength();
+        int start = pos;
+        boolean negative = false;
+        boolean isNumber = true;
+        boolean seenDot = false;
+        boolean seenDigit = false;
+        long intPart = 0;
+        long fraction = 0;
+        int fractionDigits = 0;
+        byte b = pdfArray.getByte(pos);
+        if (b == '-' || b == '+') {
+            negative = (b == '-');
+            pos++;
+        }
+        while (pos < length && charClass(b = pdfArray.getByte(pos)) == CC_REGULAR) {
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (seenDot) {
+                    if (fractionDigits < 9) {
+                        fraction = fraction*10 + (b - '0');
+                        fractionDigits++;
+                    }
+                } else {
+                    intPart = intPart*10 + (b - '0');
+                }
+            } else if (b == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                isNumber = false;
+            }
+            pos++;
+        }
+        if (pos == start) {
+            // A lone delimiter, which doesn't start any token, like a stray brace. Skip it.
+            pos++;
+            isNumber = false;
+        }
+        if (isNumber && seenDigit) {
+            if (seenDot) {
+                // A single division of exact values gives the correctly rounded double.
+                double value = (intPart * POWERS_OF_TEN[fractionDigits] + fraction)
+                        / (double) POWERS_OF_TEN[fractionDigits];
+                tokenType[s] = TT_REAL;
+                tokenReal[s] = (float) (negative ? -value : value);
+            } else {
+                tokenType[s] = TT_INTEGER;
+                tokenInteger[s] = (int) (negative ? -intPart : intPart);
+                tokenReal[s] = tokenInteger[s];
+            }
+        } else {
+            tokenType[s] = TT_KEYWORD;
+        }
+        return pos;
+    }
+
+    /**
+     * Scans a name. Escapes like #20 are decoded.
+     */
+    private int scanName(int s, int pos) {
+        int length = pdfArray.getLength();
+        // Names without escapes are looked up from the name table straight from the bytes.
+        int end = pos;
+        boolean escaped = false;
+        byte b;
+        while (end < length && charClass(b = pdfArray.getByte(end)) == CC_REGULAR) {
+            escaped |= (b == '#');
+            end++;
+        }
+        if (!escaped) {
+            tokenType[s] = TT_NAME;
+            tokenString[s] = PDFNameTable.get(pdfArray, pos, end);
+            return end;
+        }
+        StringBuilder sb = new StringBuilder();
+        while (pos < length && charClass(b = pdfArray.getByte(pos)) == CC_REGULAR) {
+            if (b == '#' && pos+2 < length && hexValue(pdfArray.getByte(pos+1)) >= 0
+                    && hexValue(pdfArray.getByte(pos+2)) >= 0) {
+                sb.append((char) (hexValue(pdfArray.getByte(pos+1))*16 + hexValue(pdfArray.getByte(pos+2))));
+                pos += 3;
+            } else {
+                sb.append((char) (b & 0xff));
+                pos++;
+            }
+        }
+        tokenType[s] = TT_NAME;
+        tokenString[s] = sb.toString();
+        return pos;
+    }
+
+    /**
+     * Scans a literal string. Balanced parentheses are allowed inside the string, and escape
+     * sequences are decoded.
+     */
+    private int scanLiteralString(int s, int pos) {
+        int length = pdfArray.getLength();
+        StringBuilder sb = new StringBuilder();
+        int depth = 1;
+        while (pos < length) {
+            byte b = pdfArray.getByte(pos++);
+            if (b == '(') {
+                depth++;
+            } else if (b == ')') {
+                if (--depth == 0) {
+                    break;
+                }
+            } else if (b == '\\' && pos < length) {
+                b = pdfArray.getByte(pos++);
+                switch (b) {
+                    case 'n': sb.append('\n'); continue;
+                    case 'r': sb.append('\r'); continue;
+                    case 't': sb.append('\t'); continue;
+                    case 'b': sb.append('\b'); continue;
+                    case 'f': sb.append('\f'); continue;
+                    case 13:
+                        // Escaped end-of-line is a line continuation.
+                        if (pos < length && pdfArray.getByte(pos) == 10) {
+                            pos++;
+                        }
+                        continue;
+                    case 10:
+                        continue;
+                    default:
+                        if (b >= '0' && b <= '7') {
+                            int value = b - '0';
+                            for (int i=0; i < 2 && pos < length; i++) {
+                                byte d = pdfArray.getByte(pos);
+                                if (d < '0' || d > '7') {
+                                    break;
+                                }
+                                value = value*8 + (d - '0');
+                                pos++;
+                            }
+                            sb.append((char) (value & 0xff));
+                            continue;
+                        }
+                        // \( \) \\ and unknown escapes are the character itself.
+                        break;
+                }
+            }
+            sb.append((char) (b & 0xff));
+        }
+        tokenType[s] = TT_STRING;
+        tokenString[s] = sb.toString();
+        return pos;
+    }
+
+    /**
+     * Scans a hexadecimal string. Whitespace inside the string is ignored, and a missing last
+     * digit is taken to be 0.
+     */
+    private int scanHexString(int s, int pos) {
+        int length = pdfArray.getLength();
+        StringBuilder sb = new StringBuilder();
+        int high = -1;
+        while (pos < length) {
+            byte b = pdfArray.getByte(pos++);
+            if (b == '>') {
+                break;
+            }
+            int value = hexValue(b);
+            if (value < 0) {
+                continue;
+            }
+            if (high < 0) {
+                high = value;
+            } else {
+                sb.append((char) (high*16 + value));
+                high = -1;
+            }
+        }
+        if (high >= 0) {
+            sb.append((char) (high*16));
+        }
+        tokenType[s] = TT_STRING;
+        tokenString[s] = sb.toString();
+        return pos;
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        } else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        } else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+
+}
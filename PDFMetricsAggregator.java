@@ -0,0 +1,178 @@
+package tuomaan.pdftest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A PDFMetricsListener, which adds up the metrics of all files it is given to. For each phase
+ * it keeps the number of times the phase was run, the total time, and a histogram of the times.
+ * The buckets of the histograms are powers of two of nanoseconds, from 1 microsecond to about
+ * 17 seconds.
+ * <p>
+ * The same aggregator can be given to many extractors running in different threads. The
+ * counters are updated without locking. The totals can be read at any time, for example by a
+ * monitoring system through toPrometheusText.
+ */
+public class PDFMetricsAggregator implements PDFMetricsListener {
+
+    /** The upper bound of the first bucket is 2^FIRST_BUCKET_SHIFT nanoseconds. */
+    private static final int FIRST_BUCKET_SHIFT = 10;
+    /** The number of buckets. The last one takes everything longer. */
+    public static final int BUCKET_COUNT = 25;
+
+    private final AtomicLongArray phaseCounts = new AtomicLongArray(PHASE_COUNT);
+    private final AtomicLongArray phaseNanos = new AtomicLongArray(PHASE_COUNT);
+    private final AtomicLongArray histograms = new AtomicLongArray(PHASE_COUNT * BUCKET_COUNT);
+
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesInflated = new AtomicLong();
+    private final AtomicLong objectsParsed = new AtomicLong();
+    private final AtomicLong textItems = new AtomicLong();
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong fileNanos = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    @Override
+    public void phaseFinished(int phase, long nanos) {
+        phaseCounts.incrementAndGet(phase);
+        phaseNanos.addAndGet(phase, nanos);
+        histograms.incrementAndGet(phase * BUCKET_COUNT + bucketOf(nanos));
+    }
+
+    @Override
+    public void bytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    @Override
+    public void bytesInflated(long bytes) {
+        bytesInflated.addAndGet(bytes);
+    }
+
+    @Override
+    public void objectParsed() {
+        objectsParsed.incrementAndGet();
+    }
+
+    @Override
+    public void textItemsEmitted(int count) {
+        textItems.addAndGet(count);
+    }
+
+    @Override
+    public void fileExtracted(long nanos, long allocatedBytes) {
+        files.incrementAndGet();
+        fileNanos.addAndGet(nanos);
+        if (allocatedBytes > 0) {
+            this.allocatedBytes.addAndGet(allocatedBytes);
+        }
+    }
+
+    /**
+     * Returns the bucket of a duration. A duration belongs to the first bucket, whose upper bound
+     * is at least the duration.
+     */
+    private static int bucketOf(long nanos) {
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(nanos - 1, 0));
+        return Math.min(Math.max(bits - FIRST_BUCKET_SHIFT, 0), BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the upper bound of a bucket.
+     * @param bucket The bucket.
+     * @return The upper bound in nanoseconds, or Long.MAX_VALUE for the last bucket.
+     */
+    public static long getBucketUpperBound(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << (bucket + FIRST_BUCKET_SHIFT);
+    }
+
+    public long getPhaseCount(int phase) {
+        return phaseCounts.get(phase);
+    }
+
+    public long getPhaseNanos(int phase) {
+        return phaseNanos.get(phase);
+    }
+
+    /**
+     * Returns the number of times a phase took at most the upper bound of a bucket, but longer
+     * than the upper bound of the previous bucket.
+     * @param phase The phase, one of the PHASE_XXX constants.
+     * @param bucket The bucket.
+     * @return The number of times.
+     */
+    public long getBucketCount(int phase, int bucket) {
+        return histograms.get(phase * BUCKET_COUNT + bucket);
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBytesInflated() {
+        return bytesInflated.get();
+    }
+
+    public long getObjectsParsed() {
+        return objectsParsed.get();
+    }
+
+    public long getTextItems() {
+        return textItems.get();
+    }
+
+    public long getFiles() {
+        return files.get();
+    }
+
+    public long getFileNanos() {
+        return fileNanos.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    /**
+     * Formats the metrics in the text format of Prometheus. The times of the phases are given as
+     * histograms in seconds.
+     * @return The metrics.
+     */
+    public String toPrometheusText() {
+        StringBuilder sb = new StringBuilder(8192);
+        sb.append("# TYPE pdf_phase_seconds histogram\n");
+        for (int phase=0; phase < PHASE_COUNT; phase++) {
+            String label = "phase=\"" + PHASE_NAMES[phase] + "\"";
+            long cumulative = 0;
+            for (int bucket=0; bucket < BUCKET_COUNT; bucket++) {
+                cumulative += getBucketCount(phase, bucket);
+                sb.append("pdf_phase_seconds_bucket{").append(label).append(",le=\"");
+                if (bucket == BUCKET_COUNT - 1) {
+                    sb.append("+Inf");
+                } else {
+                    sb.append(getBucketUpperBound(bucket) / 1e9);
+                }
+                sb.append("\"} ").append(cumulative).append('\n');
+            }
+            sb.append("pdf_phase_seconds_sum{").append(label).append("} ")
+                    .append(getPhaseNanos(phase) / 1e9).append('\n');
+            sb.append("pdf_phase_seconds_count{").append(label).append("} ")
+                    .append(getPhaseCount(phase)).append('\n');
+        }
+        counter(sb, "pdf_bytes_read_total", getBytesRead());
+        counter(sb, "pdf_bytes_inflated_total", getBytesInflated());
+        counter(sb, "pdf_objects_parsed_total", getObjectsParsed());
+        counter(sb, "pdf_text_items_total", getTextItems());
+        counter(sb, "pdf_files_extracted_total", getFiles());
+        sb.append("# TYPE pdf_file_seconds_total counter\n");
+        sb.append("pdf_file_seconds_total ").append(getFileNanos() / 1e9).append('\n');
+        counter(sb, "pdf_allocated_bytes_total", getAllocatedBytes());
+        return sb.toString();
+    }
+
+    private static void counter(StringBuilder sb, String name, long value) {
+        sb.append("# TYPE ").append(name).append(" counter\n");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+}
@@ -0,0 +1,80 @@
+package tuomaan.pdftest;
+
+/**
+ * Receives timings and counters from the phases of reading a PDF file and extracting its text.
+ * A listener is given to PDFTextExtractor or PDFObjectList with setMetricsListener.
+ * <p>
+ * All methods do nothing by default, so a listener only implements what it needs. NONE is used
+ * when no listener is set. The classes check for it before measuring anything, so that no time
+ * is spent on measuring when nobody listens.
+ * <p>
+ * The methods may be called from many threads at the same time, when pages are extracted in
+ * parallel.
+ */
+public interface PDFMetricsListener {
+
+    /** Opening the file, that is, mapping it to memory. */
+    int PHASE_OPEN_FILE = 0;
+    /** Reading the cross-reference table, or recovering it by scanning the file. */
+    int PHASE_XREF = 1;
+    /** Reading the trailer dictionary. */
+    int PHASE_TRAILER = 2;
+    /** Parsing a single object. */
+    int PHASE_OBJECT_PARSE = 3;
+    /** Decoding a single stream. */
+    int PHASE_DECODE = 4;
+    /** Parsing the content stream of a single page. */
+    int PHASE_CONTENT_PARSE = 5;
+    /** Sorting the text items. */
+    int PHASE_SORT = 6;
+
+    /** The number of phases. */
+    int PHASE_COUNT = 7;
+
+    /** The names of the phases, indexed by the phase. */
+    String[] PHASE_NAMES = {
+            "open_file", "xref", "trailer", "object_parse", "decode", "content_parse", "sort" };
+
+    /** A listener, which does nothing. */
+    PDFMetricsListener NONE = new PDFMetricsListener() { };
+
+    /**
+     * Called when a phase has finished.
+     * @param phase The phase, one of the PHASE_XXX constants.
+     * @param nanos The duration of the phase in nanoseconds.
+     */
+    default void phaseFinished(int phase, long nanos) { }
+
+    /**
+     * Called when a file has been opened.
+     * @param bytes The size of the file.
+     */
+    default void bytesRead(long bytes) { }
+
+    /**
+     * Called when a stream has been decoded.
+     * @param bytes The size of the decoded stream.
+     */
+    default void bytesInflated(long bytes) { }
+
+    /**
+     * Called when an object has been parsed.
+     */
+    default void objectParsed() { }
+
+    /**
+     * Called when the text items of a page have been extracted.
+     * @param count The number of text items.
+     */
+    default void textItemsEmitted(int count) { }
+
+    /**
+     * Called when the text of a file has been extracted.
+     * @param nanos The time from opening the file to the end of the extraction in nanoseconds.
+     * @param allocatedBytes The bytes allocated by the calling thread in that time, or -1 if the
+     *                       platform can't tell or if the work was spread over other threads,
+     *                       like in parallel or asynchronous extraction.
+     */
+    default void fileExtracted(long nanos, long allocatedBytes) { }
+
+}
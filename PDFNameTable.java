@@ -0,0 +1,133 @@
+package tuomaan.pdftest;
+
+/**
+ * Interns the names read from PDF files. The same few names, like Type, Length and Contents,
+ * are used over and over again in every file, so each of them is stored once and shared by all
+ * dictionaries. The names in the table are also interned by the JVM, so comparing them to string
+ * literals succeeds at the identity check.
+ * <p>
+ * The table is bounded. Once it is full, new names are returned as new strings, which are not
+ * interned, so that a hostile file can't fill the JVM's own pool of interned strings either.
+ * Such names must be compared with equals.
+ * <p>
+ * A name is looked up straight from the bytes of a PDFByteArray, so a string is created only
+ * when a name is seen for the first time. The table is shared by all files and threads.
+ * <p>
+ * Looking up a name doesn't lock, so threads parsing pages or files in parallel don't wait for
+ * each other. The table is copied when a name is added, and the copy replaces the table as a
+ * whole. Names are added only when they are seen for the first time, and their number is
+ * bounded, so copying is rare.
+ */
+public class PDFNameTable {
+
+    /**
+     * The maximum number of names kept in the table. A broken or hostile file could otherwise
+     * fill the memory with names. Names which don't fit are returned as new strings, which are
+     * not interned.
+     */
+    private static final int MAX_NAMES = 4096;
+
+    /** The table. It is never changed after it has been published. */
+    private static volatile String[] table = new String[256];
+
+    /** The number of names in the table. Changed only while holding the lock. */
+    private static int count = 0;
+
+    /** Whether the table is full, so that looking up a new name doesn't need the lock. */
+    private static volatile boolean full = false;
+
+    /**
+     * Returns the name, which is made of certain bytes of an array.
+     * @param pdfArray The array.
+     * @param start The starting index of the name, inclusive. This is after the slash.
+     * @param end The ending index of the name, exclusive.
+     * @return The name. It is interned, unless the table is full.
+     */
+    static String get(PDFByteArray pdfArray, int start, int end) {
+        int hash = 0;
+        for (int i=start; i < end; i++) {
+            hash = 31*hash + (pdfArray.getByte(i) & 0xff);
+        }
+        String name = find(table, hash, pdfArray, start, end);
+        if (name != null) {
+            return name;
+        }
+        if (full) {
+            return pdfArray.decodeString(start, end);
+        }
+        return add(hash, pdfArray, start, end);
+    }
+
+    private static synchronized String add(int hash, PDFByteArray pdfArray, int start, int end) {
+        // Another thread may have added the name after it was looked up.
+        String[] current = table;
+        String name = find(current, hash, pdfArray, start, end);
+        if (name != null) {
+            return name;
+        }
+        name = pdfArray.decodeString(start, end);
+        if (count < MAX_NAMES) {
+            name = name.intern();
+            int size = (count + 1)*2 > current.length ? current.length * 2 : current.length;
+            String[] copy = new String[size];
+            for (String old : current) {
+                if (old != null) {
+                    insert(copy, old);
+                }
+            }
+            insert(copy, name);
+            count++;
+            table = copy;
+            full = count == MAX_NAMES;
+        }
+        return name;
+    }
+
+    /**
+     * Empties the table. The tests, which fill the table, use this to leave it as they found it.
+     */
+    static synchronized void clear() {
+        table = new String[256];
+        count = 0;
+        full = false;
+    }
+
+    /**
+     * Finds a name in a table.
+     * @return The name, or null if it isn't in the table.
+     */
+    private static String find(String[] table, int hash, PDFByteArray pdfArray, int start, int end) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != null) {
+            if (matches(table[slot], pdfArray, start, end)) {
+                return table[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static boolean matches(String name, PDFByteArray pdfArray, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i=0; i < name.length(); i++) {
+            if (name.charAt(i) != (pdfArray.getByte(start + i) & 0xff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void insert(String[] table, String name) {
+        int mask = table.length - 1;
+        // String.hashCode is computed the same way as the hash of the bytes in get.
+        int slot = name.hashCode() & mask;
+        while (table[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = name;
+    }
+
+}
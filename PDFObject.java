@@ -2,9 +2,12 @@ package tuomaan.pdftest;
 
 import android.util.Log;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 /**
@@ -34,17 +37,29 @@ public class PDFObject {
     public static final int OT_ARRAY = 7;
     public static final int OT_INDIRECT_REFERENCE = 8;
 
-    private int objType = OT_NULL;
+    private static final PDFSearchPattern ENDSTREAM = new PDFSearchPattern("endstream");
+
+    private byte objType = OT_NULL;
 
     private int objNumber = -1;
     private int objGeneration = 0;
 
-    private boolean booleanValue;
-    private String stringValue;
-    private Integer integerValue;
-    private Float realValue;
-    private ArrayList<PDFObject> anArray;
-    private HashMap<String, PDFObject> aDictionary;
+    /**
+     * The value of a primitive object. Booleans are stored as 0 or 1 and reals as the bits of
+     * a float. For indirect references this is the number of the referred object.
+     */
+    private int primitiveValue;
+
+    /**
+     * The generation number of the referred object, if this is an indirect reference.
+     */
+    private int refGeneration;
+
+    /**
+     * The value of a string, name, array or dictionary. Names are interned.
+     */
+    private Object value;
+
     private PDFByteArray stream = null;
 
     /**
@@ -55,7 +70,7 @@ public class PDFObject {
         return objType;
     }
 
-    private void setObjType(int oType) { objType = oType; }
+    private void setObjType(int oType) { objType = (byte) oType; }
 
     /**
      * If this object is an indirect object, returns the number of the object.
@@ -74,51 +89,16 @@ public class PDFObject {
     }
 
     /**
-     * Reads an object from a byte array.
+     * Reads an object from a byte array. The bytes are split into tokens by a PDFLexer, and the
+     * object is built from the tokens in a single pass.
      * @param pdfArray The array from which to read the object.
      * @param start The position from which to read the object.
      */
     public void readFromByteArray(PDFByteArray pdfArray, int start) {
 //        Log.i("pdftesteri", "readFromByteArray(" + start + ")");
-        pdfArray.setPosition(start);
-
-        // Read object and generation number, if this is an indirect object.
-        if (isIndirectObject(pdfArray)) {
-            readIndirectObject(pdfArray);
-        }
-
-        // Read the actual object. Indirect reference consists of two integers and the letter R,
-        // which is why it is checked before Integer. Real must also be checked be before integer,
-        // because the only difference between them is the dot, which is checked by real.
-        // The order of other type checks doesn't matter.
-        if (isBoolean(pdfArray)) {
-            readBoolean(pdfArray);
-        } else if (isIndirectReference(pdfArray)) {
-            readIndirectReference(pdfArray);
-        } else if (isDictionary(pdfArray)) {
-            readDictionary(pdfArray);
-        } else if (isReal(pdfArray)) {
-            readReal(pdfArray);
-        } else if (isInteger(pdfArray)) {
-            readInteger(pdfArray);
-        } else if (isName(pdfArray)) {
-            readName(pdfArray);
-        } else if (isArray(pdfArray)) {
-            readArray(pdfArray);
-        } else {
-            setObjType(OT_NULL);
-        }
-
-        // Read the stream attached to this object, if a stream exists.
-        if (hasStream(pdfArray)) {
-            readStream(pdfArray);
-        }
-
-        // Skip past the endobj-keyword of an indirect object, if necessary.
-        if (hasEndobj(pdfArray)) {
-            skipEndobj(pdfArray);
-        }
-
+        PDFLexer lexer = new PDFLexer(pdfArray, start);
+        readFromLexer(lexer, pdfArray);
+        pdfArray.setPosition(lexer.getPosition());
     }
 
     /**
@@ -133,7 +113,7 @@ public class PDFObject {
 
     public boolean getBoolean() {
         if (getObjType() == OT_BOOLEAN) {
-            return booleanValue;
+            return primitiveValue != 0;
         } else {
             return false;
         }
@@ -141,7 +121,7 @@ public class PDFObject {
 
     public String getString() {
         if (getObjType() == OT_STRING) {
-            return stringValue;
+            return (String) value;
         } else {
             return "";
         }
@@ -149,7 +129,7 @@ public class PDFObject {
 
     public String getIndirectReference() {
         if (getObjType() == OT_INDIRECT_REFERENCE) {
-            return stringValue;
+            return primitiveValue + " " + refGeneration + " R";
         } else {
             return "";
         }
@@ -157,48 +137,57 @@ public class PDFObject {
 
     public int getIndirRefObjNum() {
         if (getObjType() == OT_INDIRECT_REFERENCE) {
-            return Integer.parseInt(stringValue.substring(0, stringValue.indexOf(" ")));
+            return primitiveValue;
         } else {
             return -1;
         }
+    }
 
+    public int getIndirRefGeneration() {
+        if (getObjType() == OT_INDIRECT_REFERENCE) {
+            return refGeneration;
+        } else {
+            return -1;
+        }
     }
 
-    public Integer getInteger() {
+    public int getInteger() {
         if (getObjType() == OT_INTEGER) {
-            return integerValue;
+            return primitiveValue;
         } else {
-            return new Integer(0);
+            return 0;
         }
     }
 
-    public Float getReal() {
+    public float getReal() {
         if (getObjType() == OT_REAL) {
-            return realValue;
+            return Float.intBitsToFloat(primitiveValue);
         } else {
-            return new Float(0);
+            return 0;
         }
     }
 
     public String getName() {
         if (getObjType() == OT_NAME) {
-            return stringValue;
+            return (String) value;
         } else {
             return "";
         }
     }
 
+    @SuppressWarnings("unchecked")
     public ArrayList<PDFObject> getArray() {
         if (getObjType() == OT_ARRAY) {
-            return anArray;
+            return (ArrayList<PDFObject>) value;
         } else {
             return null;
         }
     }
 
+    @SuppressWarnings("unchecked")
     public HashMap<String, PDFObject> getDictionary() {
         if (getObjType() == OT_DICTIONARY) {
-            return aDictionary;
+            return (HashMap<String, PDFObject>) value;
         } else {
             return null;
         }
@@ -212,235 +201,364 @@ public class PDFObject {
         }
     }
 
-    public PDFByteArray getDecodedStream() {
-        if (!(stream == null)) {
-            byte[] encodedData = stream.getBytes(0, stream.getLength());
-            Inflater decompresser = new Inflater();
-            decompresser.setInput(encodedData);
-            byte[] decodedBuffer = new byte[65536];
-            int decodedLength = 0;
-            try {
-                decodedLength = decompresser.inflate(decodedBuffer);
-            } catch (Exception e) {
-                System.out.println("decodeStream exception");
-            }
-            byte[] decodedData = new byte[decodedLength-1];
-            try {
-                decodedData = Arrays.copyOfRange(decodedBuffer, 0, decodedLength-1);
-            } catch (Exception e) {
-                System.out.println("decodeStream exception");
-            }
-            PDFByteArray result = new PDFByteArray();
-            result.setBytes(decodedData);
-            return result;
-        } else {
-            return null;
-        }
+    /**
+     * Receives the decoded data of a stream in chunks. The buffer is reused between calls, so
+     * the bytes have to be used or copied before returning.
+     */
+    public interface StreamConsumer {
+        void consume(byte[] buffer, int offset, int length);
     }
 
-    private boolean isBoolean(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "isBoolean(" + pdfArray.getPosition() + ")");
-        int start = pdfArray.searchNotChar(pdfArray.getPosition(), pdfArray.WHITESPACE);
-        String s = pdfArray.getString(pdfArray.getPosition(), pdfArray.WHITESPACE, pdfArray.WHITESPACE+pdfArray.DELIMITERS);
+    /**
+     * The size of the chunks given to a StreamConsumer.
+     */
+    private static final int DECODE_CHUNK_SIZE = 8192;
 
-        return (s.equals("true") || s.equals("false"));
-    }
+    /**
+     * The size of the chunks, in which a stream in a memory mapped file is given to an
+     * Inflater.
+     */
+    private static final int INPUT_CHUNK_SIZE = 65536;
 
-    private void readBoolean(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "readBoolean(" + pdfArray.getPosition() + ")");
-        pdfArray.searchNotChar(pdfArray.WHITESPACE);
-        String s = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE+pdfArray.DELIMITERS);
-        if (s.equals("true")) {
-            booleanValue = true;
-        } else if (s.equals("false")) {
-            booleanValue = false;
-        }
-        setObjType(OT_BOOLEAN);
-    }
+    /**
+     * The first guess of the size of a decoded stream is at most this. Larger streams grow the
+     * buffer by doubling it.
+     */
+    private static final int MAX_INITIAL_DECODED_SIZE = 1 << 20;
+
+    /** The largest array the virtual machines allocate. */
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
 
-    private boolean isIndirectReference(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "isIndirectReference(" + pdfArray.getPosition() + ")");
-        int originalPosition = pdfArray.getPosition();
-        String objNumber = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE);
-        String objGeneration = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE);
-        String r = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE+pdfArray.DELIMITERS);
-        pdfArray.setPosition(originalPosition);
-        return r.equals("R");
+    /**
+     * An Inflater and a chunk for copying streams from memory mapped files, so that they can
+     * be given to the Inflater as byte arrays.
+     */
+    private static class Decoder {
+        final Inflater inflater = new Inflater();
+        final byte[] chunk = new byte[INPUT_CHUNK_SIZE];
     }
 
-    private void readIndirectReference(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "readIndirectReference(" + pdfArray.getPosition() + ")");
-        stringValue =
-                pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE) + " " +
-                        pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE) + " " +
-                        pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE+pdfArray.DELIMITERS);
-        setObjType(OT_INDIRECT_REFERENCE);
+    /**
+     * Idle decoders. Inflaters are expensive to create, because they allocate native memory, so
+     * they are reused. The pool is bounded, so that a thread per task doesn't leave a decoder
+     * behind for each task. A decoder, which doesn't fit in the pool, is ended right away.
+     */
+    private static final ArrayBlockingQueue<Decoder> DECODERS =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    private static Decoder takeDecoder() {
+        Decoder decoder = DECODERS.poll();
+        if (decoder == null) {
+            return new Decoder();
+        }
+        decoder.inflater.reset();
+        return decoder;
     }
 
-    private boolean isIndirectObject(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "isIndirectObject(" + pdfArray.getPosition() + ")");
-        int originalPosition = pdfArray.getPosition();
-        String objNumber = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE);
-        String objGeneration = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE);
-        String r = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE+pdfArray.DELIMITERS);
-        pdfArray.setPosition(originalPosition);
-        return r.equals("obj");
+    private static void returnDecoder(Decoder decoder) {
+        if (!DECODERS.offer(decoder)) {
+            decoder.inflater.end();
+        }
     }
 
-    private void readIndirectObject(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "readIndirectObject(" + pdfArray.getPosition() + ")");
-        readInteger(pdfArray);
-        objNumber = getInteger();
-        readInteger(pdfArray);
-        objGeneration = getInteger();
-        setObjType(OT_NULL);
-        pdfArray.setPosition(pdfArray.getPosition()+4);
+    /**
+     * Gives the next part of the input to an Inflater. Bytes in the heap are given as they are,
+     * all at once. Bytes in a memory mapped file are copied to a chunk a piece at a time, since
+     * Inflater can't take a ByteBuffer before Java 11.
+     * @param inflater The Inflater.
+     * @param input The remaining input. Its position is moved past the bytes given.
+     * @param chunk The chunk for copying.
+     * @return False, if there was no input left.
+     */
+    private static boolean feedInflater(Inflater inflater, ByteBuffer input, byte[] chunk) {
+        int length = input.remaining();
+        if (length == 0) {
+            return false;
+        }
+        if (input.hasArray()) {
+            inflater.setInput(input.array(), input.arrayOffset() + input.position(), length);
+            input.position(input.limit());
+        } else {
+            length = Math.min(length, chunk.length);
+            input.get(chunk, 0, length);
+            inflater.setInput(chunk, 0, length);
+        }
+        return true;
     }
 
-    private boolean isInteger(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "isInteger(" + pdfArray.getPosition() + ")");
-        String numChars = new String("-+0123456789");
-        String s = pdfArray.getString(pdfArray.getPosition(), pdfArray.WHITESPACE, pdfArray.WHITESPACE+pdfArray.DELIMITERS);
-        return !s.isEmpty() && numChars.indexOf(s.charAt(0)) > -1 && (s.indexOf(".") == -1);
+    /**
+     * Tests if the stream of this object is compressed. HelB's files only use FlateDecode, so
+     * any filter is taken to be FlateDecode.
+     */
+    private boolean isCompressed() {
+        return getDictionary() == null || getDictionary().containsKey("Filter");
     }
 
-    private void readInteger(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "readInteger(" + pdfArray.getPosition() + ")");
-        String s = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE+pdfArray.DELIMITERS);
+    /**
+     * Returns the decoded stream of this object. The whole decoded stream is returned regardless
+     * of its size. The output buffer grows as needed, and it is used as is by the returned
+     * array, so the decoded data is not copied.
+     * @return The decoded stream, or null if this object has no stream.
+     */
+    public PDFByteArray getDecodedStream() {
+        if (stream == null) {
+            return null;
+        }
+        if (!isCompressed()) {
+            return stream.getView(0, stream.getLength());
+        }
+        Decoder decoder = takeDecoder();
+        Inflater inflater = decoder.inflater;
+        ByteBuffer input = stream.asSharedByteBuffer();
+        byte[] chunk = decoder.chunk;
+        feedInflater(inflater, input, chunk);
+        // Text content compresses well, so guess the decoded size from the encoded size.
+        int guess = (int) Math.min(4L * stream.getLength(), MAX_INITIAL_DECODED_SIZE);
+        byte[] decoded = new byte[Math.max(guess, 1024)];
+        int decodedLength = 0;
         try {
-            integerValue = new Integer(s);
-        } catch (NumberFormatException e) {
-            integerValue = new Integer(0);
+            while (!inflater.finished()) {
+                if (decodedLength == decoded.length) {
+                    if (decoded.length == MAX_ARRAY_SIZE) {
+                        Log.i("pdftesteri", "Stream too large, only a part of it was decoded.");
+                        break;
+                    }
+                    decoded = Arrays.copyOf(decoded, (int) Math.min(2L * decoded.length, MAX_ARRAY_SIZE));
+                }
+                int n = inflater.inflate(decoded, decodedLength, decoded.length - decodedLength);
+                if (n == 0 && inflater.needsInput() && feedInflater(inflater, input, chunk)) {
+                    continue;
+                }
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    // Truncated stream. Return what could be decoded.
+                    break;
+                }
+                decodedLength += n;
+            }
+        } catch (DataFormatException e) {
+            Log.i("pdftesteri", "Broken stream, only a part of it was decoded.");
+        } finally {
+            returnDecoder(decoder);
         }
-        setObjType(OT_INTEGER);
+        PDFByteArray result = new PDFByteArray();
+        result.setBytes(decoded, decodedLength);
+        return result;
     }
 
-    private boolean isReal(PDFByteArray pdfArray) {
-        String numChars = new String("-+.0123456789");
-        String s = pdfArray.getString(pdfArray.getPosition(), pdfArray.WHITESPACE, pdfArray.WHITESPACE+pdfArray.DELIMITERS);
-        return !s.isEmpty() && numChars.indexOf(s.charAt(0)) > -1 && (s.indexOf(".") > -1);
-    }
-
-    private void readReal(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "readReal(" + pdfArray.getPosition() + ")");
-        String s = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE+pdfArray.DELIMITERS);
+    /**
+     * Decodes the stream of this object and gives the decoded data to a consumer in chunks. The
+     * memory needed doesn't depend on the size of the stream.
+     * @param consumer The consumer of the decoded data.
+     * @return The number of decoded bytes.
+     */
+    public long decodeStream(StreamConsumer consumer) {
+        if (stream == null) {
+            return 0;
+        }
+        byte[] chunk = new byte[DECODE_CHUNK_SIZE];
+        ByteBuffer input = stream.asSharedByteBuffer();
+        if (!isCompressed()) {
+            long total = input.remaining();
+            while (input.hasRemaining()) {
+                int n = Math.min(input.remaining(), DECODE_CHUNK_SIZE);
+                if (input.hasArray()) {
+                    consumer.consume(input.array(), input.arrayOffset() + input.position(), n);
+                    input.position(input.position() + n);
+                } else {
+                    input.get(chunk, 0, n);
+                    consumer.consume(chunk, 0, n);
+                }
+            }
+            return total;
+        }
+        Decoder decoder = takeDecoder();
+        Inflater inflater = decoder.inflater;
+        byte[] inputChunk = decoder.chunk;
+        feedInflater(inflater, input, inputChunk);
+        long total = 0;
         try {
-            realValue = new Float(s);
-        } catch (NumberFormatException e) {
-            realValue = new Float(0);
+            while (!inflater.finished()) {
+                int n = inflater.inflate(chunk);
+                if (n == 0 && inflater.needsInput() && feedInflater(inflater, input, inputChunk)) {
+                    continue;
+                }
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                consumer.consume(chunk, 0, n);
+                total += n;
+            }
+        } catch (DataFormatException e) {
+            Log.i("pdftesteri", "Broken stream, only a part of it was decoded.");
+        } finally {
+            returnDecoder(decoder);
         }
-        setObjType(OT_REAL);
+        return total;
     }
 
+    /**
+     * Reads an object from the tokens of a lexer. If the object is an indirect object, its
+     * object and generation numbers are read, and a stream and the endobj keyword following
+     * the object are also consumed.
+     * @param lexer The lexer from which to read the tokens.
+     * @param pdfArray The array from which the lexer reads. Streams are read from it.
+     */
+    void readFromLexer(PDFLexer lexer, PDFByteArray pdfArray) {
+        // Read object and generation number, if this is an indirect object.
+        if (lexer.peekType(0) == PDFLexer.TT_INTEGER
+                && lexer.peekType(1) == PDFLexer.TT_INTEGER
+                && lexer.peekKeyword(2, "obj")) {
+            lexer.next();
+            objNumber = lexer.getInteger();
+            lexer.next();
+            objGeneration = lexer.getInteger();
+            lexer.next();
+        }
+
+        readValue(lexer);
 
-    private boolean isName(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "isName(" + pdfArray.getPosition() + ")");
-        int start = pdfArray.searchNotChar(pdfArray.getPosition(), pdfArray.WHITESPACE);
-        return pdfArray.isChar(start, "/");
+        // Read the stream attached to this object, if a stream exists.
+        if (lexer.peekKeyword(0, "stream")) {
+            readStream(lexer, pdfArray);
+        }
+
+        // Skip past the endobj-keyword of an indirect object, if necessary.
+        if (lexer.peekKeyword(0, "endobj")) {
+            lexer.next();
+        }
     }
 
-    private void readName(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "readName(" + pdfArray.getPosition() + ")");
-        stringValue = pdfArray.getString(pdfArray.WHITESPACE+"/", pdfArray.WHITESPACE+pdfArray.DELIMITERS);
-        setObjType(OT_NAME);
+    /**
+     * Reads a direct object from the tokens of a lexer. Every token is looked at once, except
+     * for integers, which need two tokens of lookahead to tell them from indirect references.
+     * @param lexer The lexer from which to read the tokens.
+     */
+    private void readValue(PDFLexer lexer) {
+        if (lexer.peekType(0) == PDFLexer.TT_INTEGER
+                && lexer.peekType(1) == PDFLexer.TT_INTEGER
+                && lexer.peekKeyword(2, "R")) {
+            readIndirectReference(lexer);
+            return;
+        }
+        boolean isTrue = lexer.peekKeyword(0, "true");
+        boolean isFalse = lexer.peekKeyword(0, "false");
+        switch (lexer.next()) {
+            case PDFLexer.TT_INTEGER:
+                primitiveValue = lexer.getInteger();
+                setObjType(OT_INTEGER);
+                break;
+            case PDFLexer.TT_REAL:
+                primitiveValue = Float.floatToRawIntBits(lexer.getReal());
+                setObjType(OT_REAL);
+                break;
+            case PDFLexer.TT_NAME:
+                value = lexer.getString();
+                setObjType(OT_NAME);
+                break;
+            case PDFLexer.TT_STRING:
+                value = lexer.getString();
+                setObjType(OT_STRING);
+                break;
+            case PDFLexer.TT_ARRAY_START:
+                readArray(lexer);
+                break;
+            case PDFLexer.TT_DICTIONARY_START:
+                readDictionary(lexer);
+                break;
+            case PDFLexer.TT_KEYWORD:
+                if (isTrue || isFalse) {
+                    primitiveValue = isTrue ? 1 : 0;
+                    setObjType(OT_BOOLEAN);
+                } else {
+                    // null and unknown keywords.
+                    setObjType(OT_NULL);
+                }
+                break;
+            default:
+                // End of file or an unexpected closing bracket. The bracket is consumed, so that
+                // a broken object can't make the caller loop forever.
+                setObjType(OT_NULL);
+                break;
+        }
     }
 
-    private boolean isArray(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "isArray(" + pdfArray.getPosition() + ")");
-        int start = pdfArray.searchNotChar(pdfArray.getPosition(), pdfArray.WHITESPACE);
-        return pdfArray.isChar(start, "[");
+    private void readIndirectReference(PDFLexer lexer) {
+        lexer.next();
+        primitiveValue = lexer.getInteger();
+        lexer.next();
+        refGeneration = lexer.getInteger();
+        lexer.next();
+        setObjType(OT_INDIRECT_REFERENCE);
     }
 
-    private void readArray(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "readArray(" + pdfArray.getPosition() + ")");
-        anArray = new ArrayList<PDFObject>();
-        // Move to the starting bracket of the array.
-        pdfArray.searchNotChar(pdfArray.WHITESPACE);
-        // Move to the next character, which is the start of the first object of the array or whitespace.
-        pdfArray.setPosition(pdfArray.getPosition()+1);
-        // Skip whitespace characters.
-        pdfArray.searchChar(pdfArray.WHITESPACE);
+    private void readArray(PDFLexer lexer) {
+        ArrayList<PDFObject> anArray = new ArrayList<PDFObject>();
+        value = anArray;
         // Loop until we find the closing bracket of the array.
-        while (!pdfArray.isChar("]")) {
+        while (lexer.peekType(0) != PDFLexer.TT_ARRAY_END && lexer.peekType(0) != PDFLexer.TT_EOF) {
             PDFObject anObj = new PDFObject();
-            // Read the next object, whichever type it is. This should leave the current position
-            // of pdfArray to the character right after the object, which might be whitespace or
-            // the closing bracket.
-            anObj.readFromByteArray(pdfArray);
+            anObj.readValue(lexer);
             anArray.add(anObj);
-            // Skip whitespace characters.
-            pdfArray.searchNotChar(pdfArray.WHITESPACE);
         }
-        // After the loop the current position is at the closing bracket. Skip one char further.
-        pdfArray.setPosition(pdfArray.getPosition()+1);
+        // Skip the closing bracket.
+        lexer.next();
         setObjType(OT_ARRAY);
     }
 
-    private boolean isDictionary(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "isDictionary(" + pdfArray.getPosition() + ")");
-        int startPos = pdfArray.searchNotChar(pdfArray.getPosition(), pdfArray.WHITESPACE);
-        return pdfArray.isChar(startPos, "<") &&
-                pdfArray.isChar(startPos+1, "<");
-    }
-
-    private void readDictionary(PDFByteArray pdfArray) {
-//        Log.i("pdftesteri", "readDictionary(" + pdfArray.getPosition() + ")");
-        aDictionary = new HashMap<String, PDFObject>();
-        // Move to the starting characters of the dictionary.
-        pdfArray.searchNotChar(pdfArray.WHITESPACE);
-        // Move two characters forward to the start of the dictionary itself.
-        pdfArray.setPosition(pdfArray.getPosition()+2);
-        // Find the position of the next not-whitespace character
-        pdfArray.searchNotChar(pdfArray.WHITESPACE);
-        // Get two characters to detect the end of the dictionary.
-        String nextTwoChars = new String(pdfArray.getBytes(pdfArray.getPosition(), pdfArray.getPosition()+2));
-        while (!nextTwoChars.equals(">>")) {
-            PDFObject name = new PDFObject();
-            name.readFromByteArray(pdfArray, pdfArray.getPosition());
+    private void readDictionary(PDFLexer lexer) {
+        HashMap<String, PDFObject> aDictionary = new HashMap<String, PDFObject>();
+        value = aDictionary;
+        // Each entry is a name followed by a value. Loop until we find the end of the dictionary.
+        while (lexer.peekType(0) == PDFLexer.TT_NAME) {
+            lexer.next();
+            String key = lexer.getString();
             PDFObject anObj = new PDFObject();
-            anObj.readFromByteArray(pdfArray, pdfArray.getPosition());
-            aDictionary.put(name.getName(), anObj);
-            // Find the position of the next not-whitespace character
-            pdfArray.searchNotChar(pdfArray.WHITESPACE);
-            // Get two characters to detect the end of the dictionary.
-            nextTwoChars = new String(pdfArray.getBytes(pdfArray.getPosition(), pdfArray.getPosition()+2));
-        }
-        pdfArray.setPosition(pdfArray.getPosition()+2);
+            anObj.readValue(lexer);
+            aDictionary.put(key, anObj);
+        }
+        // Skip the end of the dictionary. Anything else here means a broken dictionary, and it
+        // is left for the caller.
+        if (lexer.peekType(0) == PDFLexer.TT_DICTIONARY_END) {
+            lexer.next();
+        }
         setObjType(OT_DICTIONARY);
     }
 
-    private boolean hasStream(PDFByteArray pdfArray) {
+    private void readStream(PDFLexer lexer, PDFByteArray pdfArray) {
+        lexer.next();
         // The keyword stream that follows the stream dictionary shall be followed by an end-of-line
         // marker consisting of either a CARRIAGE RETURN and a LINE FEED or just a LINE FEED, and
         // not by a CARRIAGE RETURN alone.
-        String s = pdfArray.getString(pdfArray.getPosition(), pdfArray.WHITESPACE, pdfArray.ENDOFLINE);
-        return s.equals("stream");
-    }
-
-    private void readStream(PDFByteArray pdfArray) {
-        // Move to the start of the actual stream.
-        pdfArray.searchNotChar(pdfArray.WHITESPACE);
-        pdfArray.setPosition(pdfArray.getPosition()+"stream".length());
-        pdfArray.searchNotChar(pdfArray.ENDOFLINE);
+        int start = lexer.getTokenEnd();
+        if (start < pdfArray.getLength() && pdfArray.getByte(start) == 13) {
+            start++;
+        }
+        if (start < pdfArray.getLength() && pdfArray.getByte(start) == 10) {
+            start++;
+        }
         // Find the length of the stream from the dictionary, which should preceed the stream.
-        int streamLength = getDictionary().get("Length").getInteger();
-        // Read the stream
-        stream = new PDFByteArray();
-        stream.setBytes(pdfArray.getBytes(pdfArray.getPosition(), pdfArray.getPosition()+streamLength));
-        // Move to the end of the endstream-keyword. There should be an EOL-marker between the
-        // actual stream and endstream-keyword. There should be only whitespace between endstream-
-        // keyword and endobj-keyword.
-        pdfArray.setPosition(pdfArray.getPosition()+streamLength);
-        pdfArray.searchNotChar(pdfArray.WHITESPACE);
-        pdfArray.searchChar(pdfArray.WHITESPACE);
-    }
-
-    private boolean hasEndobj(PDFByteArray pdfArray) {
-        return pdfArray.getString(pdfArray.getPosition(), pdfArray.WHITESPACE, pdfArray.WHITESPACE).equals("endobj");
-    }
-
-    private void skipEndobj(PDFByteArray pdfArray) {
-        pdfArray.searchNotChar(pdfArray.WHITESPACE);
-        pdfArray.setPosition(pdfArray.getPosition()+"endobj".length());
+        // If the length is missing or an indirect reference, the stream ends at the
+        // endstream-keyword.
+        int streamLength;
+        PDFObject lengthObj = getDictionary() == null ? null : getDictionary().get("Length");
+        if (lengthObj != null && lengthObj.getObjType() == OT_INTEGER) {
+            streamLength = lengthObj.getInteger();
+        } else {
+            int end = pdfArray.searchPattern(start, ENDSTREAM);
+            if (end < 0) {
+                end = pdfArray.getLength();
+            }
+            streamLength = end - start;
+        }
+        streamLength = Math.max(0, Math.min(streamLength, pdfArray.getLength() - start));
+        // The stream refers to the bytes of the file, so they are not copied. Only the inflater
+        // reads them.
+        stream = pdfArray.getView(start, start+streamLength);
+        // Move past the endstream-keyword. There should be an EOL-marker between the actual
+        // stream and endstream-keyword, and it is skipped by the lexer as whitespace.
+        lexer.setPosition(start+streamLength);
+        if (lexer.peekKeyword(0, "endstream")) {
+            lexer.next();
+        }
     }
 }
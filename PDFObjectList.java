@@ -3,17 +3,30 @@ package tuomaan.pdftest;
 import android.util.Log;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.zip.Inflater;
 
 /**
- * This class handles the file structure of a PDF file. Doesn't know how to deal with
- * incremental updates, so only linearized PDF files yield errorless results.
+ * This class handles the file structure of a PDF file. Incremental updates are read by
+ * following the Prev entries of the trailers. Both classic cross-reference tables and
+ * cross-reference streams are supported, and objects can be read from object streams.
  *
- * A file can be read by giving a file name or a File object. The objects can be accessed through
+ * A file can be read by giving a file name or a File object. openFileAsync reads the file
+ * without blocking and parses its structure using an executor. The objects can be accessed through
  * getObject-method. The trailer dictionary is also available via getTrailerObj.
  *
+ * Objects are not read when the file is opened. An object is read from its position in the
+ * cross-reference table when it is asked for the first time, and the most recently used objects
+ * are kept in a cache.
+ *
  * TODO: Error handling.
  * TODO: Documentation.
  *
@@ -23,6 +36,11 @@ import java.util.zip.Inflater;
 
 public class PDFObjectList {
 
+    private static final PDFSearchPattern STARTXREF = new PDFSearchPattern("startxref");
+    private static final PDFSearchPattern TRAILER = new PDFSearchPattern("trailer");
+    private static final PDFSearchPattern OBJ = new PDFSearchPattern("obj");
+    private static final PDFSearchPattern OBJSTM = new PDFSearchPattern("/ObjStm");
+
     private PDFByteArray pdfArray = new PDFByteArray();
 
     private PDFObject pdfObj = new PDFObject();
@@ -31,22 +49,196 @@ public class PDFObjectList {
     private PDFObject trailerObj = new PDFObject();
     private int numOfObjects;
     private int[] objectPositions;
-    private ArrayList<PDFObject> objects = new ArrayList<>();
 
+    /**
+     * For objects stored in object streams, the number of the object stream, and the index of
+     * the object in it. 0 means that the object isn't in an object stream.
+     */
+    private int[] objectStreams;
+    private int[] objectStreamIndexes;
+
+    /**
+     * The largest number of objects accepted in a file. This is the limit given in the PDF
+     * specification, and it keeps broken or hostile sizes from allocating huge tables.
+     */
+    private static final int MAX_OBJECTS = 8388607;
+
+    /**
+     * Returned by the readers of cross-reference sections, when a section is broken.
+     */
+    private static final int BROKEN_SECTION = -2;
+
+    /**
+     * The number of decoded object streams kept in memory.
+     */
+    private static final int OBJECT_STREAM_CACHE_SIZE = 16;
+
+    /**
+     * The object streams which have been decoded, in the order of last access.
+     */
+    private LinkedHashMap<Integer, ObjectStream> objectStreamCache = newObjectStreamCache();
+
+    /**
+     * The object streams being decoded right now. An object stream, whose own entry leads back
+     * to itself, would otherwise be decoded recursively forever.
+     */
+    private final HashSet<Integer> objectStreamsOpening = new HashSet<>();
+
+    /**
+     * A decoded object stream and the positions of the objects in it.
+     */
+    private static class ObjectStream {
+        PDFByteArray data;
+        int[] objNums;
+        int[] positions;
+    }
+
+    /**
+     * Whether the cross-reference table was broken and the positions of the objects were found
+     * by scanning the file.
+     */
+    private boolean recovered;
+
+    private PDFMetricsListener metrics = PDFMetricsListener.NONE;
+
+    /**
+     * The default number of objects kept in the cache.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+
+    /**
+     * The objects which have been read, in the order of last access.
+     */
+    private LinkedHashMap<Integer, PDFObject> objects = newCache();
+
+    /**
+     * Opens a file and reads its cross-reference table and trailer.
+     * @param file The file to be opened.
+     * @throws UncheckedIOException If the file can't be read.
+     */
     public void openFile(File file) {
-        pdfArray.openFile(file);
-        readXRefPosition();
-        readTrailerObj();
-        readObjectPositions();
-        readObjects();
+        boolean measure = metrics != PDFMetricsListener.NONE;
+        long time = measure ? System.nanoTime() : 0;
+        pdfArray.mapFile(file);
+        if (measure) {
+            time = phaseFinished(PDFMetricsListener.PHASE_OPEN_FILE, time);
+            metrics.bytesRead(pdfArray.getLength());
+        }
+        readStructure(time);
     }
 
     public void openFile(String filename) {
         openFile(new File(filename));
     }
 
-    PDFObject getObj(int index) {
-        return objects.get(index);
+    /**
+     * Opens a file without blocking the calling thread. The file is read into the heap with an
+     * AsynchronousFileChannel, and the cross-reference table and the trailer are read by a task
+     * run by an executor. No thread waits for the disk meanwhile.
+     * <p>
+     * The objects must not be accessed before the returned future has completed.
+     * @param file The file to be opened.
+     * @param executor The executor, which runs the parsing.
+     * @return A future, which completes when the file has been opened, or exceptionally if the
+     *         file can't be read.
+     */
+    public CompletableFuture<Void> openFileAsync(File file, Executor executor) {
+        final long start = System.nanoTime();
+        return PDFByteArray.readFileAsync(file).thenAcceptAsync(bytes -> {
+            pdfArray.setBytes(bytes);
+            long time = 0;
+            if (metrics != PDFMetricsListener.NONE) {
+                // The time spent waiting for the executor is included in opening the file.
+                time = phaseFinished(PDFMetricsListener.PHASE_OPEN_FILE, start);
+                metrics.bytesRead(bytes.length);
+            }
+            readStructure(time);
+        }, executor);
+    }
+
+    /**
+     * Reads the trailer and the cross-reference table of the file in pdfArray. If the table is
+     * broken, the positions of the objects are recovered by scanning the file.
+     * @param time The starting time of the trailer phase, if measured.
+     */
+    private void readStructure(long time) {
+        boolean measure = metrics != PDFMetricsListener.NONE;
+        objects = newCache();
+        objectStreamCache = newObjectStreamCache();
+        recovered = false;
+        trailerObj = new PDFObject();
+        boolean xrefValid;
+        try {
+            readXRefPosition();
+            readTrailerObj();
+            if (measure) {
+                time = phaseFinished(PDFMetricsListener.PHASE_TRAILER, time);
+            }
+            xrefValid = readObjectPositions();
+        } catch (RuntimeException e) {
+            xrefValid = false;
+        }
+        if (!xrefValid) {
+            Log.i("pdftesteri", "Broken cross-reference table, scanning the file for objects.");
+            recoverObjectPositions();
+        }
+        if (measure) {
+            phaseFinished(PDFMetricsListener.PHASE_XREF, time);
+        }
+    }
+
+    /**
+     * Sets the listener, which gets the timings and counters of opening files, reading objects
+     * and decoding streams.
+     * @param metrics The listener, or PDFMetricsListener.NONE.
+     */
+    public void setMetricsListener(PDFMetricsListener metrics) {
+        this.metrics = metrics;
+    }
+
+    PDFMetricsListener getMetricsListener() {
+        return metrics;
+    }
+
+    /**
+     * Reports a finished phase to the metrics listener.
+     * @param phase The phase.
+     * @param start The starting time of the phase from System.nanoTime.
+     * @return The current time, which is the starting time of the next phase.
+     */
+    private long phaseFinished(int phase, long start) {
+        long now = System.nanoTime();
+        metrics.phaseFinished(phase, now - start);
+        return now;
+    }
+
+    /**
+     * Sets the maximum number of objects kept in the cache. Objects which fall out of the cache
+     * are read again, if they are needed again.
+     * @param cacheSize The maximum number of objects.
+     */
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    /**
+     * Returns an object. The object is read from the file, if it isn't in the cache. An empty
+     * object is returned for object number 0 and for object numbers, which are not in the file.
+     * <p>
+     * Objects may be asked for from many threads. Reading moves the current position of the
+     * byte array, so only one object is read at a time.
+     * @param index The object number.
+     * @return The object.
+     */
+    synchronized PDFObject getObj(int index) {
+        PDFObject obj = objects.get(index);
+        if (obj == null) {
+            obj = readObject(index);
+            objects.put(index, obj);
+        }
+        return obj;
     }
 
     PDFObject getTrailerObj() {
@@ -57,10 +249,26 @@ public class PDFObjectList {
         return numOfObjects;
     }
 
+    /**
+     * Tells whether the cross-reference table of the file was broken, and the positions of the
+     * objects were found by scanning the file instead.
+     * @return True, if the file was recovered.
+     */
+    public boolean wasRecovered() {
+        return recovered;
+    }
+
+    /**
+     * Reads the position of the cross-reference table. The startxref keyword is at the end of
+     * the file, so it is searched backwards from the end.
+     */
     private void readXRefPosition() {
-        pdfArray.setPosition(0);
-        pdfArray.searchString("startxref");
-        pdfArray.setPosition(pdfArray.getPosition() + "startxref".length());
+        pdfArray.searchPatternFromEnd(STARTXREF);
+        if (pdfArray.getPosition() < 0) {
+            xrefPosition = -1;
+            return;
+        }
+        pdfArray.setPosition(pdfArray.getPosition() + STARTXREF.length());
         String startXRefStr = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.WHITESPACE);
         try {
             xrefPosition = Integer.parseInt(startXRefStr);
@@ -69,35 +277,667 @@ public class PDFObjectList {
         }
     }
 
+    /**
+     * Reads the trailer dictionary. The trailer is right before startxref, so it is searched
+     * backwards from the end of the file.
+     */
     private void readTrailerObj() {
-        pdfArray.setPosition(0);
-        pdfArray.searchString("trailer");
-        pdfArray.setPosition(pdfArray.getPosition()+"trailer".length());
-        trailerObj.readFromByteArray(pdfArray);
+        if (xrefPosition >= 0 && xrefPosition < pdfArray.getLength()
+                && !startsWith(skipWhitespace(xrefPosition), "xref")) {
+            // A cross-reference stream. Its dictionary is also the trailer.
+            trailerObj = new PDFObject();
+            trailerObj.readFromByteArray(pdfArray, xrefPosition);
+            return;
+        }
+        trailerObj = readLastTrailer();
     }
 
-    private void readObjectPositions() {
-        numOfObjects = trailerObj.getDictionary().get("Size").getInteger();
+    /**
+     * Reads the dictionary after the last trailer keyword in the file.
+     * @return The trailer dictionary, or an empty object if there is no trailer keyword.
+     */
+    private PDFObject readLastTrailer() {
+        PDFObject trailer = new PDFObject();
+        pdfArray.searchPatternFromEnd(TRAILER);
+        if (pdfArray.getPosition() >= 0) {
+            pdfArray.setPosition(pdfArray.getPosition()+TRAILER.length());
+            trailer.readFromByteArray(pdfArray);
+        }
+        return trailer;
+    }
+
+    /**
+     * Reads the positions of the objects from the cross-reference table. The newest section is
+     * read first, and the sections before it are followed through the Prev entries of their
+     * trailers. An object which is already known from a newer section is left as it is, so the
+     * newest position of each object wins. Free entries don't hide older entries, since deleted
+     * objects are not referenced anyway.
+     * <p>
+     * A section is either a classic table or a cross-reference stream. Positions are decoded from
+     * the bytes without creating any strings. Positions of objects, which are free, in an object
+     * stream or not in any section, are 0.
+     * @return True, if the table was read and the position of the document catalog in it
+     *         points to the catalog.
+     */
+    private boolean readObjectPositions() {
+        HashMap<String, PDFObject> trailer = trailerObj.getDictionary();
+        if (trailer == null || trailer.get("Size") == null || trailer.get("Root") == null) {
+            return false;
+        }
+        numOfObjects = trailer.get("Size").getInteger();
+        if (numOfObjects < 0 || numOfObjects > MAX_OBJECTS) {
+            return false;
+        }
         objectPositions = new int[numOfObjects];
-        pdfArray.setPosition(xrefPosition + "xref".length());
-        // The line with the number of objects
-        String aLine = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.ENDOFLINE);
+        objectStreams = new int[numOfObjects];
+        objectStreamIndexes = new int[numOfObjects];
+        Arrays.fill(objectPositions, -1);
+        // The sections already read, so that a broken Prev chain can't loop forever.
+        HashSet<Integer> sectionsRead = new HashSet<>();
+        int position = xrefPosition;
+        while (position >= 0 && position < pdfArray.getLength() && sectionsRead.add(position)) {
+            position = readXRefSection(position);
+            if (position == BROKEN_SECTION) {
+                return false;
+            }
+        }
+        for (int i=0; i < numOfObjects; i++) {
+            if (objectPositions[i] < 0) {
+                objectPositions[i] = 0;
+            }
+        }
+        // Files mangled by mail gateways often have all positions shifted. If the catalog isn't
+        // where the table says, the table can't be trusted.
+        int rootObjNum = trailer.get("Root").getIndirRefObjNum();
+        return rootObjNum > 0 && rootObjNum < numOfObjects
+                && (objectStreams[rootObjNum] > 0 && getObjectStream(objectStreams[rootObjNum]) != null
+                    || objectNumberAt(objectPositions[rootObjNum]) == rootObjNum);
+    }
+
+    /**
+     * Reads the object number from the header of an object.
+     * @param pos The position of the object header.
+     * @return The object number, or -1 if there is no number at the position.
+     */
+    private int objectNumberAt(int pos) {
+        if (pos <= 0 || pos >= pdfArray.getLength() || !isDigit(pdfArray.getByte(pos))) {
+            return -1;
+        }
+        int objNum = 0;
+        for (; pos < pdfArray.getLength() && isDigit(pdfArray.getByte(pos)); pos++) {
+            objNum = objNum*10 + pdfArray.getByte(pos) - '0';
+        }
+        return objNum;
+    }
+
+    /**
+     * Finds the positions of the objects by scanning the whole file for object headers "N G
+     * obj". This is used when the cross-reference table is missing or broken. If an object is
+     * found many times, the last one wins like in incremental updates.
+     * <p>
+     * Objects in object streams are found by looking for the object streams and reading their
+     * headers. If the trailer can't be found either, a trailer pointing to the document catalog
+     * is made up.
+     */
+    private void recoverObjectPositions() {
+        recovered = true;
+        objects = newCache();
+        objectStreamCache = newObjectStreamCache();
+        numOfObjects = 0;
+        objectPositions = new int[0];
+        objectStreams = new int[0];
+        objectStreamIndexes = new int[0];
+        // The headers in the order they are in the file, for finding the object streams.
+        int[] headerPositions = new int[64];
+        int[] headerObjNums = new int[64];
+        int headerCount = 0;
+
+        int length = pdfArray.getLength();
+        int pos = 0;
+        while ((pos = pdfArray.searchPattern(pos, OBJ)) >= 0) {
+            int keyword = pos;
+            pos += OBJ.length();
+            // The keyword must be followed by a whitespace or a delimiter, and preceded by the
+            // generation number and the object number separated by whitespace.
+            if (pos < length && !pdfArray.isChar(pos, PDFByteArray.WHITESPACE)
+                    && !pdfArray.isChar(pos, PDFByteArray.DELIMITERS)) {
+                continue;
+            }
+            int p = keyword - 1;
+            if (p < 0 || !pdfArray.isChar(p, PDFByteArray.WHITESPACE)) {
+                continue;
+            }
+            while (p >= 0 && pdfArray.isChar(p, PDFByteArray.WHITESPACE)) {
+                p--;
+            }
+            int generationEnd = p;
+            while (p >= 0 && isDigit(pdfArray.getByte(p))) {
+                p--;
+            }
+            if (p == generationEnd || p < 0 || !pdfArray.isChar(p, PDFByteArray.WHITESPACE)) {
+                continue;
+            }
+            while (p >= 0 && pdfArray.isChar(p, PDFByteArray.WHITESPACE)) {
+                p--;
+            }
+            int numberEnd = p;
+            while (p >= 0 && isDigit(pdfArray.getByte(p))) {
+                p--;
+            }
+            if (p == numberEnd || numberEnd - p > 9 || (p >= 0
+                    && !pdfArray.isChar(p, PDFByteArray.WHITESPACE)
+                    && !pdfArray.isChar(p, PDFByteArray.DELIMITERS))) {
+                continue;
+            }
+            int headerStart = p + 1;
+            int objNum = objectNumberAt(headerStart);
+            if (objNum <= 0 || !ensureObjectCapacity(objNum + 1)) {
+                continue;
+            }
+            objectPositions[objNum] = headerStart;
+            objectStreams[objNum] = 0;
+            if (headerCount == headerPositions.length) {
+                headerPositions = Arrays.copyOf(headerPositions, headerCount * 2);
+                headerObjNums = Arrays.copyOf(headerObjNums, headerCount * 2);
+            }
+            headerPositions[headerCount] = headerStart;
+            headerObjNums[headerCount] = objNum;
+            headerCount++;
+        }
         for (int i=0; i < numOfObjects; i++) {
-            aLine = pdfArray.getString(pdfArray.WHITESPACE, pdfArray.ENDOFLINE);
-            objectPositions[i] = Integer.parseInt(aLine.substring(0, 10));
+            if (objectPositions[i] < 0) {
+                objectPositions[i] = 0;
+            }
         }
+
+        // Each /ObjStm belongs to the object whose header is the last one before it.
+        pos = 0;
+        while ((pos = pdfArray.searchPattern(pos, OBJSTM)) >= 0) {
+            int header = Arrays.binarySearch(headerPositions, 0, headerCount, pos);
+            header = header >= 0 ? header : -header - 2;
+            pos += OBJSTM.length();
+            if (header < 0) {
+                continue;
+            }
+            int streamObjNum = headerObjNums[header];
+            ObjectStream objectStream = getObjectStream(streamObjNum);
+            if (objectStream == null) {
+                continue;
+            }
+            for (int i=0; i < objectStream.objNums.length; i++) {
+                int objNum = objectStream.objNums[i];
+                if (objNum > 0 && objNum < numOfObjects && objectPositions[objNum] == 0) {
+                    objectStreams[objNum] = streamObjNum;
+                    objectStreamIndexes[objNum] = i;
+                }
+            }
+        }
+
+        recoverTrailer();
     }
 
-    private void readObjects() {
-        // Add a dummy object for the 0th object. Otherwise the object numbers of PDF-file and
-        // indexes of this list are off by one.
-        objects.add(new PDFObject());
-        for (int i=1; i < numOfObjects; i++) {
-            PDFObject obj = new PDFObject();
-            pdfArray.setPosition(objectPositions[i]);
-            obj.readFromByteArray(pdfArray);
-            objects.add(obj);
+    /**
+     * Finds a trailer with a document catalog after recovery. The trailer found before is used,
+     * if it has the catalog. Otherwise the last trailer keyword is tried, and finally the
+     * catalog is searched among the objects and a trailer is made up for it.
+     */
+    private void recoverTrailer() {
+        if (hasRoot(trailerObj)) {
+            return;
         }
+        PDFObject trailer = readLastTrailer();
+        if (hasRoot(trailer)) {
+            trailerObj = trailer;
+            return;
+        }
+        for (int objNum=numOfObjects-1; objNum > 0; objNum--) {
+            if (objectPositions[objNum] == 0 && objectStreams[objNum] == 0) {
+                continue;
+            }
+            HashMap<String, PDFObject> dictionary = getObj(objNum).getDictionary();
+            if (dictionary != null && dictionary.get("Type") != null
+                    && "Catalog".equals(dictionary.get("Type").getName())) {
+                PDFByteArray made = new PDFByteArray();
+                made.setBytes(("<< /Size " + numOfObjects + " /Root " + objNum + " 0 R >>")
+                        .getBytes(StandardCharsets.ISO_8859_1));
+                trailerObj = new PDFObject();
+                trailerObj.readFromByteArray(made, 0);
+                return;
+            }
+        }
+    }
+
+    private static boolean hasRoot(PDFObject trailer) {
+        return trailer.getDictionary() != null && trailer.getDictionary().get("Root") != null;
+    }
+
+    /**
+     * Reads a section of the cross-reference table. A section has one or more subsections,
+     * each of which starts with the number of its first object and the number of its entries.
+     * The entries are 20 bytes long: a 10 digit position, a space, a 5 digit generation number,
+     * a space, n or f, and a two byte end of line. Some files have a single byte end of line, so
+     * any whitespace after the type is skipped instead of counting on 20 bytes. An entry in any
+     * other form, or a section with fewer entries than it says, makes the section broken.
+     * @param position The position of the xref keyword.
+     * @return The position of the previous section, -1 if there isn't one, or BROKEN_SECTION.
+     */
+    private int readXRefSection(int position) {
+        int length = pdfArray.getLength();
+        int pos = skipWhitespace(position);
+        if (!startsWith(pos, "xref")) {
+            return readXRefStream(position);
+        }
+        pos = skipWhitespace(pos + "xref".length());
+        while (pos < length && isDigit(pdfArray.getByte(pos))) {
+            int first = 0;
+            for (; pos < length && isDigit(pdfArray.getByte(pos)); pos++) {
+                first = first*10 + pdfArray.getByte(pos) - '0';
+            }
+            pos = skipWhitespace(pos);
+            int count = 0;
+            for (; pos < length && isDigit(pdfArray.getByte(pos)); pos++) {
+                count = count*10 + pdfArray.getByte(pos) - '0';
+            }
+            pos = skipWhitespace(pos);
+            // Too many digits overflow to a negative number.
+            if (first < 0 || count < 0 || !ensureObjectCapacity(first + count)) {
+                return BROKEN_SECTION;
+            }
+            for (int i=0; i < count; i++) {
+                // A section cut short, or an entry which isn't digits and a type, means that the
+                // table has moved or is garbage. Its positions can't be trusted.
+                if (pos + 18 > length || !isXRefEntry(pos)) {
+                    return BROKEN_SECTION;
+                }
+                long objectPosition = 0;
+                for (int j=pos; j < pos + 10; j++) {
+                    objectPosition = objectPosition*10 + pdfArray.getByte(j) - '0';
+                }
+                if (objectPosition > Integer.MAX_VALUE) {
+                    return BROKEN_SECTION;
+                }
+                if (objectPositions[first + i] < 0 && pdfArray.getByte(pos + 17) == 'n') {
+                    objectPositions[first + i] = (int) objectPosition;
+                }
+                pos = skipWhitespace(pos + 18);
+            }
+        }
+        // The trailer of the section tells where the previous section is.
+        if (!startsWith(pos, "trailer")) {
+            return -1;
+        }
+        PDFObject trailer = new PDFObject();
+        trailer.readFromByteArray(pdfArray, pos + "trailer".length());
+        if (trailer.getDictionary() == null) {
+            return -1;
+        }
+        // A hybrid file has the objects in object streams listed in a cross-reference stream.
+        // It is read before the previous section.
+        PDFObject xrefStm = trailer.getDictionary().get("XRefStm");
+        if (xrefStm != null && readXRefStream(xrefStm.getInteger()) == BROKEN_SECTION) {
+            return BROKEN_SECTION;
+        }
+        PDFObject prev = trailer.getDictionary().get("Prev");
+        return prev != null ? prev.getInteger() : -1;
+    }
+
+    /**
+     * Tells whether there is a cross-reference entry at a position: ten digits of the position,
+     * a space, five digits of the generation number, a space, and n or f.
+     */
+    private boolean isXRefEntry(int pos) {
+        for (int j=pos; j < pos + 17; j++) {
+            boolean separator = j == pos + 10 || j == pos + 16;
+            if (separator ? pdfArray.getByte(j) != ' ' : !isDigit(pdfArray.getByte(j))) {
+                return false;
+            }
+        }
+        byte type = pdfArray.getByte(pos + 17);
+        return type == 'n' || type == 'f';
+    }
+
+    /**
+     * Reads a cross-reference stream. The stream has a row of binary fields for each object.
+     * The widths of the fields are given by W, and the object numbers by the pairs of the first
+     * object number and the number of objects in Index. The first field is the type: 0 for free,
+     * 1 for a position in the file, and 2 for an object in an object stream. For type 2, the
+     * second field is the number of the object stream and the third is the index in it.
+     * @param position The position of the stream object.
+     * @return The position of the previous section, -1 if there isn't one, or BROKEN_SECTION.
+     */
+    private int readXRefStream(int position) {
+        if (position < 0 || position >= pdfArray.getLength()) {
+            return -1;
+        }
+        PDFObject xrefObj = new PDFObject();
+        xrefObj.readFromByteArray(pdfArray, position);
+        HashMap<String, PDFObject> dictionary = xrefObj.getDictionary();
+        PDFByteArray decoded = decode(xrefObj);
+        if (dictionary == null || decoded == null || dictionary.get("W") == null
+                || dictionary.get("W").getArray() == null || dictionary.get("W").getArray().size() < 3) {
+            return BROKEN_SECTION;
+        }
+        ArrayList<PDFObject> w = dictionary.get("W").getArray();
+        // The fields are read into ints, so they can't be wider than four bytes.
+        for (int i=0; i < 3; i++) {
+            if (w.get(i).getInteger() < 0 || w.get(i).getInteger() > 4) {
+                return BROKEN_SECTION;
+            }
+        }
+        int typeWidth = w.get(0).getInteger();
+        int fieldWidth = w.get(1).getInteger();
+        int indexWidth = w.get(2).getInteger();
+        int rowLength = typeWidth + fieldWidth + indexWidth;
+        byte[] rows = decoded.getBytes(0, decoded.getLength());
+
+        // With a predictor, the width of the rows is given by Columns. It may be wider than the
+        // fields, but not narrower.
+        int predictor = 1;
+        int columns = rowLength;
+        PDFObject decodeParms = dictionary.get("DecodeParms");
+        if (decodeParms != null && decodeParms.getDictionary() != null) {
+            HashMap<String, PDFObject> parms = decodeParms.getDictionary();
+            if (parms.get("Predictor") != null) {
+                predictor = parms.get("Predictor").getInteger();
+            }
+            if (predictor > 1) {
+                columns = parms.get("Columns") != null ? parms.get("Columns").getInteger() : 1;
+            }
+        }
+        if (columns < rowLength || columns < 1) {
+            return BROKEN_SECTION;
+        }
+        int rowCount;
+        if (predictor == 1) {
+            rowCount = rows.length / columns;
+        } else if (predictor == 2) {
+            rowCount = rows.length / columns;
+            removeTiffPredictor(rows, rowCount, columns);
+        } else if (predictor >= 10 && predictor <= 15) {
+            rowCount = rows.length / (columns + 1);
+            rows = removePngPredictor(rows, rowCount, columns);
+        } else {
+            return BROKEN_SECTION;
+        }
+
+        PDFObject index = dictionary.get("Index");
+        int[] subsections;
+        if (index != null && index.getArray() != null) {
+            subsections = new int[index.getArray().size()];
+            for (int i=0; i < subsections.length; i++) {
+                subsections[i] = index.getArray().get(i).getInteger();
+            }
+        } else if (dictionary.get("Size") != null) {
+            subsections = new int[] {0, dictionary.get("Size").getInteger()};
+        } else {
+            return BROKEN_SECTION;
+        }
+
+        int row = 0;
+        for (int s=0; s + 1 < subsections.length; s += 2) {
+            int first = subsections[s];
+            int count = subsections[s + 1];
+            if (first < 0 || count < 0 || !ensureObjectCapacity(first + count)) {
+                return BROKEN_SECTION;
+            }
+            for (int i=0; i < count && row < rowCount; i++, row++) {
+                int at = row * columns;
+                // The type defaults to 1, if its field is left out.
+                int type = typeWidth == 0 ? 1 : readField(rows, at, typeWidth);
+                int field = readField(rows, at + typeWidth, fieldWidth);
+                int objIndex = readField(rows, at + typeWidth + fieldWidth, indexWidth);
+                int objNum = first + i;
+                if (objectPositions[objNum] >= 0 || type == 0) {
+                    continue;
+                }
+                if (type == 1) {
+                    objectPositions[objNum] = field;
+                } else if (type == 2) {
+                    objectPositions[objNum] = 0;
+                    objectStreams[objNum] = field;
+                    objectStreamIndexes[objNum] = objIndex;
+                }
+            }
+        }
+        PDFObject prev = dictionary.get("Prev");
+        return prev != null ? prev.getInteger() : -1;
+    }
+
+    private static int readField(byte[] rows, int at, int width) {
+        int value = 0;
+        for (int i=0; i < width; i++) {
+            value = (value << 8) | (rows[at + i] & 0xff);
+        }
+        return value;
+    }
+
+    /**
+     * Removes the TIFF predictor from the rows of a cross-reference stream in place. Each byte
+     * was predicted from the byte on the left. The rows have a single byte per pixel.
+     */
+    private static void removeTiffPredictor(byte[] rows, int rowCount, int rowLength) {
+        for (int r=0; r < rowCount; r++) {
+            for (int c=1; c < rowLength; c++) {
+                rows[r*rowLength + c] += rows[r*rowLength + c - 1];
+            }
+        }
+    }
+
+    /**
+     * Removes the PNG predictor from the rows of a cross-reference stream. Each row starts with
+     * the type of the filter, which tells how the bytes were predicted from the byte on the left
+     * and the byte above. The rows have a single byte per pixel.
+     */
+    private static byte[] removePngPredictor(byte[] data, int rowCount, int rowLength) {
+        byte[] rows = new byte[rowCount * rowLength];
+        for (int r=0; r < rowCount; r++) {
+            int filter = data[r * (rowLength + 1)];
+            for (int c=0; c < rowLength; c++) {
+                int raw = data[r * (rowLength + 1) + 1 + c] & 0xff;
+                int left = c > 0 ? rows[r*rowLength + c - 1] & 0xff : 0;
+                int up = r > 0 ? rows[(r-1)*rowLength + c] & 0xff : 0;
+                int upLeft = r > 0 && c > 0 ? rows[(r-1)*rowLength + c - 1] & 0xff : 0;
+                int predicted;
+                switch (filter) {
+                    case 1: predicted = left; break;
+                    case 2: predicted = up; break;
+                    case 3: predicted = (left + up) / 2; break;
+                    case 4: predicted = paeth(left, up, upLeft); break;
+                    default: predicted = 0; break;
+                }
+                rows[r*rowLength + c] = (byte) (raw + predicted);
+            }
+        }
+        return rows;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int p = left + up - upLeft;
+        int pLeft = Math.abs(p - left);
+        int pUp = Math.abs(p - up);
+        int pUpLeft = Math.abs(p - upLeft);
+        if (pLeft <= pUp && pLeft <= pUpLeft) {
+            return left;
+        }
+        return pUp <= pUpLeft ? up : upLeft;
+    }
+
+    /**
+     * Makes room for more objects, if a section has more objects than the trailer says.
+     * @param capacity The number of objects needed.
+     * @return False, if the number is more than a file can have. Nothing is changed then.
+     */
+    private boolean ensureObjectCapacity(int capacity) {
+        // A sum of two large numbers from the file may overflow to a negative number.
+        if (capacity < 0 || capacity > MAX_OBJECTS) {
+            return false;
+        }
+        if (capacity > numOfObjects) {
+            objectPositions = Arrays.copyOf(objectPositions, capacity);
+            objectStreams = Arrays.copyOf(objectStreams, capacity);
+            objectStreamIndexes = Arrays.copyOf(objectStreamIndexes, capacity);
+            Arrays.fill(objectPositions, numOfObjects, capacity, -1);
+            numOfObjects = capacity;
+        }
+        return true;
+    }
+
+    private int skipWhitespace(int pos) {
+        while (pos < pdfArray.getLength() && pdfArray.isChar(pos, PDFByteArray.WHITESPACE)) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private boolean startsWith(int pos, String keyword) {
+        if (pos + keyword.length() > pdfArray.getLength()) {
+            return false;
+        }
+        for (int i=0; i < keyword.length(); i++) {
+            if (pdfArray.getByte(pos + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Reads a single object from its position in the cross-reference table.
+     * @param index The object number.
+     * @return The object.
+     */
+    private PDFObject readObject(int index) {
+        PDFObject obj = new PDFObject();
+        // The 0th object and other free objects have no position, and they are left empty.
+        if (index > 0 && index < numOfObjects && objectPositions[index] > 0) {
+            long time = metrics != PDFMetricsListener.NONE ? System.nanoTime() : 0;
+            obj.readFromByteArray(pdfArray, objectPositions[index]);
+            objectParsed(time);
+        } else if (index > 0 && index < numOfObjects && objectStreams[index] > 0) {
+            ObjectStream objectStream = getObjectStream(objectStreams[index]);
+            int streamIndex = objectStreamIndexes[index];
+            if (objectStream != null && streamIndex >= 0 && streamIndex < objectStream.positions.length) {
+                long time = metrics != PDFMetricsListener.NONE ? System.nanoTime() : 0;
+                obj.readFromByteArray(objectStream.data, objectStream.positions[streamIndex]);
+                objectParsed(time);
+            }
+        }
+        return obj;
+    }
+
+    private void objectParsed(long start) {
+        if (metrics != PDFMetricsListener.NONE) {
+            phaseFinished(PDFMetricsListener.PHASE_OBJECT_PARSE, start);
+            metrics.objectParsed();
+        }
+    }
+
+    /**
+     * Returns the decoded stream of an object. The decoding is reported to the metrics
+     * listener.
+     * @param index The object number.
+     * @return The decoded stream, or null if the object has no stream.
+     */
+    PDFByteArray getDecodedStream(int index) {
+        return decode(getObj(index));
+    }
+
+    private PDFByteArray decode(PDFObject obj) {
+        if (metrics == PDFMetricsListener.NONE) {
+            return obj.getDecodedStream();
+        }
+        long time = System.nanoTime();
+        PDFByteArray decoded = obj.getDecodedStream();
+        phaseFinished(PDFMetricsListener.PHASE_DECODE, time);
+        if (decoded != null) {
+            metrics.bytesInflated(decoded.getLength());
+        }
+        return decoded;
+    }
+
+    /**
+     * Returns a decoded object stream. Each object stream is decoded only once while it stays
+     * in the cache, however many objects are read from it.
+     * <p>
+     * An object stream starts with pairs of an object number and the position of the object
+     * relative to First. The objects themselves follow without the obj and endobj keywords.
+     * <p>
+     * An object stream must not be in an object stream itself. Such a stream, or a stream
+     * which is reached again while it is being decoded, is refused.
+     * @param streamObjNum The number of the object stream.
+     * @return The object stream, or null if it can't be decoded.
+     */
+    private ObjectStream getObjectStream(int streamObjNum) {
+        ObjectStream objectStream = objectStreamCache.get(streamObjNum);
+        if (objectStream != null) {
+            return objectStream;
+        }
+        if (streamObjNum <= 0 || streamObjNum >= numOfObjects || objectStreams[streamObjNum] > 0
+                || !objectStreamsOpening.add(streamObjNum)) {
+            return null;
+        }
+        try {
+            objectStream = readObjectStream(streamObjNum);
+        } finally {
+            objectStreamsOpening.remove(streamObjNum);
+        }
+        if (objectStream != null) {
+            objectStreamCache.put(streamObjNum, objectStream);
+        }
+        return objectStream;
+    }
+
+    private ObjectStream readObjectStream(int streamObjNum) {
+        PDFObject streamObj = getObj(streamObjNum);
+        HashMap<String, PDFObject> dictionary = streamObj.getDictionary();
+        PDFByteArray data = decode(streamObj);
+        if (dictionary == null || data == null || dictionary.get("N") == null
+                || dictionary.get("First") == null) {
+            return null;
+        }
+        int count = dictionary.get("N").getInteger();
+        int first = dictionary.get("First").getInteger();
+        // Each pair takes at least four bytes, so a count larger than that is a lie.
+        if (count < 0 || count > data.getLength() / 4 || first < 0 || first > data.getLength()) {
+            return null;
+        }
+        ObjectStream objectStream = new ObjectStream();
+        objectStream.data = data;
+        objectStream.objNums = new int[count];
+        objectStream.positions = new int[count];
+        PDFLexer lexer = new PDFLexer(data, 0);
+        for (int i=0; i < count; i++) {
+            lexer.next();
+            objectStream.objNums[i] = lexer.getInteger();
+            lexer.next();
+            objectStream.positions[i] = first + lexer.getInteger();
+            if (objectStream.positions[i] < first || objectStream.positions[i] >= data.getLength()) {
+                return null;
+            }
+        }
+        return objectStream;
+    }
+
+    private static LinkedHashMap<Integer, ObjectStream> newObjectStreamCache() {
+        return new LinkedHashMap<Integer, ObjectStream>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ObjectStream> eldest) {
+                return size() > OBJECT_STREAM_CACHE_SIZE;
+            }
+        };
+    }
+
+    private LinkedHashMap<Integer, PDFObject> newCache() {
+        return new LinkedHashMap<Integer, PDFObject>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, PDFObject> eldest) {
+                return size() > cacheSize;
+            }
+        };
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,60 @@
+package tuomaan.pdftest;
+
+/**
+ * A byte pattern, which can be searched from a PDFByteArray. The skip tables of Horspool's
+ * algorithm are computed once when the pattern is created, so a pattern should be created once
+ * and reused for all searches. Searching itself doesn't allocate anything.
+ * <p>
+ * The pattern is given as a string, and each character is turned into a single byte. This is
+ * enough for PDF keywords, which are all plain ASCII.
+ */
+public class PDFSearchPattern {
+
+    /**
+     * The bytes of the pattern.
+     */
+    final byte[] bytes;
+
+    /**
+     * Skip table for searching forwards. When the window doesn't match, the window is moved
+     * forwards by the value of the byte under the last position of the window.
+     */
+    final int[] forwardSkip = new int[256];
+
+    /**
+     * Skip table for searching backwards. When the window doesn't match, the window is moved
+     * backwards by the value of the byte under the first position of the window.
+     */
+    final int[] backwardSkip = new int[256];
+
+    public PDFSearchPattern(String pattern) {
+        bytes = new byte[pattern.length()];
+        for (int i=0; i < bytes.length; i++) {
+            bytes[i] = (byte) pattern.charAt(i);
+        }
+        int m = bytes.length;
+        for (int i=0; i < 256; i++) {
+            forwardSkip[i] = m;
+            backwardSkip[i] = m;
+        }
+        // The last byte of the pattern is left out, otherwise a byte found at the end of the
+        // window would never move it.
+        for (int i=0; i < m-1; i++) {
+            forwardSkip[bytes[i] & 0xff] = m - 1 - i;
+        }
+        // Same thing the other way round: the first byte is left out, and the occurrence nearest
+        // to the start of the pattern wins.
+        for (int i=m-1; i > 0; i--) {
+            backwardSkip[bytes[i] & 0xff] = i;
+        }
+    }
+
+    /**
+     * Returns the length of the pattern in bytes.
+     * @return The length of the pattern.
+     */
+    public int length() {
+        return bytes.length;
+    }
+
+}
@@ -4,8 +4,12 @@ package pdftextextractor;
 
 import java.io.File;
 import java.io.FileWriter;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 //import pdf.PDFObjectList;
 
 /**
@@ -15,7 +19,7 @@ import java.util.Collections;
  * for now.
  
  * @author Tuomas Lehti
- * @version 2019-03-21
+ * @version 2026-10-18
  *
  * TODO: getPageObjectNumbers should be tested for more compilcated page tree structures.
  * TODO: Multiple items in the page contents array should be supported.
@@ -25,13 +29,295 @@ public class PDFTextExtractor {
     PDFObjectList pdf = new PDFObjectList();
     public File path;
 
+    /** The numbers of the content stream objects of the pages, once they are looked up. */
+    private ArrayList<Integer> contentsList;
+
+    /** When the file was opened and how many bytes the thread had allocated then, if measured. */
+    private long openTime;
+    private long openAllocatedBytes;
+
+    /** Used for reading the allocated bytes of a thread, where the platform supports it. */
+    private static Object threadMXBean;
+    private static Method getThreadAllocatedBytes;
+
+    static {
+        // Looked up by reflection, because Android doesn't have java.lang.management.
+        try {
+            threadMXBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            getThreadAllocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+        } catch (Exception e) {
+            getThreadAllocatedBytes = null;
+        }
+    }
+
+    /**
+     * Sets the listener, which gets the timings and counters of all phases from opening the file
+     * to sorting the text items.
+     * @param metrics The listener, or PDFMetricsListener.NONE.
+     */
+    public void setMetricsListener(PDFMetricsListener metrics) {
+        pdf.setMetricsListener(metrics);
+    }
+
+    /**
+     * Opens a file for extracting text.
+     * @param file The file to be opened.
+     * @throws java.io.UncheckedIOException If the file can't be read.
+     */
     public void openFile(File file) {
+        if (pdf.getMetricsListener() != PDFMetricsListener.NONE) {
+            openTime = System.nanoTime();
+            openAllocatedBytes = allocatedBytes();
+        }
         pdf.openFile(file);
+        contentsList = null;
 //        Log.i("pdftesteri", "Opened file " + file.getName());
 //        Log.i("pdftesteri", "Number of objects: " + pdf.numOfObjs());
     }
 
+    /**
+     * Opens a file without blocking the calling thread. The file is read with an
+     * AsynchronousFileChannel, and its structure is parsed by a task run by an executor, so
+     * thousands of files can be in progress without a thread waiting for each of them.
+     * <p>
+     * The text must not be asked for before the returned future has completed.
+     * @param file The file to be opened.
+     * @param executor The executor, which runs the parsing.
+     * @return A future, which completes with this extractor when the file has been opened, or
+     *         exceptionally if the file can't be read.
+     */
+    public CompletableFuture<PDFTextExtractor> openFileAsync(File file, Executor executor) {
+        if (pdf.getMetricsListener() != PDFMetricsListener.NONE) {
+            openTime = System.nanoTime();
+            // The work is done in other threads, so the allocations of this thread don't tell.
+            openAllocatedBytes = -1;
+        }
+        contentsList = null;
+        return pdf.openFileAsync(file, executor).thenApply(opened -> this);
+    }
+
+    /**
+     * Extracts the text like getText, but in a task run by an executor.
+     * @param executor The executor, which runs the extraction.
+     * @return A future, which completes with the text snippets from all pages.
+     */
+    public CompletableFuture<ArrayList<PDFTextItem>> getTextAsync(Executor executor) {
+        return CompletableFuture.supplyAsync(() -> getText(false), executor);
+    }
+
+    /**
+     * Opens a file and extracts its text without blocking the calling thread. The file is read
+     * asynchronously, and the parsing and the extraction are run by an executor.
+     * @param file The file.
+     * @param executor The executor, which runs the CPU work.
+     * @return A future, which completes with the text snippets from all pages, or exceptionally
+     *         if the file can't be read.
+     */
+    public static CompletableFuture<ArrayList<PDFTextItem>> extractTextAsync(File file, Executor executor) {
+        return new PDFTextExtractor().openFileAsync(file, executor)
+                .thenApplyAsync(extractor -> extractor.getText(false), executor);
+    }
+
     public ArrayList<PDFTextItem> getText() {
+        return getText(true);
+    }
+
+    /**
+     * Extracts the text from all pages.
+     * @param inThisThread Whether the file was opened in this thread. If not, the allocations of
+     *                     this thread don't tell how much the file took.
+     * @return The text snippets from all pages.
+     */
+    private ArrayList<PDFTextItem> getText(boolean inThisThread) {
+        ArrayList<Integer> contentsList = getContentsObjectNumbers();
+        // Loop through all pages.
+        ArrayList<PDFTextItem> textItemsFromAllPages = new ArrayList<>();
+        for (int i=0; i < contentsList.size(); i++) {
+            // Get the decoded contents.
+            ArrayList<PDFTextItem> textItemsFromThisPage = getTextItemsFromAPage(contentsList.get(i), i);
+            textItemsFromAllPages.addAll(textItemsFromThisPage);
+        }
+        sort(textItemsFromAllPages);
+        fileExtracted(inThisThread);
+
+        return textItemsFromAllPages;
+    }
+
+    /**
+     * Extracts the text like getText, but stores it in a PDFTextItemStore instead of a list of
+     * PDFTextItems. The snippets are sorted with a primitive radix sort.
+     * @return The text snippets from all pages.
+     */
+    public PDFTextItemStore getTextStore() {
+        PDFTextItemStore store = getUnsortedTextStore();
+        long time = startPhase();
+        store.sort();
+        endPhase(PDFMetricsListener.PHASE_SORT, time);
+        fileExtracted();
+        return store;
+    }
+
+    /**
+     * Extracts the text and groups it into lines by the surrounding boxes. The snippets are not
+     * sorted as a whole, only the lines and the snippets within each line are.
+     * @return The lines of text from all pages.
+     */
+    public PDFTextLineIndex getTextLines() {
+        PDFTextItemStore store = getUnsortedTextStore();
+        long time = startPhase();
+        PDFTextLineIndex lines = new PDFTextLineIndex(store);
+        endPhase(PDFMetricsListener.PHASE_SORT, time);
+        fileExtracted();
+        return lines;
+    }
+
+    /**
+     * Returns the number of pages in the file.
+     * @return The number of pages.
+     */
+    public int getPageCount() {
+        return getContentsObjectNumbers().size();
+    }
+
+    /**
+     * Extracts the text of a single page and groups it into lines. Only the page asked for is
+     * decoded, so the pages of a large file can be handled one at a time.
+     * @param pageNum The page number, starting from 0.
+     * @return The lines of text from the page.
+     */
+    public PDFTextLineIndex getTextLinesOfPage(int pageNum) {
+        int contentsObjNum = getContentsObjectNumbers().get(pageNum);
+        PDFTextItemStore store = new PDFTextItemStore();
+        interpretPage(new PDFContentInterpreter(), contentsObjNum, pageNum, store);
+        return new PDFTextLineIndex(store);
+    }
+
+    private PDFTextItemStore getUnsortedTextStore() {
+        ArrayList<Integer> contentsList = getContentsObjectNumbers();
+        PDFTextItemStore store = new PDFTextItemStore();
+        PDFContentInterpreter interpreter = new PDFContentInterpreter();
+        for (int i=0; i < contentsList.size(); i++) {
+            interpretPage(interpreter, contentsList.get(i), i, store);
+        }
+        return store;
+    }
+
+    private void interpretPage(PDFContentInterpreter interpreter, int contentsObjNum, int pageNum,
+                               PDFTextItemStore store) {
+        PDFByteArray decodedContents = pdf.getDecodedStream(contentsObjNum);
+        int sizeBefore = store.size();
+        long time = startPhase();
+        interpreter.interpret(decodedContents, pageNum, store);
+        endPhase(PDFMetricsListener.PHASE_CONTENT_PARSE, time);
+        pdf.getMetricsListener().textItemsEmitted(store.size() - sizeBefore);
+    }
+
+    /**
+     * Extracts the text like getText, but decodes and parses the pages in parallel in the
+     * common ForkJoinPool.
+     * @return The text snippets from all pages in the same order as getText returns them.
+     */
+    public ArrayList<PDFTextItem> getTextParallel() {
+        return getText(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Extracts the text like getText, but decodes and parses the pages in parallel using an
+     * executor. Each page is sorted on its own. Text items are ordered by page first, so the
+     * sorted pages are simply joined in page order, and no global sort is needed.
+     * @param executor The executor, which runs the pages.
+     * @return The text snippets from all pages in the same order as getText returns them.
+     */
+    public ArrayList<PDFTextItem> getText(Executor executor) {
+        ArrayList<Integer> contentsList = getContentsObjectNumbers();
+        ArrayList<CompletableFuture<ArrayList<PDFTextItem>>> pages = new ArrayList<>();
+        for (int i=0; i < contentsList.size(); i++) {
+            final int contentsObjNum = contentsList.get(i);
+            final int pageNum = i;
+            pages.add(CompletableFuture.supplyAsync(() -> {
+                ArrayList<PDFTextItem> textItemsFromThisPage = getTextItemsFromAPage(contentsObjNum, pageNum);
+                sort(textItemsFromThisPage);
+                return textItemsFromThisPage;
+            }, executor));
+        }
+        ArrayList<PDFTextItem> textItemsFromAllPages = new ArrayList<>();
+        for (CompletableFuture<ArrayList<PDFTextItem>> page : pages) {
+            textItemsFromAllPages.addAll(page.join());
+        }
+        // The pages were extracted in other threads, so the allocations of this thread don't
+        // tell how much the file took.
+        fileExtracted(false);
+        return textItemsFromAllPages;
+    }
+
+    private void sort(ArrayList<PDFTextItem> textItems) {
+        long time = startPhase();
+        Collections.sort(textItems);
+        endPhase(PDFMetricsListener.PHASE_SORT, time);
+    }
+
+    /**
+     * Returns the starting time of a phase, or 0 if nobody listens to the metrics.
+     */
+    private long startPhase() {
+        return pdf.getMetricsListener() != PDFMetricsListener.NONE ? System.nanoTime() : 0;
+    }
+
+    private void endPhase(int phase, long start) {
+        PDFMetricsListener metrics = pdf.getMetricsListener();
+        if (metrics != PDFMetricsListener.NONE) {
+            metrics.phaseFinished(phase, System.nanoTime() - start);
+        }
+    }
+
+    private void fileExtracted() {
+        fileExtracted(true);
+    }
+
+    /**
+     * Reports an extracted file to the metrics listener.
+     * @param inThisThread Whether all the work since opening the file was done in this thread.
+     *                     If not, the allocated bytes are reported as unknown.
+     */
+    private void fileExtracted(boolean inThisThread) {
+        PDFMetricsListener metrics = pdf.getMetricsListener();
+        if (metrics != PDFMetricsListener.NONE) {
+            long allocated = inThisThread ? allocatedBytes() : -1;
+            metrics.fileExtracted(System.nanoTime() - openTime,
+                    allocated >= 0 && openAllocatedBytes >= 0 ? allocated - openAllocatedBytes : -1);
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread so far.
+     * @return The number of bytes, or -1 if the platform can't tell.
+     */
+    private static long allocatedBytes() {
+        if (getThreadAllocatedBytes == null) {
+            return -1;
+        }
+        try {
+            return (Long) getThreadAllocatedBytes.invoke(threadMXBean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the numbers of the content stream objects of all pages in page order. The page tree
+     * is walked only once per file.
+     * @return The list of numbers of content stream objects.
+     */
+    private ArrayList<Integer> getContentsObjectNumbers() {
+        if (contentsList == null) {
+            contentsList = readContentsObjectNumbers();
+        }
+        return contentsList;
+    }
+
+    private ArrayList<Integer> readContentsObjectNumbers() {
         // Locate the root object.
         int rootObjNum = pdf.getTrailerObj().getDictionary().get("Root").getIndirRefObjNum();
 //        Log.i("pdftesteri", "Root object number: " + rootObjNum);
@@ -41,8 +327,7 @@ public class PDFTextExtractor {
         // Get a list of page object numbers.
         ArrayList<Integer> pageList = getPageObjectNumbers(pdf.getObj(pagesObjNum));
 //        Log.i("pdftesteri", "Page object numbers: " + pageList.toString());
-        // Loop through all pages.
-        ArrayList<PDFTextItem> textItemsFromAllPages = new ArrayList<>();
+        ArrayList<Integer> contentsList = new ArrayList<>();
         for (int i=0; i < pageList.size(); i++) {
             // Get the actual page object.
 //            Log.i("pdftesteri", "Page: " + i);
@@ -54,14 +339,9 @@ public class PDFTextExtractor {
             // multiple items.
             int contentsObjNum = pageObj.getDictionary().get("Contents").getArray().get(0).getIndirRefObjNum();
 //            Log.i("pdftesteri", "contents at object: " + contentsObjNum);
-            // Get the decoded contents.
-            ArrayList<PDFTextItem> textItemsFromThisPage = getTextItemsFromAPage(contentsObjNum, i);
-            textItemsFromAllPages.addAll(textItemsFromThisPage);
-
+            contentsList.add(contentsObjNum);
         }
-        Collections.sort(textItemsFromAllPages);
-
-        return textItemsFromAllPages;
+        return contentsList;
     }
 
     /**
@@ -105,79 +385,25 @@ public class PDFTextExtractor {
     }
 
     /**
-     * Decodes a stream object and returns the text snippets from it. This method takes a lot
-     * of shortcuts and should be cleaned in the later versions.
-	 * <p>
-	 * The main problem obviously is that the stream should be processed sequentially, and
-	 * there are a lot of useless operators (commands), which do not relate to extracting
-	 * text.
+     * Decodes a stream object and returns the text snippets from it. The decoded stream is read
+     * sequentially by a PDFContentInterpreter.
+     * <p>
+     * This method is package-private for the benchmarks.
      * @param streamObjNum The number of the stream object. Only single stream object per page is
      *                     supported at this time.
      * @param pageNum The page number of the page to be decoded. This is used in the ordering of the
      *                text snippets.
      * @return The text snippets from this page as a list of PDFTextItems.
      */
-    private ArrayList<PDFTextItem> getTextItemsFromAPage(int streamObjNum, int pageNum) {
-		ArrayList<String> stream = getStream(streamObjNum);
-        ArrayList<PDFTextItem> text = new ArrayList<>();
-
-		String[] parts = null;
-		for (int row=0; row < stream.size(); row++) {
-			if (stream.get(row).equals("BT")) {
-				PDFTextItem textItem = new PDFTextItem();
-				textItem.page = pageNum;
-
-				// get the dimensions of the preceeding bounding box by backing
-				// up the stream, which should be read sequentially according
-				// to the pdf specification
-				parts = stream.get(row-10).split(" ");
-				textItem.topLeftX = Float.valueOf(parts[0]);
-				textItem.bottomRightY = Float.valueOf(parts[1]) * -1;
-				parts = stream.get(row-8).split(" ");
-				textItem.bottomRightX = Float.valueOf(parts[0]);
-				textItem.topLeftY = Float.valueOf(parts[1]) * -1;
-				
-				// Get the positioning string. In real life this is a matrix,
-				// and it should be handled with the appropriate math, but
-				// this implementation just takes two numbers from a string.
-				// The Y-coordinate is flipped, because in pdf the origin of
-				// the coordinate system is in the lower left corner, and us
-				// humans in the western world at least read from top to bottom.
-				parts = stream.get(row+1).split(" ");
-				textItem.x = Float.valueOf(parts[4]);
-				textItem.y = Float.valueOf(parts[5]) * -1;
-				
-				// Read the string and remove parentheses
-				String stringStr = stream.get(row+2);
-				stringStr = stringStr.replace("\\(", "(");
-				stringStr = stringStr.replace("\\)", ")");
-				textItem.text = stringStr.substring(1, stringStr.length()-4);
-				text.add(textItem);
-			}
-		}
-        return text;
+    ArrayList<PDFTextItem> getTextItemsFromAPage(int streamObjNum, int pageNum) {
+        PDFByteArray decodedContents = pdf.getDecodedStream(streamObjNum);
+        long time = startPhase();
+        ArrayList<PDFTextItem> textItems = new PDFContentInterpreter().getTextItems(decodedContents, pageNum);
+        endPhase(PDFMetricsListener.PHASE_CONTENT_PARSE, time);
+        pdf.getMetricsListener().textItemsEmitted(textItems.size());
+        return textItems;
     }
 
-	/**
-	 * Returns a stream as an array of strings.
-	 * <p>
-	 * Every PDF file produced by HelB so far has had each operator on its own
-	 * line. 
-	 * @param streamObjNum 	The number of the stream object.
-	 * @return 				The array of strings.
-	 */
-	private ArrayList<String> getStream(int streamObjNum) {
-        // Get the decoded contents of the stream.
-        PDFObject streamObj = pdf.getObj(streamObjNum);
-        PDFByteArray decodedContents = streamObj.getDecodedStream();
-        // Split the byte array into strings.
-		ArrayList<String> strs = new ArrayList<String>();
-		while (decodedContents.getPosition() < decodedContents.getLength()) {
-			strs.add(decodedContents.getString(PDFByteArray.WHITESPACE, PDFByteArray.ENDOFLINE));
-		}
-		return strs;
-	}
-
 	/**
 	 * Writes the text items to a csv-file. If a file already exists, it will
 	 * be overwritten.
@@ -206,6 +432,24 @@ public class PDFTextExtractor {
 /*
  * CHANGELOG
  *
+ * version 2026-10-18
+ * - getText(Executor) and getTextParallel decode and parse the pages in
+ *   parallel, and join the sorted pages in page order.
+ * - getTextStore stores the text in a columnar PDFTextItemStore and sorts
+ *   it with a radix sort instead of Collections.sort.
+ * - getTextLines groups the text into lines by the surrounding boxes
+ *   without sorting all snippets as a whole.
+ * - getPageCount returns the number of pages.
+ * - A PDFMetricsListener can be set to get the timings and counters of
+ *   each phase.
+ * - Files can be opened and their text extracted asynchronously with
+ *   openFileAsync, getTextAsync and extractTextAsync.
+ * - getTextLinesOfPage extracts a single page, so that the pages can be
+ *   handled one at a time.
+ * - getTextItemsFromAPage reads the content stream sequentially with
+ *   PDFContentInterpreter instead of splitting it into lines and looking
+ *   at fixed rows around BT.
+ *
  * version 2019-03-21
  * - getTextItemFromAPage now reads the bounding box of a text. This was
  *   motivated by HelB changing the format of it's duty log files. When
@@ -0,0 +1,254 @@
+package pdftextextractor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Stores text snippets in columns of primitive arrays instead of a list of PDFTextItems. Each
+ * coordinate is a float in its own array, and the texts are stored one after another in a single
+ * char buffer, so a snippet takes a few dozen bytes and no objects of its own.
+ * <p>
+ * The snippets are sorted by an index radix sort on the page, the rounded y-coordinate and the
+ * rounded x-coordinate of the surrounding box. The values are rounded like in
+ * PDFTextItem.compareTo. Unlike compareTo, snippets whose y-coordinates round to the same value
+ * are always ordered by x, which is what grouping the snippets to lines by the surrounding box
+ * means. Snippets with equal keys keep their original order.
+ * <p>
+ * Snippets are read through the getXxx-methods with an index, or turned into PDFTextItems with
+ * get and toList where the old classes are needed.
+ */
+public class PDFTextItemStore {
+
+    /**
+     * Rounded coordinates are stored in 24 bits in the sort key, shifted by this much so that
+     * negative coordinates sort before positive ones.
+     */
+    private static final int COORDINATE_BIAS = 1 << 23;
+
+    private int size = 0;
+
+    private int[] page = new int[64];
+    private float[] topLeftX = new float[64];
+    private float[] topLeftY = new float[64];
+    private float[] bottomRightX = new float[64];
+    private float[] bottomRightY = new float[64];
+    private float[] x = new float[64];
+    private float[] y = new float[64];
+
+    private int[] textStart = new int[64];
+    private int[] textLength = new int[64];
+    private char[] textBuffer = new char[1024];
+    private int textBufferSize = 0;
+
+    /**
+     * Returns the number of snippets.
+     * @return The number of snippets.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a snippet.
+     * @param page The page number.
+     * @param topLeftX The x-coordinate of the top left corner of the surrounding box.
+     * @param topLeftY The y-coordinate of the top left corner of the surrounding box.
+     * @param bottomRightX The x-coordinate of the bottom right corner of the surrounding box.
+     * @param bottomRightY The y-coordinate of the bottom right corner of the surrounding box.
+     * @param x The x-coordinate of the text.
+     * @param y The y-coordinate of the text.
+     * @param text The text. Its characters are copied, so a reused buffer can be given.
+     */
+    public void add(int page, float topLeftX, float topLeftY, float bottomRightX,
+                    float bottomRightY, float x, float y, CharSequence text) {
+        ensureCapacity(size + 1);
+        this.page[size] = page;
+        this.topLeftX[size] = topLeftX;
+        this.topLeftY[size] = topLeftY;
+        this.bottomRightX[size] = bottomRightX;
+        this.bottomRightY[size] = bottomRightY;
+        this.x[size] = x;
+        this.y[size] = y;
+        int length = text.length();
+        if (textBufferSize + length > textBuffer.length) {
+            textBuffer = Arrays.copyOf(textBuffer, Math.max(textBuffer.length * 2, textBufferSize + length));
+        }
+        for (int i=0; i < length; i++) {
+            textBuffer[textBufferSize + i] = text.charAt(i);
+        }
+        textStart[size] = textBufferSize;
+        textLength[size] = length;
+        textBufferSize += length;
+        size++;
+    }
+
+    /**
+     * Adds a snippet from a PDFTextItem.
+     * @param item The text item.
+     */
+    public void add(PDFTextItem item) {
+        add(item.page, item.topLeftX, item.topLeftY, item.bottomRightX, item.bottomRightY,
+                item.x, item.y, item.text);
+    }
+
+    public int getPage(int i) { return page[i]; }
+    public float getTopLeftX(int i) { return topLeftX[i]; }
+    public float getTopLeftY(int i) { return topLeftY[i]; }
+    public float getBottomRightX(int i) { return bottomRightX[i]; }
+    public float getBottomRightY(int i) { return bottomRightY[i]; }
+    public float getX(int i) { return x[i]; }
+    public float getY(int i) { return y[i]; }
+
+    /**
+     * Returns the text of a snippet. A new string is created on every call.
+     * @param i The index of the snippet.
+     * @return The text.
+     */
+    public String getText(int i) {
+        return new String(textBuffer, textStart[i], textLength[i]);
+    }
+
+    /**
+     * Appends the text of a snippet to a StringBuilder without creating a string.
+     * @param i The index of the snippet.
+     * @param sb The StringBuilder.
+     */
+    public void appendText(int i, StringBuilder sb) {
+        sb.append(textBuffer, textStart[i], textLength[i]);
+    }
+
+    /**
+     * Returns a snippet as a PDFTextItem.
+     * @param i The index of the snippet.
+     * @return A new PDFTextItem.
+     */
+    public PDFTextItem get(int i) {
+        PDFTextItem item = new PDFTextItem();
+        item.page = page[i];
+        item.topLeftX = topLeftX[i];
+        item.topLeftY = topLeftY[i];
+        item.bottomRightX = bottomRightX[i];
+        item.bottomRightY = bottomRightY[i];
+        item.x = x[i];
+        item.y = y[i];
+        item.text = getText(i);
+        return item;
+    }
+
+    /**
+     * Returns all snippets as PDFTextItems in their current order.
+     * @return A list of new PDFTextItems.
+     */
+    public ArrayList<PDFTextItem> toList() {
+        ArrayList<PDFTextItem> items = new ArrayList<>(size);
+        for (int i=0; i < size; i++) {
+            items.add(get(i));
+        }
+        return items;
+    }
+
+    /**
+     * Sorts the snippets by page, then by the rounded y-coordinate of the top left corner of the
+     * surrounding box, and then by the rounded x-coordinate of it.
+     */
+    public void sort() {
+        long[] keys = new long[size];
+        for (int i=0; i < size; i++) {
+            keys[i] = ((long) page[i] << 48)
+                    | ((long) roundedCoordinate(topLeftY[i]) << 24)
+                    | roundedCoordinate(topLeftX[i]);
+        }
+        int[] order = radixSort(keys);
+        page = permute(page, order);
+        topLeftX = permute(topLeftX, order);
+        topLeftY = permute(topLeftY, order);
+        bottomRightX = permute(bottomRightX, order);
+        bottomRightY = permute(bottomRightY, order);
+        x = permute(x, order);
+        y = permute(y, order);
+        textStart = permute(textStart, order);
+        textLength = permute(textLength, order);
+    }
+
+    private static int roundedCoordinate(float value) {
+        int rounded = Math.round(value) + COORDINATE_BIAS;
+        return Math.max(0, Math.min(rounded, (1 << 24) - 1));
+    }
+
+    /**
+     * Sorts indexes by their keys with a least significant digit radix sort. A byte is sorted at
+     * a time, and bytes which are the same in all keys are skipped. The sort is stable.
+     * @param keys The keys. They are not changed.
+     * @return The indexes in the sorted order.
+     */
+    static int[] radixSort(long[] keys) {
+        int n = keys.length;
+        int[] order = new int[n];
+        for (int i=0; i < n; i++) {
+            order[i] = i;
+        }
+        int[] buffer = new int[n];
+        int[] counts = new int[257];
+        for (int shift=0; shift < 64; shift += 8) {
+            Arrays.fill(counts, 0);
+            for (int i=0; i < n; i++) {
+                counts[(int) ((keys[i] >>> shift) & 0xff) + 1]++;
+            }
+            // If all keys have the same byte, this pass wouldn't change anything.
+            boolean allSame = false;
+            for (int b=1; b <= 256; b++) {
+                if (counts[b] == n) {
+                    allSame = true;
+                    break;
+                }
+            }
+            if (allSame) {
+                continue;
+            }
+            for (int b=1; b <= 256; b++) {
+                counts[b] += counts[b-1];
+            }
+            for (int i=0; i < n; i++) {
+                int index = order[i];
+                buffer[counts[(int) ((keys[index] >>> shift) & 0xff)]++] = index;
+            }
+            int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        return order;
+    }
+
+    private int[] permute(int[] column, int[] order) {
+        int[] result = new int[Math.max(column.length, 1)];
+        for (int i=0; i < size; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    private float[] permute(float[] column, int[] order) {
+        float[] result = new float[Math.max(column.length, 1)];
+        for (int i=0; i < size; i++) {
+            result[i] = column[order[i]];
+        }
+        return result;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= page.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, page.length * 2);
+        page = Arrays.copyOf(page, newCapacity);
+        topLeftX = Arrays.copyOf(topLeftX, newCapacity);
+        topLeftY = Arrays.copyOf(topLeftY, newCapacity);
+        bottomRightX = Arrays.copyOf(bottomRightX, newCapacity);
+        bottomRightY = Arrays.copyOf(bottomRightY, newCapacity);
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        textStart = Arrays.copyOf(textStart, newCapacity);
+        textLength = Arrays.copyOf(textLength, newCapacity);
+    }
+
+}
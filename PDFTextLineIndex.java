@@ -0,0 +1,204 @@
+package pdftextextractor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Groups the text snippets of a PDFTextItemStore into lines. Since the format change of march
+ * 2019, the snippets meant to be on the same line have surrounding boxes with the same
+ * y-coordinate, so a line is made of the snippets with the same page and the same rounded
+ * topLeftY.
+ * <p>
+ * The index is built in a single pass over the snippets with a hash table from the line key to
+ * the line. Only the lines are sorted, by page and y-coordinate, and the snippets within a line
+ * are sorted by topLeftX. The store itself doesn't have to be sorted, and it isn't changed.
+ * <p>
+ * The lines are stored in compressed form: the snippet indexes of all lines are in one array,
+ * and each line knows where its snippets start in it.
+ */
+public class PDFTextLineIndex {
+
+    private final PDFTextItemStore store;
+
+    private int lineCount = 0;
+    private int[] linePage;
+    private int[] lineY;
+    private int[] lineStart;
+    private int[] items;
+
+    /**
+     * Builds the line index of a store.
+     * @param store The store.
+     */
+    public PDFTextLineIndex(PDFTextItemStore store) {
+        this.store = store;
+        build();
+    }
+
+    /**
+     * Builds the line index of a list of text items. The items are copied to a new store.
+     * @param textItems The text items.
+     * @return The line index.
+     */
+    public static PDFTextLineIndex of(ArrayList<PDFTextItem> textItems) {
+        PDFTextItemStore store = new PDFTextItemStore();
+        for (PDFTextItem item : textItems) {
+            store.add(item);
+        }
+        return new PDFTextLineIndex(store);
+    }
+
+    private void build() {
+        int n = store.size();
+        // Open addressing hash table from a line key to a line number.
+        int capacity = Integer.highestOneBit(Math.max(n, 8) * 2) * 2;
+        long[] tableKeys = new long[capacity];
+        int[] tableLines = new int[capacity];
+        Arrays.fill(tableLines, -1);
+        int mask = capacity - 1;
+
+        int[] lineOfItem = new int[n];
+        long[] lineKeys = new long[Math.max(n, 1)];
+        int[] lineSizes = new int[Math.max(n, 1)];
+        for (int i=0; i < n; i++) {
+            long key = lineKey(store.getPage(i), Math.round(store.getTopLeftY(i)));
+            int slot = (int) mix(key) & mask;
+            while (tableLines[slot] >= 0 && tableKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (tableLines[slot] < 0) {
+                tableKeys[slot] = key;
+                tableLines[slot] = lineCount;
+                lineKeys[lineCount] = key;
+                lineCount++;
+            }
+            int line = tableLines[slot];
+            lineOfItem[i] = line;
+            lineSizes[line]++;
+        }
+
+        // Order the lines by page and y-coordinate.
+        long[] keys = Arrays.copyOf(lineKeys, lineCount);
+        int[] lineOrder = PDFTextItemStore.radixSort(keys);
+        int[] rankOfLine = new int[lineCount];
+        linePage = new int[lineCount];
+        lineY = new int[lineCount];
+        lineStart = new int[lineCount + 1];
+        for (int rank=0; rank < lineCount; rank++) {
+            int line = lineOrder[rank];
+            rankOfLine[line] = rank;
+            linePage[rank] = (int) (keys[line] >>> 32);
+            lineY[rank] = (int) keys[line] - Integer.MIN_VALUE;
+            lineStart[rank + 1] = lineStart[rank] + lineSizes[line];
+        }
+
+        // Place the snippets to their lines in their original order, then sort each line by x.
+        items = new int[n];
+        int[] fill = Arrays.copyOf(lineStart, lineCount);
+        for (int i=0; i < n; i++) {
+            items[fill[rankOfLine[lineOfItem[i]]]++] = i;
+        }
+        for (int line=0; line < lineCount; line++) {
+            sortByX(lineStart[line], lineStart[line + 1]);
+        }
+    }
+
+    /**
+     * Makes a key, which sorts by page and then by y-coordinate, when compared as an unsigned
+     * number.
+     */
+    private static long lineKey(int page, int y) {
+        return ((long) page << 32) | ((y + Integer.MIN_VALUE) & 0xffffffffL);
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    /**
+     * Sorts a part of the item array by topLeftX. Lines are short, so insertion sort is used.
+     * It is stable, so snippets with the same x stay in stream order.
+     */
+    private void sortByX(int from, int to) {
+        for (int i=from+1; i < to; i++) {
+            int item = items[i];
+            float x = store.getTopLeftX(item);
+            int j = i - 1;
+            while (j >= from && store.getTopLeftX(items[j]) > x) {
+                items[j + 1] = items[j];
+                j--;
+            }
+            items[j + 1] = item;
+        }
+    }
+
+    /**
+     * Returns the store, whose snippets are indexed.
+     * @return The store.
+     */
+    public PDFTextItemStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the number of lines.
+     * @return The number of lines.
+     */
+    public int lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Returns the page of a line.
+     * @param line The line number.
+     * @return The page number.
+     */
+    public int getLinePage(int line) {
+        return linePage[line];
+    }
+
+    /**
+     * Returns the rounded topLeftY of the surrounding boxes on a line.
+     * @param line The line number.
+     * @return The y-coordinate.
+     */
+    public int getLineY(int line) {
+        return lineY[line];
+    }
+
+    /**
+     * Returns the number of snippets on a line.
+     * @param line The line number.
+     * @return The number of snippets.
+     */
+    public int lineSize(int line) {
+        return lineStart[line + 1] - lineStart[line];
+    }
+
+    /**
+     * Returns the index of a snippet in the store.
+     * @param line The line number.
+     * @param position The position of the snippet on the line, counted from the left.
+     * @return The index of the snippet in the store.
+     */
+    public int getItem(int line, int position) {
+        return items[lineStart[line] + position];
+    }
+
+    /**
+     * Returns the texts of the snippets on a line from left to right.
+     * @param line The line number.
+     * @return The texts.
+     */
+    public ArrayList<String> getLineTexts(int line) {
+        ArrayList<String> texts = new ArrayList<>(lineSize(line));
+        for (int i=lineStart[line]; i < lineStart[line + 1]; i++) {
+            texts.add(store.getText(items[i]));
+        }
+        return texts;
+    }
+
+}
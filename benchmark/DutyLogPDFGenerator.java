@@ -0,0 +1,195 @@
+package tuomaan.pdftest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Generates synthetic PDF files, which look like HelB's duty log files to PDFTextExtractor.
+ * The benchmarks use them, so no real duty logs of drivers are needed.
+ * <p>
+ * Each text snippet is written like HelB writes them since march 2019: the snippet is clipped
+ * by a surrounding box, every operator is on its own line, and the content streams are
+ * compressed with FlateDecode. The cross-reference table is a single classic table.
+ * <p>
+ * Each page has a single duty: a header line with the duty id and the date, and rows of duty
+ * items below it.
+ */
+public class DutyLogPDFGenerator {
+
+    private static final String[] DUTY_TYPES = {
+            "Linja-ajoa", "Ruokatauko", "Siirtoajo", "Tauko", "Valmistelu", "Lopputy\u00f6t" };
+
+    private static final String[] PLACES = {
+            "Rautatientori", "Kamppi", "It\u00e4keskus", "Ruskeasuon varikko", "Herttoniemi (M)",
+            "Pasila", "Munkkivuori", "Lauttasaari", "Kontula (M)", "Malmi" };
+
+    private static final String[] ROUTES = { "55", "56", "58", "65", "66", "550", "560", "23N" };
+
+    private final Random random;
+
+    private int rowsPerPage = 40;
+
+    public DutyLogPDFGenerator(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * Sets the number of duty item rows on each page.
+     * @param rowsPerPage The number of rows.
+     */
+    public void setRowsPerPage(int rowsPerPage) {
+        this.rowsPerPage = rowsPerPage;
+    }
+
+    /**
+     * Generates a file.
+     * @param pages The number of pages.
+     * @return The contents of the PDF file.
+     */
+    public byte[] generate(int pages) {
+        int fontObjNum = 3 + 2*pages;
+        ArrayList<byte[]> objects = new ArrayList<>();
+        objects.add(ascii("<<\n/Type /Catalog\n/Pages 2 0 R\n>>"));
+        StringBuilder kids = new StringBuilder();
+        for (int i=0; i < pages; i++) {
+            kids.append(' ').append(3 + 2*i).append(" 0 R");
+        }
+        objects.add(ascii("<<\n/Type /Pages\n/Kids [" + kids + " ]\n/Count " + pages + "\n>>"));
+        for (int i=0; i < pages; i++) {
+            objects.add(ascii("<<\n/Type /Page\n/Parent 2 0 R\n/MediaBox [ 0 0 595.28 841.89 ]\n"
+                    + "/Resources << /Font << /F1 " + fontObjNum + " 0 R >> >>\n"
+                    + "/Contents [ " + (4 + 2*i) + " 0 R ]\n>>"));
+            byte[] data = deflate(contentStream(i));
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            write(stream, ascii("<<\n/Length " + data.length + "\n/Filter /FlateDecode\n>>\nstream\n"));
+            write(stream, data);
+            write(stream, ascii("\nendstream"));
+            objects.add(stream.toByteArray());
+        }
+        objects.add(ascii("<<\n/Type /Font\n/Subtype /Type1\n/BaseFont /Helvetica\n"
+                + "/Encoding /WinAnsiEncoding\n>>"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, ascii("%PDF-1.4\n%\u00e2\u00e3\u00cf\u00d3\n"));
+        int[] positions = new int[objects.size() + 1];
+        for (int i=0; i < objects.size(); i++) {
+            positions[i+1] = out.size();
+            write(out, ascii((i+1) + " 0 obj\n"));
+            write(out, objects.get(i));
+            write(out, ascii("\nendobj\n"));
+        }
+        int xref = out.size();
+        StringBuilder sb = new StringBuilder();
+        sb.append("xref\n0 ").append(positions.length).append('\n');
+        sb.append("0000000000 65535 f \n");
+        for (int i=1; i < positions.length; i++) {
+            sb.append(String.format("%010d 00000 n \n", positions[i]));
+        }
+        sb.append("trailer\n<<\n/Size ").append(positions.length).append("\n/Root 1 0 R\n>>\n");
+        sb.append("startxref\n").append(xref).append("\n%%EOF\n");
+        write(out, ascii(sb.toString()));
+        return out.toByteArray();
+    }
+
+    /**
+     * Generates a file and writes it to disk.
+     * @param pages The number of pages.
+     * @param file The file to write.
+     */
+    public void generate(int pages, File file) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(generate(pages));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Creates the uncompressed content stream of a page.
+     */
+    byte[] contentStream(int page) {
+        StringBuilder sb = new StringBuilder();
+        // The header of the duty with the duty id and the date.
+        String[] header = {
+                "Vuoro:", Integer.toString(10000 + random.nextInt(90000)),
+                "P\u00e4iv\u00e4:", (1 + page % 28) + ".3.2019" };
+        float[] headerX = { 30, 70, 400, 440 };
+        for (int c=0; c < header.length; c++) {
+            textSnippet(sb, headerX[c], 820, headerX[c] + 60, 832,
+                    headerX[c] + 1.5f, 822.3f, header[c]);
+        }
+        int minutes = 4*60 + random.nextInt(180);
+        for (int row=0; row < rowsPerPage; row++) {
+            float y = 800 - row*18;
+            int start = minutes;
+            minutes += 5 + random.nextInt(90);
+            String dutyType = DUTY_TYPES[random.nextInt(DUTY_TYPES.length)];
+            boolean driving = dutyType.equals("Linja-ajoa");
+            String[] columns = {
+                    dutyType,
+                    hhmm(start),
+                    PLACES[random.nextInt(PLACES.length)],
+                    driving ? Integer.toString(1 + random.nextInt(2)) : "",
+                    hhmm(minutes),
+                    PLACES[random.nextInt(PLACES.length)],
+                    driving ? Integer.toString(1 + random.nextInt(99)) : "",
+                    driving ? ROUTES[random.nextInt(ROUTES.length)] : "" };
+            float[] columnX = { 30, 110, 150, 270, 290, 330, 450, 480 };
+            for (int c=0; c < columns.length; c++) {
+                if (!columns[c].isEmpty()) {
+                    // The text itself is drawn a little off the box, like in HelB's files.
+                    textSnippet(sb, columnX[c], y, columnX[c] + 70, y + 12,
+                            columnX[c] + 1.5f, y + 2.3f + random.nextFloat(), columns[c]);
+                }
+            }
+        }
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void textSnippet(StringBuilder sb, float x0, float y0, float x1, float y1,
+                                    float x, float y, String text) {
+        sb.append("q\n");
+        sb.append(x0).append(' ').append(y0).append(" m\n");
+        sb.append(x1).append(' ').append(y0).append(" l\n");
+        sb.append(x1).append(' ').append(y1).append(" l\n");
+        sb.append(x0).append(' ').append(y1).append(" l\n");
+        sb.append("h\nW\nn\n0 g\n/F1 8 Tf\n0 Tc\nBT\n");
+        sb.append("1 0 0 1 ").append(x).append(' ').append(y).append(" Tm\n");
+        sb.append('(').append(text.replace("(", "\\(").replace(")", "\\)")).append(") Tj\n");
+        sb.append("ET\nQ\n");
+    }
+
+    private static String hhmm(int minutes) {
+        return (minutes / 60) + ":" + (minutes % 60 < 10 ? "0" : "") + (minutes % 60);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+}
@@ -0,0 +1,119 @@
+package tuomaan.pdftest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the lowest layers of the PDF parsing stack: byte search, object parsing,
+ * reading the cross-reference table and inflating streams. The files are made by
+ * DutyLogPDFGenerator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PDFParsingBenchmark {
+
+    private static final PDFSearchPattern STARTXREF = new PDFSearchPattern("startxref");
+    private static final PDFSearchPattern ENDSTREAM = new PDFSearchPattern("endstream");
+
+    @Param({"1", "10", "100"})
+    public int pages;
+
+    private File file;
+    private PDFByteArray pdfArray;
+    private PDFObjectList uncachedList;
+    private PDFObject contentsObj;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("dutylog", ".pdf");
+        new DutyLogPDFGenerator(pages).generate(pages, file);
+        pdfArray = new PDFByteArray();
+        pdfArray.openFile(file);
+        // Without a cache every getObj parses the object again.
+        uncachedList = new PDFObjectList();
+        uncachedList.openFile(file);
+        uncachedList.setCacheSize(0);
+        // The content stream of the first page is object 4, see DutyLogPDFGenerator.
+        contentsObj = uncachedList.getObj(4);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    /** Finds startxref from the end of the file. */
+    @Benchmark
+    public int searchBackwards() {
+        return pdfArray.searchPatternBackwards(pdfArray.getLength(), STARTXREF);
+    }
+
+    /** Finds every endstream keyword from the start of the file. */
+    @Benchmark
+    public int searchForwards() {
+        int count = 0;
+        int pos = pdfArray.searchPattern(0, ENDSTREAM);
+        while (pos >= 0) {
+            count++;
+            pos = pdfArray.searchPattern(pos + 1, ENDSTREAM);
+        }
+        return count;
+    }
+
+    /** Skips over whitespace and regular characters, like the text extractor does. */
+    @Benchmark
+    public int searchChar() {
+        int pos = 0;
+        int count = 0;
+        while (pos < pdfArray.getLength()) {
+            pos = pdfArray.searchChar(pos, PDFByteArray.WHITESPACE);
+            pos = pdfArray.searchNotChar(pos, PDFByteArray.WHITESPACE);
+            count++;
+        }
+        return count;
+    }
+
+    /** Parses every object in the file. */
+    @Benchmark
+    public int parseObjects() {
+        int count = 0;
+        for (int i=1; i < uncachedList.numOfObjs(); i++) {
+            count += uncachedList.getObj(i).getObjType();
+        }
+        return count;
+    }
+
+    /** Opens a file, which reads startxref, the trailer and the cross-reference table. */
+    @Benchmark
+    public PDFObject readXRef() {
+        PDFObjectList list = new PDFObjectList();
+        list.openFile(file);
+        return list.getTrailerObj();
+    }
+
+    /** Inflates the content stream of a page. */
+    @Benchmark
+    public PDFByteArray inflate() {
+        return contentsObj.getDecodedStream();
+    }
+
+}
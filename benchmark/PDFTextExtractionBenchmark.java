@@ -0,0 +1,108 @@
+package pdftextextractor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the text extraction layer: parsing a content stream, sorting the text items
+ * and the whole way from a file to sorted text items. The files are made by
+ * DutyLogPDFGenerator.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PDFTextExtractionBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int pages;
+
+    private File file;
+    private PDFTextExtractor extractor;
+    private ArrayList<PDFTextItem> unsortedItems;
+    private PDFByteArray decodedContents;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("dutylog", ".pdf");
+        new DutyLogPDFGenerator(pages).generate(pages, file);
+        extractor = new PDFTextExtractor();
+        extractor.openFile(file);
+        // The content stream of the first page is object 4, see DutyLogPDFGenerator.
+        decodedContents = extractor.pdf.getObj(4).getDecodedStream();
+        unsortedItems = new ArrayList<>(extractor.getText());
+        Collections.shuffle(unsortedItems, new java.util.Random(pages));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    /** Parses the decoded content stream of the first page. */
+    @Benchmark
+    public ArrayList<PDFTextItem> parseContentStream() {
+        return new PDFContentInterpreter().getTextItems(decodedContents, 0);
+    }
+
+    /** Decodes and parses the content stream of the first page. */
+    @Benchmark
+    public ArrayList<PDFTextItem> decodeAndParseContentStream() {
+        return extractor.getTextItemsFromAPage(4, 0);
+    }
+
+    /** Sorts the text items of the whole file. */
+    @Benchmark
+    public ArrayList<PDFTextItem> sort() {
+        ArrayList<PDFTextItem> items = new ArrayList<>(unsortedItems);
+        Collections.sort(items);
+        return items;
+    }
+
+    /** Stores the text items of the whole file in columns and sorts them. */
+    @Benchmark
+    public PDFTextItemStore storeAndSort() {
+        PDFTextItemStore store = new PDFTextItemStore();
+        for (PDFTextItem item : unsortedItems) {
+            store.add(item);
+        }
+        store.sort();
+        return store;
+    }
+
+    /** Opens a file and extracts its text. */
+    @Benchmark
+    public ArrayList<PDFTextItem> fileToTextItems() {
+        PDFTextExtractor e = new PDFTextExtractor();
+        e.openFile(file);
+        return e.getText();
+    }
+
+    /** Opens a file and extracts its text to a PDFTextItemStore. */
+    @Benchmark
+    public PDFTextItemStore fileToTextItemStore() {
+        PDFTextExtractor e = new PDFTextExtractor();
+        e.openFile(file);
+        return e.getTextStore();
+    }
+
+}
@@ -0,0 +1,144 @@
+package tuomaan.pdftest;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests parsing and formatting times with HSLTime.
+ */
+public class HSLTimeTest {
+
+    private static int parseBytes(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        return HSLTime.parseMinutes(bytes, 0, bytes.length);
+    }
+
+    private static String format(int minutes) {
+        StringBuilder sb = new StringBuilder();
+        HSLTime.appendHhmm(minutes, sb);
+        return sb.toString();
+    }
+
+    private static String formatBytes(int minutes) {
+        byte[] bytes = new byte[20];
+        int end = HSLTime.formatHhmm(minutes, bytes, 3);
+        return new String(bytes, 3, end - 3, StandardCharsets.ISO_8859_1);
+    }
+
+    private static void assertNotATime(String text) {
+        try {
+            HSLTime.parseMinutes(text, 0, text.length());
+            fail("\"" + text + "\" was parsed from a character sequence.");
+        } catch (NumberFormatException e) {
+            // Expected.
+        }
+        try {
+            parseBytes(text);
+            fail("\"" + text + "\" was parsed from bytes.");
+        } catch (NumberFormatException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void parseMidnight() {
+        assertEquals(0, HSLTime.parseMinutes("0:00", 0, 4));
+        assertEquals(0, parseBytes("0:00"));
+        assertEquals(0, parseBytes("00:00"));
+    }
+
+    @Test
+    public void parseAfterMidnightOfTheSameDay() {
+        assertEquals(24 * 60 + 5, HSLTime.parseMinutes("24:05", 0, 5));
+        assertEquals(24 * 60 + 5, parseBytes("24:05"));
+        assertEquals(29 * 60 + 59, parseBytes("29:59"));
+    }
+
+    @Test
+    public void parseOneAndTwoDigitHours() {
+        assertEquals(5 * 60 + 7, parseBytes("5:07"));
+        assertEquals(5 * 60 + 7, parseBytes("05:07"));
+        assertEquals(15 * 60 + 30, HSLTime.parseMinutes("15:30", 0, 5));
+    }
+
+    @Test
+    public void parsePartOfText() {
+        String text = "klo 7:45-8:10";
+        assertEquals(7 * 60 + 45, HSLTime.parseMinutes(text, 4, 8));
+        assertEquals(8 * 60 + 10, HSLTime.parseMinutes(text, 9, 13));
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(7 * 60 + 45, HSLTime.parseMinutes(bytes, 4, 8));
+        assertEquals(8 * 60 + 10, HSLTime.parseMinutes(bytes, 9, 13));
+    }
+
+    @Test
+    public void rejectNonTimes() {
+        assertNotATime("");
+        assertNotATime("12");
+        assertNotATime("12:");
+        assertNotATime(":30");
+        assertNotATime("1a:00");
+        assertNotATime("10:3x");
+        assertNotATime(" 8:00");
+        assertNotATime("1:2:3");
+        assertNotATime("-1:00");
+    }
+
+    @Test
+    public void formatMidnight() {
+        assertEquals("0:00", format(0));
+        assertEquals("0:00", formatBytes(0));
+    }
+
+    @Test
+    public void formatAfterMidnightOfTheSameDay() {
+        assertEquals("24:05", format(24 * 60 + 5));
+        assertEquals("24:05", formatBytes(24 * 60 + 5));
+    }
+
+    @Test
+    public void formatPadsMinutesButNotHours() {
+        assertEquals("7:03", format(7 * 60 + 3));
+        assertEquals("7:03", formatBytes(7 * 60 + 3));
+        assertEquals("10:00", formatBytes(10 * 60));
+        assertEquals("123:09", formatBytes(123 * 60 + 9));
+    }
+
+    @Test
+    public void formatNegative() {
+        assertEquals("-0:05", format(-5));
+        assertEquals("-0:05", formatBytes(-5));
+        assertEquals("-1:30", formatBytes(-90));
+    }
+
+    @Test
+    public void formatReturnsEndOffset() {
+        byte[] bytes = new byte[12];
+        assertEquals(4, HSLTime.formatHhmm(9 * 60, bytes, 0));
+        assertEquals(10, HSLTime.formatHhmm(24 * 60 + 5, bytes, 5));
+    }
+
+    @Test
+    public void formatAndParseEveryMinute() {
+        for (int minutes=0; minutes < 30 * 60; minutes++) {
+            String text = format(minutes);
+            assertEquals(text, formatBytes(minutes));
+            assertEquals(minutes, HSLTime.parseMinutes(text, 0, text.length()));
+            assertEquals(minutes, parseBytes(text));
+        }
+    }
+
+    @Test
+    public void hhmmString() {
+        HSLTime time = new HSLTime();
+        time.setHhmmS("24:05");
+        assertEquals(24 * 60 + 5, time.getMinutes());
+        assertEquals("24:05", time.getHhmmS());
+        assertEquals("0:00", new HSLTime(0).getHhmmS());
+    }
+
+}
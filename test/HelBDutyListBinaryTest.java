@@ -0,0 +1,299 @@
+package tuomaan.pdftest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes duty lists with HelBDutyListBinaryWriter and reads them back with
+ * HelBDutyListBinaryReader.
+ */
+public class HelBDutyListBinaryTest {
+
+    private File file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = File.createTempFile("duties", ".bin");
+    }
+
+    @After
+    public void deleteFile() {
+        // A mapped file can't be deleted on every platform until the mapping is collected.
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static HelBDutyItem item(String type, int start, int end, String startPlace,
+                                     String endPlace, String routes, int block, int direction) {
+        HelBDutyItem item = new HelBDutyItem();
+        item.dutyType = type;
+        item.startMinutes = start;
+        item.endMinutes = end;
+        item.startPlace = startPlace;
+        item.endPlace = endPlace;
+        item.routes = routes;
+        item.block = block;
+        item.direction = direction;
+        return item;
+    }
+
+    private static HelBDutyList sampleList() {
+        HelBDutyList list = new HelBDutyList();
+        HelBDuty first = new HelBDuty();
+        first.dutyId = "1203";
+        first.date = new Date(1508284800000L);
+        first.duty.add(item("Linja-ajoa", 5 * 60 + 12, 7 * 60 + 3, "Rautatientori", "It\u00e4keskus",
+                "550, 560", 42, 1));
+        first.duty.add(item("Ruokatauko", 7 * 60 + 3, 7 * 60 + 33, "It\u00e4keskus", "", "", 0, 0));
+        // Times after midnight belong to the same duty and go past 24 hours.
+        first.duty.add(item("Linja-ajoa", 23 * 60 + 50, 24 * 60 + 5, "It\u00e4keskus",
+                "Rautatientori", "550", 42, 2));
+        list.add(first);
+        HelBDuty empty = new HelBDuty();
+        empty.dutyId = "vapaa";
+        empty.date = null;
+        list.add(empty);
+        HelBDuty second = new HelBDuty();
+        second.dutyId = null;
+        second.date = new Date(0);
+        second.duty.add(item(null, 0, 30 * 60, null, null, null, -1, -1));
+        list.add(second);
+        return list;
+    }
+
+    private void write(HelBDutyList list) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            new HelBDutyListBinaryWriter(out).write(list);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void assertSameItem(HelBDutyItem expected, HelBDutyItem actual) {
+        assertEquals(expected.dutyType, actual.dutyType);
+        assertEquals(expected.startMinutes, actual.startMinutes);
+        assertEquals(expected.endMinutes, actual.endMinutes);
+        assertEquals(expected.startPlace, actual.startPlace);
+        assertEquals(expected.endPlace, actual.endPlace);
+        assertEquals(expected.routes, actual.routes);
+        assertEquals(expected.block, actual.block);
+        assertEquals(expected.direction, actual.direction);
+    }
+
+    private static void assertSameList(HelBDutyList expected, HelBDutyList actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int d=0; d < expected.size(); d++) {
+            HelBDuty expectedDuty = expected.get(d);
+            HelBDuty actualDuty = actual.get(d);
+            assertEquals(expectedDuty.dutyId, actualDuty.dutyId);
+            assertEquals(expectedDuty.date, actualDuty.date);
+            assertEquals(expectedDuty.duty.size(), actualDuty.duty.size());
+            for (int i=0; i < expectedDuty.duty.size(); i++) {
+                assertSameItem(expectedDuty.duty.get(i), actualDuty.duty.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        HelBDutyList list = sampleList();
+        write(list);
+        HelBDutyListBinaryReader reader = new HelBDutyListBinaryReader(file);
+        assertEquals(3, reader.dutyCount());
+        assertEquals(4, reader.itemCount());
+        reader.validate();
+        assertSameList(list, reader.read());
+        assertSameList(list, reader.asList());
+    }
+
+    @Test
+    public void fieldsCanBeReadWithoutObjects() throws IOException {
+        write(sampleList());
+        HelBDutyListBinaryReader reader = new HelBDutyListBinaryReader(file);
+        assertEquals("1203", reader.getDutyId(0));
+        assertEquals(0, reader.getFirstItem(0));
+        assertEquals(3, reader.getItemCount(0));
+        assertEquals(3, reader.getFirstItem(1));
+        assertEquals(0, reader.getItemCount(1));
+        assertNull(reader.getDutyDate(1));
+        assertEquals(24 * 60 + 5, reader.getEndMinutes(2));
+        assertEquals(30 * 60, reader.getEndMinutes(3));
+        // Equal strings are stored once.
+        assertEquals(reader.getDutyTypeId(0), reader.getDutyTypeId(2));
+        assertEquals(reader.getEndPlaceId(0), reader.getStartPlaceId(1));
+        assertEquals(-1, reader.getRoutesId(3));
+        assertNull(reader.getRoutes(3));
+    }
+
+    @Test
+    public void emptyList() throws IOException {
+        write(new HelBDutyList());
+        HelBDutyListBinaryReader reader = new HelBDutyListBinaryReader(file);
+        assertEquals(0, reader.dutyCount());
+        assertEquals(0, reader.itemCount());
+        assertEquals(0, reader.read().size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void viewCantBeChanged() throws IOException {
+        write(sampleList());
+        new HelBDutyListBinaryReader(file).asList().add(new HelBDuty());
+    }
+
+    @Test
+    public void otherFilesAreRejected() throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write("%PDF-1.4\n%%EOF\n........................".getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        try {
+            new HelBDutyListBinaryReader(file);
+            fail("A PDF file was read as a duty list.");
+        } catch (IOException e) {
+            assertEquals("Not a duty list file.", e.getMessage());
+        }
+    }
+
+    /**
+     * Overwrites an int in the file.
+     */
+    private void putInt(long position, int value) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.seek(position);
+            raf.writeInt(value);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void assertBrokenHeader() {
+        try {
+            new HelBDutyListBinaryReader(file);
+            fail("A broken file was opened.");
+        } catch (IOException e) {
+            assertEquals("Broken duty list file.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        write(sampleList());
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() - 20);
+        } finally {
+            raf.close();
+        }
+        assertBrokenHeader();
+    }
+
+    @Test
+    public void negativeCountIsRejected() throws IOException {
+        write(sampleList());
+        // The number of strings.
+        putInt(16, -1);
+        assertBrokenHeader();
+    }
+
+    @Test
+    public void hugeCountIsRejected() throws IOException {
+        write(sampleList());
+        // The number of items.
+        putInt(12, Integer.MAX_VALUE);
+        assertBrokenHeader();
+    }
+
+    @Test
+    public void offsetInsideHeaderIsRejected() throws IOException {
+        write(sampleList());
+        // The offset of the duty index.
+        putInt(20, 4);
+        assertBrokenHeader();
+    }
+
+    @Test
+    public void brokenStringIdIsFound() throws IOException {
+        write(sampleList());
+        HelBDutyListBinaryReader reader = new HelBDutyListBinaryReader(file);
+        int itemsOffset = HelBDutyListBinaryWriter.HEADER_SIZE
+                + reader.dutyCount() * HelBDutyListBinaryWriter.DUTY_RECORD_SIZE;
+        // The duty type of the first item.
+        putInt(itemsOffset + 12, 1000);
+        reader = new HelBDutyListBinaryReader(file);
+        try {
+            reader.validate();
+            fail("A broken string id was accepted.");
+        } catch (IOException e) {
+            assertEquals("Broken duty list file.", e.getMessage());
+        }
+        try {
+            reader.getDutyType(0);
+            fail("A broken string id was read.");
+        } catch (UncheckedIOException e) {
+            assertEquals("Broken duty list file.", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void brokenItemRangeIsFound() throws IOException {
+        write(sampleList());
+        // The number of items of the first duty.
+        putInt(HelBDutyListBinaryWriter.HEADER_SIZE + 16, 100);
+        HelBDutyListBinaryReader reader = new HelBDutyListBinaryReader(file);
+        try {
+            reader.validate();
+            fail("A broken item range was accepted.");
+        } catch (IOException e) {
+            assertEquals("Broken duty list file.", e.getMessage());
+        }
+        try {
+            reader.getDuty(0);
+            fail("A broken item range was read.");
+        } catch (UncheckedIOException e) {
+            assertEquals("Broken duty list file.", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void brokenStringTableIsFound() throws IOException {
+        write(sampleList());
+        HelBDutyListBinaryReader reader = new HelBDutyListBinaryReader(file);
+        int stringTableOffset = HelBDutyListBinaryWriter.HEADER_SIZE
+                + reader.dutyCount() * HelBDutyListBinaryWriter.DUTY_RECORD_SIZE
+                + reader.itemCount() * HelBDutyListBinaryWriter.ITEM_RECORD_SIZE;
+        // The end of the first string is past the end of the file.
+        putInt(stringTableOffset, 1 << 20);
+        reader = new HelBDutyListBinaryReader(file);
+        try {
+            reader.validate();
+            fail("A broken string table was accepted.");
+        } catch (IOException e) {
+            assertEquals("Broken duty list file.", e.getMessage());
+        }
+        try {
+            reader.getString(0);
+            fail("A broken string was read.");
+        } catch (UncheckedIOException e) {
+            assertEquals("Broken duty list file.", e.getCause().getMessage());
+        }
+    }
+
+}
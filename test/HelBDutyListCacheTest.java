@@ -0,0 +1,209 @@
+package tuomaan.pdftest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests storing, finding and evicting duty lists in a HelBDutyListCache.
+ */
+public class HelBDutyListCacheTest {
+
+    private static final String SUFFIX = ".v" + HelBDutyListPDFReader.PARSER_VERSION
+            + "." + HelBDutyListBinaryWriter.VERSION + ".hdl";
+
+    private static final String A = hash('a');
+    private static final String B = hash('b');
+    private static final String C = hash('c');
+    private static final String SIZE = hash('d');
+
+    private File directory;
+
+    /**
+     * Returns a hash of the length of a SHA-256 hash.
+     */
+    private static String hash(char digit) {
+        char[] hash = new char[64];
+        Arrays.fill(hash, digit);
+        return new String(hash);
+    }
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("cache", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+        if (!directory.delete()) {
+            directory.deleteOnExit();
+        }
+    }
+
+    private static HelBDutyList list(String dutyId, int items) {
+        HelBDutyList list = new HelBDutyList();
+        HelBDuty duty = new HelBDuty();
+        duty.dutyId = dutyId;
+        duty.date = new Date(1508284800000L);
+        for (int i=0; i < items; i++) {
+            HelBDutyItem item = new HelBDutyItem();
+            item.dutyType = "Linja-ajoa";
+            item.startMinutes = 300 + 10*i;
+            item.endMinutes = 310 + 10*i;
+            item.startPlace = "Paikka " + i;
+            item.endPlace = "Paikka " + (i + 1);
+            item.block = i;
+            duty.duty.add(item);
+        }
+        list.add(duty);
+        return list;
+    }
+
+    private File file(String name, String contents) throws IOException {
+        File file = new File(directory, name);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void hashDependsOnContentsOnly() throws IOException {
+        String hash = HelBDutyListCache.hash(file("a.pdf", "same"));
+        assertEquals(64, hash.length());
+        assertEquals(hash, HelBDutyListCache.hash(file("b.pdf", "same")));
+        assertNotEquals(hash, HelBDutyListCache.hash(file("c.pdf", "other")));
+    }
+
+    @Test
+    public void missIsNull() {
+        assertNull(new HelBDutyListCache(directory, 1 << 20).get(hash('0')));
+    }
+
+    @Test
+    public void hitReturnsStoredList() throws IOException {
+        HelBDutyListCache cache = new HelBDutyListCache(directory, 1 << 20);
+        cache.put(A, list("1203", 3));
+        HelBDutyList cached = cache.get(A);
+        assertNotNull(cached);
+        assertEquals(1, cached.size());
+        assertEquals("1203", cached.get(0).dutyId);
+        assertEquals(3, cached.get(0).duty.size());
+        assertEquals("Paikka 3", cached.get(0).duty.get(2).endPlace);
+    }
+
+    @Test
+    public void hitSurvivesReopening() throws IOException {
+        new HelBDutyListCache(directory, 1 << 20).put(A, list("1203", 3));
+        HelBDutyList cached = new HelBDutyListCache(directory, 1 << 20).get(A);
+        assertNotNull(cached);
+        assertEquals("1203", cached.get(0).dutyId);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void hitCantBeChanged() throws IOException {
+        HelBDutyListCache cache = new HelBDutyListCache(directory, 1 << 20);
+        cache.put(A, list("1203", 3));
+        cache.get(A).clear();
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws IOException {
+        new HelBDutyListCache(directory, 1 << 20).put(SIZE, list("1", 10));
+        long fileSize = new File(directory, SIZE + SUFFIX).length();
+        new File(directory, SIZE + SUFFIX).delete();
+
+        // Room for two lists.
+        HelBDutyListCache cache = new HelBDutyListCache(directory, 2 * fileSize + fileSize / 2);
+        cache.put(A, list("1", 10));
+        cache.put(B, list("2", 10));
+        assertNotNull(cache.get(A));
+        cache.put(C, list("3", 10));
+        assertNotNull(cache.get(A));
+        assertNull(cache.get(B));
+        assertNotNull(cache.get(C));
+        assertFalse(new File(directory, B + SUFFIX).exists());
+    }
+
+    @Test
+    public void cacheIsShrunkWhenOpened() throws IOException {
+        HelBDutyListCache cache = new HelBDutyListCache(directory, 1 << 20);
+        cache.put(A, list("1", 10));
+        new File(directory, A + SUFFIX).setLastModified(System.currentTimeMillis() - 60000);
+        cache.put(B, list("2", 10));
+        long fileSize = new File(directory, B + SUFFIX).length();
+        cache = new HelBDutyListCache(directory, fileSize);
+        assertNull(cache.get(A));
+        assertNotNull(cache.get(B));
+    }
+
+    @Test
+    public void otherVersionsAreDeleted() throws IOException {
+        File oldVersion = file(A + ".v0.0.hdl", "old");
+        File current = file(B + SUFFIX, "");
+        new HelBDutyListCache(directory, 1 << 20);
+        assertFalse(oldVersion.exists());
+        assertTrue(current.exists());
+    }
+
+    @Test
+    public void onlyStaleTemporaryFilesAreDeleted() throws IOException {
+        File fresh = file("fresh.tmp", "being written");
+        File stale = file("stale.tmp", "left over");
+        stale.setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000);
+        new HelBDutyListCache(directory, 1 << 20);
+        assertTrue(fresh.exists());
+        assertFalse(stale.exists());
+    }
+
+    @Test
+    public void brokenFileIsForgotten() throws IOException {
+        HelBDutyListCache cache = new HelBDutyListCache(directory, 1 << 20);
+        cache.put(A, list("1203", 3));
+        File cached = new File(directory, A + SUFFIX);
+        // A file with a valid header, whose records have been overwritten.
+        RandomAccessFile raf = new RandomAccessFile(cached, "rw");
+        try {
+            raf.seek(HelBDutyListBinaryWriter.HEADER_SIZE);
+            for (long i=HelBDutyListBinaryWriter.HEADER_SIZE; i < raf.length(); i++) {
+                raf.write(0x7f);
+            }
+        } finally {
+            raf.close();
+        }
+        assertNull(cache.get(A));
+        assertFalse(cached.exists());
+        // The list can be stored again.
+        cache.put(A, list("1203", 3));
+        assertNotNull(cache.get(A));
+    }
+
+}
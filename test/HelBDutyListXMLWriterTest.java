@@ -0,0 +1,185 @@
+package tuomaan.pdftest;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.GregorianCalendar;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Writes duty lists with HelBDutyListXMLWriter and reads them back with an XML parser.
+ */
+public class HelBDutyListXMLWriterTest {
+
+    private static HelBDutyItem item(String type, int start, int end, String startPlace,
+                                     String endPlace, String routes, int block, int direction) {
+        HelBDutyItem item = new HelBDutyItem();
+        item.dutyType = type;
+        item.startMinutes = start;
+        item.endMinutes = end;
+        item.startPlace = startPlace;
+        item.endPlace = endPlace;
+        item.routes = routes;
+        item.block = block;
+        item.direction = direction;
+        return item;
+    }
+
+    private static HelBDutyList sampleList() {
+        HelBDutyList list = new HelBDutyList();
+        HelBDuty first = new HelBDuty();
+        first.dutyId = "1203";
+        first.date = new GregorianCalendar(2019, 2, 21).getTime();
+        first.duty.add(item("Linja-ajoa", 5 * 60 + 12, 7 * 60 + 3, "Rautatientori", "It\u00e4keskus",
+                "550, 560", 42, 1));
+        first.duty.add(item("Ruokatauko", 7 * 60 + 3, 7 * 60 + 33, "It\u00e4keskus", "", "", 0, 0));
+        // Times after midnight belong to the same duty and go past 24 hours.
+        first.duty.add(item("Linja-ajoa", 23 * 60 + 50, 24 * 60 + 5, "It\u00e4keskus",
+                "Rautatientori", "550", 42, 2));
+        list.add(first);
+        HelBDuty empty = new HelBDuty();
+        empty.dutyId = "vapaa";
+        empty.date = null;
+        list.add(empty);
+        HelBDuty second = new HelBDuty();
+        second.dutyId = null;
+        second.date = new GregorianCalendar(2020, 0, 5).getTime();
+        second.duty.add(item(null, 0, 30 * 60, null, null, null, -1, -1));
+        list.add(second);
+        return list;
+    }
+
+    private static byte[] write(HelBDutyList list) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new HelBDutyListXMLWriter(out).write(list);
+        return out.toByteArray();
+    }
+
+    private static Document parse(byte[] xml) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                .parse(new ByteArrayInputStream(xml));
+    }
+
+    private static Element child(Element parent, String name, int index) {
+        return (Element) parent.getElementsByTagName(name).item(index);
+    }
+
+    private static void assertItem(HelBDutyItem expected, String start, String end, Element actual) {
+        assertEquals(expected.dutyType == null ? "" : expected.dutyType, actual.getAttribute("type"));
+        assertEquals(start, actual.getAttribute("start"));
+        assertEquals(expected.startPlace == null ? "" : expected.startPlace, actual.getAttribute("startPlace"));
+        assertEquals(Integer.toString(expected.direction), actual.getAttribute("direction"));
+        assertEquals(end, actual.getAttribute("end"));
+        assertEquals(expected.endPlace == null ? "" : expected.endPlace, actual.getAttribute("endPlace"));
+        assertEquals(Integer.toString(expected.block), actual.getAttribute("block"));
+        assertEquals(expected.routes == null ? "" : expected.routes, actual.getAttribute("routes"));
+    }
+
+    @Test
+    public void roundTrip() throws Exception {
+        HelBDutyList list = sampleList();
+        Element root = parse(write(list)).getDocumentElement();
+        assertEquals("dutyList", root.getTagName());
+        NodeList duties = root.getElementsByTagName("duty");
+        assertEquals(3, duties.getLength());
+
+        Element first = (Element) duties.item(0);
+        assertEquals("1203", first.getAttribute("id"));
+        assertEquals("2019-03-21", first.getAttribute("date"));
+        assertEquals(3, first.getElementsByTagName("item").getLength());
+        HelBDuty duty = list.get(0);
+        assertItem(duty.duty.get(0), "5:12", "7:03", child(first, "item", 0));
+        assertItem(duty.duty.get(1), "7:03", "7:33", child(first, "item", 1));
+        assertItem(duty.duty.get(2), "23:50", "24:05", child(first, "item", 2));
+
+        // Missing ids and dates are left out.
+        Element empty = (Element) duties.item(1);
+        assertEquals("vapaa", empty.getAttribute("id"));
+        assertFalse(empty.hasAttribute("date"));
+        assertEquals(0, empty.getElementsByTagName("item").getLength());
+
+        Element second = (Element) duties.item(2);
+        assertFalse(second.hasAttribute("id"));
+        assertEquals("2020-01-05", second.getAttribute("date"));
+        assertItem(list.get(2).duty.get(0), "0:00", "30:00", child(second, "item", 0));
+    }
+
+    @Test
+    public void escapedTexts() throws Exception {
+        HelBDutyList list = new HelBDutyList();
+        HelBDuty duty = new HelBDuty();
+        duty.dutyId = "<\"&'>";
+        duty.date = null;
+        // Characters special in XML, one, two, three and four byte UTF-8.
+        duty.duty.add(item("a<b>&c\"d'e", 1, 2, "line\nbreak\tand\rreturn",
+                "\u00e5\u20ac\ud83d\ude8c", "caf\u00e9", Integer.MIN_VALUE, Integer.MAX_VALUE));
+        // Characters which can't be written are replaced.
+        duty.duty.add(item("bell\u0007", 1, 2, "lone\ud83d", "", "", 0, 0));
+        list.add(duty);
+
+        Element root = parse(write(list)).getDocumentElement();
+        Element dutyElement = child(root, "duty", 0);
+        assertEquals("<\"&'>", dutyElement.getAttribute("id"));
+        assertItem(duty.duty.get(0), "0:01", "0:02", child(dutyElement, "item", 0));
+        Element replaced = child(dutyElement, "item", 1);
+        assertEquals("bell?", replaced.getAttribute("type"));
+        assertEquals("lone?", replaced.getAttribute("startPlace"));
+    }
+
+    @Test
+    public void largeListOverManyBuffers() throws Exception {
+        HelBDutyList list = new HelBDutyList();
+        for (int d=0; d < 500; d++) {
+            HelBDuty duty = new HelBDuty();
+            duty.dutyId = Integer.toString(10000 + d);
+            duty.date = new GregorianCalendar(2019, 2, 1 + d % 28).getTime();
+            for (int i=0; i < 10; i++) {
+                duty.duty.add(item("Linja-ajoa", d + i, d + i + 59, "It\u00e4keskus", "Kamppi",
+                        "55, 56", d, i % 3));
+            }
+            list.add(duty);
+        }
+        byte[] xml = write(list);
+        NodeList duties = parse(xml).getDocumentElement().getElementsByTagName("duty");
+        assertEquals(500, duties.getLength());
+        for (int d=0; d < 500; d++) {
+            Element duty = (Element) duties.item(d);
+            assertEquals(Integer.toString(10000 + d), duty.getAttribute("id"));
+            NodeList items = duty.getElementsByTagName("item");
+            assertEquals(10, items.getLength());
+            for (int i=0; i < 10; i++) {
+                int start = d + i;
+                int end = start + 59;
+                assertItem(list.get(d).duty.get(i),
+                        start / 60 + ":" + String.format("%02d", start % 60),
+                        end / 60 + ":" + String.format("%02d", end % 60),
+                        (Element) items.item(i));
+            }
+        }
+
+        // A channel and writing duty by duty give the same bytes.
+        ByteArrayOutputStream channelOut = new ByteArrayOutputStream();
+        new HelBDutyListXMLWriter(Channels.newChannel(channelOut)).write(list);
+        assertArrayEquals(xml, channelOut.toByteArray());
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        HelBDutyListXMLWriter writer = new HelBDutyListXMLWriter(streamed);
+        writer.writeStart();
+        for (int d=0; d < list.size(); d++) {
+            writer.write(list.get(d));
+        }
+        writer.writeEnd();
+        assertArrayEquals(xml, streamed.toByteArray());
+    }
+
+}
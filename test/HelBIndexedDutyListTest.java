@@ -0,0 +1,227 @@
+package tuomaan.pdftest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the indexes of HelBIndexedDutyList, and checks the interval trees against going
+ * through all items.
+ */
+public class HelBIndexedDutyListTest {
+
+    private Date friday;
+    private Date saturday;
+    private HelBIndexedDutyList list;
+
+    private static Date date(int year, int month, int day, int hour) {
+        return new GregorianCalendar(year, month, day, hour, 0).getTime();
+    }
+
+    private static HelBDutyItem item(int start, int end, int block, String routes,
+                                     String startPlace, String endPlace) {
+        HelBDutyItem item = new HelBDutyItem();
+        item.dutyType = "Linja-ajoa";
+        item.startMinutes = start;
+        item.endMinutes = end;
+        item.block = block;
+        item.routes = routes;
+        item.startPlace = startPlace;
+        item.endPlace = endPlace;
+        return item;
+    }
+
+    private static HelBDuty duty(String dutyId, Date date, HelBDutyItem... items) {
+        HelBDuty duty = new HelBDuty();
+        duty.dutyId = dutyId;
+        duty.date = date;
+        for (HelBDutyItem item : items) {
+            duty.duty.add(item);
+        }
+        return duty;
+    }
+
+    @Before
+    public void createList() {
+        friday = date(2017, Calendar.DECEMBER, 8, 0);
+        saturday = date(2017, Calendar.DECEMBER, 9, 0);
+        list = new HelBIndexedDutyList();
+        list.add(duty("1203", friday,
+                item(600, 660, 42, "550, 560", "Rautatientori", "Herttoniemi"),
+                item(660, 690, 0, "", "Herttoniemi", "Herttoniemi"),
+                item(690, 750, 42, "550", "Herttoniemi", "Rautatientori")));
+        list.add(duty("1204", friday,
+                item(590, 610, 17, "23,24", "Kamppi", "Munkkivuori")));
+        list.add(duty("1203", saturday,
+                item(600, 660, 42, "550", "Rautatientori", "Herttoniemi")));
+    }
+
+    private static int starts(List<HelBDutyItem> items, int index) {
+        return items.get(index).startMinutes;
+    }
+
+    @Test
+    public void itemStartingAtTimeIsGoingOn() {
+        ArrayList<HelBDutyItem> items = list.getItemsAt(friday, 600);
+        assertEquals(2, items.size());
+        assertEquals(590, starts(items, 0));
+        assertEquals(600, starts(items, 1));
+    }
+
+    @Test
+    public void itemEndingAtTimeIsOver() {
+        ArrayList<HelBDutyItem> items = list.getItemsAt(friday, 660);
+        assertEquals(1, items.size());
+        assertEquals(660, starts(items, 0));
+        assertEquals(0, list.getItemsAt(friday, 750).size());
+        assertEquals(1, list.getItemsAt(friday, 749).size());
+    }
+
+    @Test
+    public void timeBeforeAllItems() {
+        assertEquals(0, list.getItemsAt(friday, 589).size());
+        assertEquals(0, list.getItemsAt(0).size());
+    }
+
+    @Test
+    public void overlappingRangeBoundaries() {
+        // The end of the range is exclusive, and so is the end of an item.
+        assertEquals(0, list.getItemsOverlapping(friday, 500, 590).size());
+        assertEquals(1, list.getItemsOverlapping(friday, 500, 591).size());
+        assertEquals(2, list.getItemsOverlapping(friday, 610, 661).size());
+        assertEquals(0, list.getItemsOverlapping(friday, 750, 800).size());
+        assertEquals(4, list.getItemsOverlapping(friday, 0, 24 * 60).size());
+    }
+
+    @Test
+    public void queriesOnAnyDay() {
+        assertEquals(3, list.getItemsAt(600).size());
+        assertEquals(5, list.getItemsOverlapping(0, 24 * 60).size());
+    }
+
+    @Test
+    public void dayWithoutDuties() {
+        Date sunday = date(2017, Calendar.DECEMBER, 10, 12);
+        assertEquals(0, list.getItemsAt(sunday, 600).size());
+        assertEquals(0, list.getItemsOverlapping(sunday, 0, 24 * 60).size());
+        assertEquals(0, list.getDutiesOn(sunday).size());
+    }
+
+    @Test
+    public void anyMomentOfDayFindsDay() {
+        assertEquals(2, list.getDutiesOn(date(2017, Calendar.DECEMBER, 8, 23)).size());
+        assertEquals(1, list.getItemsAt(date(2017, Calendar.DECEMBER, 9, 15), 600).size());
+    }
+
+    @Test
+    public void treeIsRebuiltAfterAdd() {
+        assertEquals(0, list.getItemsAt(saturday, 700).size());
+        assertEquals(1, list.getItemsAt(700).size());
+        list.add(duty("1205", saturday, item(650, 720, 5, "", "Kamppi", "Kamppi")));
+        assertEquals(1, list.getItemsAt(saturday, 700).size());
+        assertEquals(2, list.getItemsAt(700).size());
+        // Adding to one day doesn't change another.
+        assertEquals(1, list.getItemsAt(friday, 700).size());
+    }
+
+    @Test
+    public void blockAtMoment() {
+        ArrayList<HelBDutyItem> items = list.getItemsOfBlockAt(friday, 42, 700);
+        assertEquals(1, items.size());
+        assertEquals(690, starts(items, 0));
+        assertEquals("1203", list.getDutyOf(items.get(0)).dutyId);
+        assertSame(friday, list.getDutyOf(items.get(0)).date);
+        assertEquals(0, list.getItemsOfBlockAt(friday, 42, 670).size());
+        assertEquals(0, list.getItemsOfBlockAt(friday, 17, 610).size());
+        assertEquals(1, list.getItemsOfBlockAt(saturday, 42, 600).size());
+    }
+
+    @Test
+    public void dutiesByIdAndDay() {
+        assertEquals(2, list.getDutiesById("1203").size());
+        assertEquals(0, list.getDutiesById("9999").size());
+        assertEquals(2, list.getDutiesOn(friday).size());
+        assertEquals(1, list.getDutiesOn(saturday).size());
+    }
+
+    @Test
+    public void itemsByBlockAndRoute() {
+        assertEquals(3, list.getItemsOfBlock(42).size());
+        assertEquals(3, list.getItemsOfRoute("550").size());
+        assertEquals(1, list.getItemsOfRoute("560").size());
+        // Routes separated by a plain comma are split too.
+        assertEquals(1, list.getItemsOfRoute("24").size());
+    }
+
+    @Test
+    public void itemsByPlace() {
+        List<HelBDutyItem> items = list.getItemsAtPlace("Herttoniemi");
+        // The break starts and ends at the same place, and it is listed once.
+        assertEquals(4, items.size());
+        assertEquals(600, starts(items, 0));
+        assertEquals(660, starts(items, 1));
+        assertEquals(1, list.getItemsAtPlace("Munkkivuori").size());
+        assertEquals(0, list.getItemsAtPlace("").size());
+        assertEquals(0, list.getItemsAtPlace("Nowhere").size());
+    }
+
+    @Test
+    public void clearEmptiesIndexes() {
+        list.getItemsAt(600);
+        list.clear();
+        assertEquals(0, list.size());
+        assertEquals(0, list.getItemsAt(600).size());
+        assertEquals(0, list.getItemsAt(friday, 600).size());
+        assertEquals(0, list.getItemsOfBlock(42).size());
+        assertEquals(0, list.getItemsAtPlace("Kamppi").size());
+        assertEquals(0, list.getDutiesById("1203").size());
+    }
+
+    @Test
+    public void treeMatchesGoingThroughAllItems() {
+        Random random = new Random(19);
+        HelBIndexedDutyList randomList = new HelBIndexedDutyList();
+        ArrayList<HelBDutyItem> all = new ArrayList<>();
+        for (int d=0; d < 50; d++) {
+            HelBDuty duty = duty("d" + d, friday);
+            for (int i=0; i < 1 + random.nextInt(8); i++) {
+                int start = random.nextInt(30 * 60);
+                HelBDutyItem item = item(start, start + random.nextInt(120), random.nextInt(5), "",
+                        "A", "B");
+                duty.duty.add(item);
+                all.add(item);
+            }
+            randomList.add(duty);
+            if (d % 10 == 0) {
+                // Queries between adds make the tree be built many times.
+                randomList.getItemsAt(friday, 600);
+            }
+        }
+        for (int from=0; from < 30 * 60; from += 7) {
+            int to = from + random.nextInt(60);
+            ArrayList<HelBDutyItem> expected = new ArrayList<>();
+            for (HelBDutyItem item : all) {
+                if (item.startMinutes < to && item.endMinutes > from) {
+                    expected.add(item);
+                }
+            }
+            ArrayList<HelBDutyItem> found = randomList.getItemsOverlapping(friday, from, to);
+            assertEquals(expected.size(), found.size());
+            assertTrue(found.containsAll(expected));
+            for (int i=1; i < found.size(); i++) {
+                assertTrue(starts(found, i - 1) <= starts(found, i));
+            }
+        }
+    }
+
+}
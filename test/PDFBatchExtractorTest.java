@@ -0,0 +1,238 @@
+package pdftextextractor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that PDFBatchExtractor gives a result for every file in the right order, keeps an error
+ * in the result of its own file and assembles duties when asked to.
+ */
+public class PDFBatchExtractorTest {
+
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("batch").toFile();
+    }
+
+    @After
+    public void deleteDirectory() {
+        deleteRecursively(directory);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static String clipped(float x, float y, String text) {
+        return "q " + x + " " + y + " 40 12 re W n BT 1 0 0 1 " + x + " " + y + " Tm (" + text
+                + ") Tj ET Q\n";
+    }
+
+    private File textFile(String name, String text) throws IOException {
+        return save(name, PDFTestFile.textDocument(clipped(50, 700, text)).toByteArray());
+    }
+
+    private File save(String name, byte[] bytes) throws IOException {
+        File file = new File(directory, name);
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    private static void assertText(String text, PDFBatchExtractor.Result result) {
+        assertTrue(result.succeeded());
+        assertNull(result.error);
+        assertNull(result.duties);
+        assertEquals(1, result.items.size());
+        assertEquals(text, result.items.get(0).text);
+    }
+
+    @Test
+    public void resultsInTheOrderOfTheFiles() throws IOException {
+        ArrayList<File> files = new ArrayList<>();
+        for (int i=0; i < 20; i++) {
+            files.add(textFile("file" + i + ".pdf", "text" + i));
+        }
+        ArrayList<PDFBatchExtractor.Result> results = new PDFBatchExtractor(3).extract(files);
+        assertEquals(files.size(), results.size());
+        for (int i=0; i < files.size(); i++) {
+            assertSame(files.get(i), results.get(i).file);
+            assertText("text" + i, results.get(i));
+        }
+    }
+
+    @Test
+    public void errorsStayInTheirOwnFiles() throws IOException {
+        File first = textFile("first.pdf", "first");
+        File missing = new File(directory, "missing.pdf");
+        File garbage = save("garbage.pdf", PDFTestFile.ascii("This is not a PDF file at all."));
+        File last = textFile("last.pdf", "last");
+        ArrayList<PDFBatchExtractor.Result> results =
+                new PDFBatchExtractor(2).extract(Arrays.asList(first, missing, garbage, last));
+        assertText("first", results.get(0));
+        assertFalse(results.get(1).succeeded());
+        assertTrue(results.get(1).error instanceof UncheckedIOException);
+        assertTrue(results.get(1).error.getMessage().startsWith("Can't open "));
+        assertNull(results.get(1).items);
+        assertFalse(results.get(2).succeeded());
+        assertNull(results.get(2).items);
+        assertText("last", results.get(3));
+    }
+
+    @Test
+    public void consumerGetsAllResults() throws IOException {
+        ArrayList<File> files = new ArrayList<>();
+        for (int i=0; i < 12; i++) {
+            files.add(textFile("file" + i + ".pdf", "text" + i));
+        }
+        files.add(new File(directory, "missing.pdf"));
+        final List<PDFBatchExtractor.Result> results =
+                Collections.synchronizedList(new ArrayList<PDFBatchExtractor.Result>());
+        new PDFBatchExtractor(4).extract(files, results::add);
+        assertEquals(files.size(), results.size());
+        int failed = 0;
+        for (PDFBatchExtractor.Result result : results) {
+            int i = files.indexOf(result.file);
+            if (i == files.size() - 1) {
+                failed++;
+                assertFalse(result.succeeded());
+            } else {
+                assertText("text" + i, result);
+            }
+        }
+        assertEquals(1, failed);
+    }
+
+    @Test
+    public void concurrencyLimited() throws IOException {
+        ArrayList<File> files = new ArrayList<>();
+        for (int i=0; i < 16; i++) {
+            files.add(textFile("file" + i + ".pdf", "text" + i));
+        }
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger mostRunning = new AtomicInteger();
+        // A new thread for every task, so only the extractor limits the concurrency.
+        PDFBatchExtractor extractor = new PDFBatchExtractor(command -> new Thread(command).start(), 2);
+        // A file is in progress from reading it until its text has been extracted.
+        extractor.setMetricsListener(new PDFMetricsListener() {
+            @Override
+            public void bytesRead(long bytes) {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            }
+
+            @Override
+            public void fileExtracted(long nanos, long allocatedBytes) {
+                running.decrementAndGet();
+            }
+        });
+        ArrayList<PDFBatchExtractor.Result> results = extractor.extract(files);
+        assertEquals(0, running.get());
+        assertTrue(mostRunning.get() >= 1 && mostRunning.get() <= 2);
+        for (int i=0; i < files.size(); i++) {
+            assertText("text" + i, results.get(i));
+        }
+    }
+
+    @Test
+    public void refusedTasks() throws IOException {
+        File file = textFile("file.pdf", "text");
+        PDFBatchExtractor extractor = new PDFBatchExtractor(command -> {
+            throw new RejectedExecutionException("Shut down");
+        }, 1);
+        ArrayList<PDFBatchExtractor.Result> results = extractor.extract(Arrays.asList(file, file));
+        assertEquals(2, results.size());
+        for (PDFBatchExtractor.Result result : results) {
+            assertTrue(result.error instanceof RejectedExecutionException);
+            assertNull(result.items);
+        }
+    }
+
+    @Test
+    public void onlyPDFFilesOfTheDirectory() throws IOException {
+        textFile("b.PDF", "b");
+        textFile("a.pdf", "a");
+        save("notes.txt", PDFTestFile.ascii("Not a PDF"));
+        File subdirectory = new File(directory, "sub.pdf");
+        assertTrue(subdirectory.mkdir());
+        ArrayList<PDFBatchExtractor.Result> results = new PDFBatchExtractor(2).extractDirectory(directory);
+        assertEquals(2, results.size());
+        assertText("a", results.get(0));
+        assertText("b", results.get(1));
+        assertEquals(0, new PDFBatchExtractor().extractDirectory(new File(directory, "none")).size());
+    }
+
+    @Test
+    public void dutyAssembly() throws IOException {
+        String page = clipped(50, 700, "Vuoro:") + clipped(100, 700, "1234")
+                + clipped(300, 700, "18.10.2026")
+                + clipped(50, 650, "Ajo") + clipped(100, 650, "6:15")
+                + clipped(150, 650, "Herttoniemi") + clipped(200, 650, "1")
+                + clipped(250, 650, "7:02") + clipped(300, 650, "Rautatientori")
+                + clipped(350, 650, "42") + clipped(400, 650, "55");
+        File dutyFile = save("duty.pdf", PDFTestFile.textDocument(page, clipped(50, 700, "empty")).toByteArray());
+        File textFile = textFile("text.pdf", "no duties");
+        HelBStringDictionary dictionary = new HelBStringDictionary();
+        PDFBatchExtractor extractor = new PDFBatchExtractor(2);
+        extractor.setDutyAssembly(dictionary);
+        ArrayList<PDFBatchExtractor.Result> results = extractor.extract(Arrays.asList(dutyFile, textFile));
+
+        PDFBatchExtractor.Result result = results.get(0);
+        assertTrue(result.succeeded());
+        assertNull(result.items);
+        // The second page has no duty.
+        assertEquals(1, result.duties.size());
+        HelBDuty duty = result.duties.get(0);
+        assertEquals("1234", duty.dutyId);
+        assertEquals(1, duty.duty.size());
+        HelBDutyItem item = duty.duty.get(0);
+        assertEquals("Ajo", item.dutyType);
+        assertEquals(6*60 + 15, item.startMinutes);
+        assertEquals("Herttoniemi", item.startPlace);
+        assertEquals(1, item.direction);
+        assertEquals(7*60 + 2, item.endMinutes);
+        assertEquals("Rautatientori", item.endPlace);
+        assertEquals(42, item.block);
+        assertEquals("55", item.routes);
+        assertSame(dictionary.intern("Herttoniemi"), item.startPlace);
+
+        assertTrue(results.get(1).succeeded());
+        assertEquals(0, results.get(1).duties.size());
+    }
+
+    @Test
+    public void concurrencyMustBePositive() {
+        try {
+            new PDFBatchExtractor(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+}
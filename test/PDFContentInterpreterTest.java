@@ -0,0 +1,175 @@
+package pdftextextractor;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the text items PDFContentInterpreter finds in content streams: the surrounding boxes
+ * from clipping paths, the text positions and the strings.
+ */
+public class PDFContentInterpreterTest {
+
+    private static ArrayList<PDFTextItem> interpret(String contents) {
+        PDFByteArray pdfArray = new PDFByteArray();
+        pdfArray.setBytes(contents.getBytes(StandardCharsets.ISO_8859_1));
+        return new PDFContentInterpreter().getTextItems(pdfArray, 3);
+    }
+
+    private static void assertBox(PDFTextItem item, float topLeftX, float topLeftY,
+                                  float bottomRightX, float bottomRightY) {
+        assertEquals(topLeftX, item.topLeftX, 0);
+        assertEquals(topLeftY, item.topLeftY, 0);
+        assertEquals(bottomRightX, item.bottomRightX, 0);
+        assertEquals(bottomRightY, item.bottomRightY, 0);
+    }
+
+    private static void assertPosition(PDFTextItem item, float x, float y) {
+        assertEquals(x, item.x, 0);
+        assertEquals(y, item.y, 0);
+    }
+
+    @Test
+    public void clippedText() {
+        ArrayList<PDFTextItem> items = interpret(
+                "q 50 700 40 12 re W n BT /F1 9 Tf 1 0 0 1 52 702 Tm (Linja) Tj ET Q");
+        assertEquals(1, items.size());
+        PDFTextItem item = items.get(0);
+        assertEquals("Linja", item.text);
+        assertEquals(3, item.page);
+        // The y-coordinates are flipped, so the top of the box is the largest y.
+        assertBox(item, 50, -712, 90, -700);
+        assertPosition(item, 52, -702);
+    }
+
+    @Test
+    public void clippingPathOnSeveralLines() {
+        // HelB doesn't always write the operators on lines of their own, and the path may be
+        // made of lines and curves instead of a rectangle.
+        ArrayList<PDFTextItem> items = interpret(
+                "q\n10 20 m\n30 20 l 30\n25 35 40 20 45 c\nh W*\nn\n"
+                + "BT\n1 0 0 1\n12 22 Tm\n(Kaari)\nTj\nET\nQ");
+        assertEquals(1, items.size());
+        assertBox(items.get(0), 10, -45, 35, -20);
+    }
+
+    @Test
+    public void clipOnlyFromMarkedPaths() {
+        // A filled rectangle is not a clipping path, and a clipping path takes effect only when
+        // the path ends.
+        ArrayList<PDFTextItem> items = interpret(
+                "0 0 500 500 re f "
+                + "BT 1 0 0 1 5 6 Tm (A) Tj ET "
+                + "q 100 100 20 10 re W n BT 1 0 0 1 101 101 Tm (B) Tj ET Q");
+        assertEquals(2, items.size());
+        assertBox(items.get(0), 5, -6, 5, -6);
+        assertBox(items.get(1), 100, -110, 120, -100);
+    }
+
+    @Test
+    public void saveAndRestore() {
+        ArrayList<PDFTextItem> items = interpret(
+                "q 0 0 100 50 re W n "
+                + "q 10 10 20 20 re W n BT 1 0 0 1 11 11 Tm (inner) Tj ET Q "
+                + "BT 1 0 0 1 1 1 Tm (outer) Tj ET Q "
+                + "BT 1 0 0 1 7 8 Tm (none) Tj ET "
+                // An extra Q must not break anything.
+                + "Q BT 1 0 0 1 9 9 Tm (after) Tj ET");
+        assertEquals(4, items.size());
+        assertEquals("inner", items.get(0).text);
+        assertBox(items.get(0), 10, -30, 30, -10);
+        assertEquals("outer", items.get(1).text);
+        assertBox(items.get(1), 0, -50, 100, 0);
+        assertEquals("none", items.get(2).text);
+        assertBox(items.get(2), 7, -8, 7, -8);
+        assertBox(items.get(3), 9, -9, 9, -9);
+    }
+
+    @Test
+    public void textPositioning() {
+        ArrayList<PDFTextItem> items = interpret(
+                "BT 2 0 0 2 100 500 Tm (Tm) Tj "
+                + "10 -20 Td (Td) Tj "
+                + "5 -14 TD (TD) Tj "
+                + "T* (T*) Tj "
+                + "12 TL T* (TL) Tj "
+                + "(quote) ' "
+                + "1 2 (dquote) \" ET "
+                + "BT (BT) Tj ET");
+        assertEquals(8, items.size());
+        assertPosition(items.get(0), 100, -500);
+        assertPosition(items.get(1), 110, -480);
+        // TD sets the leading to the negated y offset, which T* then uses.
+        assertPosition(items.get(2), 115, -466);
+        assertPosition(items.get(3), 115, -452);
+        assertPosition(items.get(4), 115, -440);
+        assertEquals("quote", items.get(5).text);
+        assertPosition(items.get(5), 115, -428);
+        assertEquals("dquote", items.get(6).text);
+        assertPosition(items.get(6), 115, -416);
+        // BT starts from the origin again.
+        assertPosition(items.get(7), 0, 0);
+    }
+
+    @Test
+    public void textArrays() {
+        ArrayList<PDFTextItem> items = interpret(
+                "BT 1 0 0 1 10 10 Tm [(Hel) -20 (lo) 120.5 ( ) (world)] TJ "
+                + "[] TJ "
+                + "[<4142> -5 (C)] TJ ET");
+        // An array without strings shows nothing.
+        assertEquals(2, items.size());
+        assertEquals("Hello world", items.get(0).text);
+        assertEquals("ABC", items.get(1).text);
+        assertPosition(items.get(0), 10, -10);
+    }
+
+    @Test
+    public void escapedStrings() {
+        ArrayList<PDFTextItem> items = interpret(
+                "BT (a\\(b\\)c\\\\d) Tj (x(y)z) Tj (\\101\\60\\7a) Tj (tab\\tnl\\n) Tj "
+                + "(line\\\ncontinues) Tj (\\q) Tj ET");
+        assertEquals(6, items.size());
+        assertEquals("a(b)c\\d", items.get(0).text);
+        assertEquals("x(y)z", items.get(1).text);
+        assertEquals("A0\u0007a", items.get(2).text);
+        assertEquals("tab\tnl\n", items.get(3).text);
+        assertEquals("linecontinues", items.get(4).text);
+        assertEquals("q", items.get(5).text);
+    }
+
+    @Test
+    public void inlineImagesSkipped() {
+        // The image data has bytes that would be strings and operators if they were read as
+        // tokens.
+        ArrayList<PDFTextItem> items = interpret(
+                "q 0 0 10 10 re W n BI /W 4 /H 1 /BPC 8 /CS /G ID (x) Tj ( \nEI Q "
+                + "BT 1 0 0 1 3 4 Tm (after) Tj ET");
+        assertEquals(1, items.size());
+        assertEquals("after", items.get(0).text);
+        // Q after the image restored the clip.
+        assertBox(items.get(0), 3, -4, 3, -4);
+    }
+
+    @Test
+    public void unterminatedInlineImage() {
+        ArrayList<PDFTextItem> items = interpret(
+                "BT (before) Tj ET BI /W 4 /H 1 ID (x) Tj");
+        assertEquals(1, items.size());
+        assertEquals("before", items.get(0).text);
+    }
+
+    @Test
+    public void operatorsWithoutOperands() {
+        // Missing operands are taken as 0, and extra ones are ignored.
+        ArrayList<PDFTextItem> items = interpret(
+                "BT Tj 7 Td (a) Tj 1 2 3 4 5 6 7 8 Tm (b) Tj ET");
+        assertEquals(2, items.size());
+        assertPosition(items.get(0), 0, -7);
+        assertPosition(items.get(1), 7, -8);
+    }
+
+}
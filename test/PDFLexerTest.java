@@ -0,0 +1,156 @@
+package tuomaan.pdftest;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the token sequences produced by PDFLexer.
+ */
+public class PDFLexerTest {
+
+    private static PDFLexer lexer(String text) {
+        PDFByteArray pdfArray = new PDFByteArray();
+        pdfArray.setBytes(text.getBytes(StandardCharsets.ISO_8859_1));
+        return new PDFLexer(pdfArray, 0);
+    }
+
+    @Test
+    public void numbers() {
+        PDFLexer lexer = lexer("42 -17 +3 3.25 -.5 4. 0");
+        assertEquals(PDFLexer.TT_INTEGER, lexer.next());
+        assertEquals(42, lexer.getInteger());
+        assertEquals(PDFLexer.TT_INTEGER, lexer.next());
+        assertEquals(-17, lexer.getInteger());
+        assertEquals(PDFLexer.TT_INTEGER, lexer.next());
+        assertEquals(3, lexer.getInteger());
+        assertEquals(PDFLexer.TT_REAL, lexer.next());
+        assertEquals(3.25, lexer.getReal(), 0);
+        assertEquals(PDFLexer.TT_REAL, lexer.next());
+        assertEquals(-0.5, lexer.getReal(), 0);
+        assertEquals(PDFLexer.TT_REAL, lexer.next());
+        assertEquals(4.0, lexer.getReal(), 0);
+        assertEquals(PDFLexer.TT_INTEGER, lexer.next());
+        assertEquals(0, lexer.getInteger());
+        assertEquals(PDFLexer.TT_EOF, lexer.next());
+    }
+
+    @Test
+    public void integersAreAlsoReals() {
+        PDFLexer lexer = lexer("7");
+        lexer.next();
+        assertEquals(7.0, lexer.getReal(), 0);
+    }
+
+    @Test
+    public void dictionaryWithNamesAndArray() {
+        PDFLexer lexer = lexer("<</Type/Page/Kids[3 0 R]>>");
+        assertEquals(PDFLexer.TT_DICTIONARY_START, lexer.next());
+        assertEquals(PDFLexer.TT_NAME, lexer.next());
+        assertEquals("Type", lexer.getString());
+        assertEquals(PDFLexer.TT_NAME, lexer.next());
+        assertEquals("Page", lexer.getString());
+        assertEquals(PDFLexer.TT_NAME, lexer.next());
+        assertEquals("Kids", lexer.getString());
+        assertEquals(PDFLexer.TT_ARRAY_START, lexer.next());
+        assertEquals(PDFLexer.TT_INTEGER, lexer.next());
+        assertEquals(PDFLexer.TT_INTEGER, lexer.next());
+        assertTrue(lexer.peekKeyword(0, "R"));
+        assertEquals(PDFLexer.TT_KEYWORD, lexer.next());
+        assertEquals(PDFLexer.TT_ARRAY_END, lexer.next());
+        assertEquals(PDFLexer.TT_DICTIONARY_END, lexer.next());
+        assertEquals(PDFLexer.TT_EOF, lexer.next());
+    }
+
+    @Test
+    public void namesAreInterned() {
+        PDFLexer lexer = lexer("/Contents /Contents");
+        lexer.next();
+        String first = lexer.getString();
+        lexer.next();
+        assertSame(first, lexer.getString());
+        assertSame("Contents", first);
+    }
+
+    @Test
+    public void escapedName() {
+        PDFLexer lexer = lexer("/A#20B#23");
+        assertEquals(PDFLexer.TT_NAME, lexer.next());
+        assertEquals("A B#", lexer.getString());
+    }
+
+    @Test
+    public void literalStringEscapes() {
+        PDFLexer lexer = lexer("(a(b)c\\)\\n\\101\\\nd)");
+        assertEquals(PDFLexer.TT_STRING, lexer.next());
+        assertEquals("a(b)c)\nAd", lexer.getString());
+        assertEquals(PDFLexer.TT_EOF, lexer.next());
+    }
+
+    @Test
+    public void hexString() {
+        PDFLexer lexer = lexer("<48 65 6c6C 6>");
+        assertEquals(PDFLexer.TT_STRING, lexer.next());
+        assertEquals("Hell`", lexer.getString());
+    }
+
+    @Test
+    public void commentsAreSkipped() {
+        PDFLexer lexer = lexer("% a comment\r\n1 % another\n2");
+        assertEquals(PDFLexer.TT_INTEGER, lexer.next());
+        assertEquals(1, lexer.getInteger());
+        assertEquals(PDFLexer.TT_INTEGER, lexer.next());
+        assertEquals(2, lexer.getInteger());
+        assertEquals(PDFLexer.TT_EOF, lexer.next());
+    }
+
+    @Test
+    public void indirectObjectHeaderCanBePeeked() {
+        PDFLexer lexer = lexer("12 0 obj\n<< >>\nendobj");
+        assertEquals(PDFLexer.TT_INTEGER, lexer.peekType(0));
+        assertEquals(PDFLexer.TT_INTEGER, lexer.peekType(1));
+        assertTrue(lexer.peekKeyword(2, "obj"));
+        assertFalse(lexer.peekKeyword(2, "ob"));
+        assertEquals(12, lexer.peekInteger(0));
+        // Peeking doesn't consume anything.
+        assertEquals(0, lexer.getPosition());
+        lexer.next();
+        assertEquals(12, lexer.getInteger());
+        lexer.next();
+        lexer.next();
+        assertEquals(PDFLexer.TT_DICTIONARY_START, lexer.next());
+        assertEquals(PDFLexer.TT_DICTIONARY_END, lexer.next());
+        assertTrue(lexer.peekKeyword(0, "endobj"));
+    }
+
+    @Test
+    public void setPositionForgetsPeekedTokens() {
+        PDFLexer lexer = lexer("1 2 3 4");
+        lexer.peekType(2);
+        lexer.setPosition(4);
+        assertEquals(PDFLexer.TT_INTEGER, lexer.next());
+        assertEquals(3, lexer.getInteger());
+        assertEquals(4, lexer.getTokenStart());
+        assertEquals(5, lexer.getTokenEnd());
+    }
+
+    @Test
+    public void contentStreamOperators() {
+        PDFLexer lexer = lexer("BT /F1 12 Tf 1 0 0 1 50 800 Tm (Hi) Tj ET");
+        int[] expected = {
+                PDFLexer.TT_KEYWORD, PDFLexer.TT_NAME, PDFLexer.TT_INTEGER, PDFLexer.TT_KEYWORD,
+                PDFLexer.TT_INTEGER, PDFLexer.TT_INTEGER, PDFLexer.TT_INTEGER,
+                PDFLexer.TT_INTEGER, PDFLexer.TT_INTEGER, PDFLexer.TT_INTEGER,
+                PDFLexer.TT_KEYWORD, PDFLexer.TT_STRING, PDFLexer.TT_KEYWORD, PDFLexer.TT_KEYWORD,
+                PDFLexer.TT_EOF };
+        for (int i=0; i < expected.length; i++) {
+            assertEquals("token " + i, expected[i], lexer.next());
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package tuomaan.pdftest;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests interning names with PDFNameTable.
+ */
+public class PDFNameTableTest {
+
+    @After
+    public void emptyTable() {
+        PDFNameTable.clear();
+    }
+
+    /**
+     * Looks up a name from the middle of an array, so that the bounds are tested too.
+     */
+    private static String get(String name) {
+        PDFByteArray pdfArray = new PDFByteArray();
+        pdfArray.setBytes(("/" + name + " ").getBytes(StandardCharsets.ISO_8859_1));
+        return PDFNameTable.get(pdfArray, 1, 1 + name.length());
+    }
+
+    @Test
+    public void namesAreInterned() {
+        assertSame("Contents", get("Contents"));
+        assertSame(get("Resources"), get("Resources"));
+        assertEquals("Font", get("Font"));
+    }
+
+    @Test
+    public void namesWithSameHashAreKeptApart() {
+        // "Aa" and "BB" have the same String.hashCode.
+        String aa = get("Aa");
+        String bb = get("BB");
+        assertEquals("Aa", aa);
+        assertEquals("BB", bb);
+        assertSame(aa, get("Aa"));
+        assertSame(bb, get("BB"));
+    }
+
+    @Test
+    public void latin1Names() {
+        String name = "P\u00e4iv\u00e4";
+        assertEquals(name, get(name));
+        assertSame(get(name), get(name));
+    }
+
+    @Test
+    public void concurrentLookupsGiveSameInstance() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] results = new Future<?>[64];
+            for (int t=0; t < results.length; t++) {
+                results[t] = executor.submit(new Callable<String[]>() {
+                    @Override
+                    public String[] call() {
+                        String[] names = new String[500];
+                        for (int i=0; i < names.length; i++) {
+                            names[i] = get("Name" + i);
+                        }
+                        return names;
+                    }
+                });
+            }
+            String[] first = (String[]) results[0].get();
+            for (Future<?> result : results) {
+                String[] names = (String[]) result.get();
+                for (int i=0; i < names.length; i++) {
+                    assertEquals("Name" + i, names[i]);
+                    assertSame(first[i], names[i]);
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void namesAreNotInternedWhenTableIsFull() {
+        String early = get("EarlyName");
+        for (int i=0; i < 10000; i++) {
+            get("Filler" + i);
+        }
+        // The names in the table are still shared.
+        assertSame(early, get("EarlyName"));
+        // A new name is a new string, which isn't put in the JVM's pool either.
+        String late = get("LateNameLiteral");
+        assertEquals("LateNameLiteral", late);
+        assertNotSame("LateNameLiteral", late);
+        assertNotSame(late, get("LateNameLiteral"));
+    }
+
+}
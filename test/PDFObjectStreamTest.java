@@ -0,0 +1,174 @@
+package tuomaan.pdftest;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes the streams of objects read from bytes in the heap and from memory mapped files.
+ */
+public class PDFObjectStreamTest {
+
+    /** The largest chunk given to a StreamConsumer. */
+    private static final int DECODE_CHUNK_SIZE = 8192;
+
+    /**
+     * Returns bytes, which compress badly enough to need many chunks of input, but well
+     * enough to decode to more than the first guess of the decoded size.
+     */
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        int seed = 12345;
+        for (int i=0; i < length; i++) {
+            seed = seed * 1103515245 + 12345;
+            content[i] = (byte) ('a' + ((seed >>> 16) & 3));
+        }
+        return content;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            deflated.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return deflated.toByteArray();
+    }
+
+    private static byte[] streamObject(byte[] data, boolean compressed) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] header = ("1 0 obj\n<< /Length " + data.length + (compressed ? " /Filter /FlateDecode" : "")
+                + " >>\nstream\n").getBytes(StandardCharsets.ISO_8859_1);
+        byte[] footer = "\nendstream\nendobj\n".getBytes(StandardCharsets.ISO_8859_1);
+        out.write(header, 0, header.length);
+        out.write(data, 0, data.length);
+        out.write(footer, 0, footer.length);
+        return out.toByteArray();
+    }
+
+    private static PDFObject inHeap(byte[] bytes) {
+        PDFByteArray pdfArray = new PDFByteArray();
+        pdfArray.setBytes(bytes);
+        PDFObject obj = new PDFObject();
+        obj.readFromByteArray(pdfArray, 0);
+        return obj;
+    }
+
+    private static PDFObject mapped(byte[] bytes) throws IOException {
+        File file = File.createTempFile("stream", ".pdf");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        PDFByteArray pdfArray = new PDFByteArray();
+        pdfArray.mapFile(file);
+        PDFObject obj = new PDFObject();
+        obj.readFromByteArray(pdfArray, 0);
+        return obj;
+    }
+
+    /**
+     * Decodes a stream with decodeStream, and checks that no chunk is larger than the chunk size.
+     */
+    private static byte[] decodeInChunks(PDFObject obj) {
+        final ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        long total = obj.decodeStream(new PDFObject.StreamConsumer() {
+            @Override
+            public void consume(byte[] buffer, int offset, int length) {
+                assertTrue(length <= DECODE_CHUNK_SIZE);
+                decoded.write(buffer, offset, length);
+            }
+        });
+        assertEquals(decoded.size(), total);
+        return decoded.toByteArray();
+    }
+
+    private static byte[] decodeAll(PDFObject obj) {
+        PDFByteArray decoded = obj.getDecodedStream();
+        return decoded.getBytes(0, decoded.getLength());
+    }
+
+    @Test
+    public void compressedStreamInHeap() {
+        byte[] content = content(3 << 20);
+        PDFObject obj = inHeap(streamObject(deflate(content), true));
+        assertArrayEquals(content, decodeAll(obj));
+        assertArrayEquals(content, decodeInChunks(obj));
+    }
+
+    @Test
+    public void compressedStreamInMappedFile() throws IOException {
+        byte[] content = content(3 << 20);
+        PDFObject obj = mapped(streamObject(deflate(content), true));
+        assertArrayEquals(content, decodeAll(obj));
+        assertArrayEquals(content, decodeInChunks(obj));
+    }
+
+    @Test
+    public void uncompressedStreamIsGivenInChunks() throws IOException {
+        byte[] content = content(100000);
+        assertArrayEquals(content, decodeInChunks(inHeap(streamObject(content, false))));
+        assertArrayEquals(content, decodeInChunks(mapped(streamObject(content, false))));
+        assertArrayEquals(content, decodeAll(mapped(streamObject(content, false))));
+    }
+
+    @Test
+    public void truncatedStreamGivesWhatCanBeDecoded() {
+        byte[] content = content(100000);
+        byte[] deflated = deflate(content);
+        byte[] truncated = new byte[deflated.length / 2];
+        System.arraycopy(deflated, 0, truncated, 0, truncated.length);
+        byte[] decoded = decodeAll(inHeap(streamObject(truncated, true)));
+        assertTrue(decoded.length > 0 && decoded.length < content.length);
+        for (int i=0; i < decoded.length; i++) {
+            assertEquals(content[i], decoded[i]);
+        }
+    }
+
+    @Test
+    public void decodersAreReusedAcrossThreads() throws InterruptedException {
+        final byte[] content = content(50000);
+        final byte[] bytes = streamObject(deflate(content), true);
+        final boolean[] ok = new boolean[16];
+        Thread[] threads = new Thread[ok.length];
+        for (int t=0; t < threads.length; t++) {
+            final int index = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    boolean same = true;
+                    for (int i=0; i < 20; i++) {
+                        same &= Arrays.equals(content, decodeAll(inHeap(bytes)));
+                    }
+                    ok[index] = same;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (boolean threadOk : ok) {
+            assertTrue(threadOk);
+        }
+    }
+
+}
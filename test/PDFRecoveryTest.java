@@ -0,0 +1,142 @@
+package tuomaan.pdftest;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads files with a broken cross-reference table with PDFObjectList. The positions of the
+ * objects are found by scanning the file.
+ */
+public class PDFRecoveryTest {
+
+    private static void assertRecoveredHelloDocument(PDFObjectList objectList) {
+        assertTrue(objectList.wasRecovered());
+        assertEquals(1, objectList.getTrailerObj().getDictionary().get("Root").getIndirRefObjNum());
+        assertEquals("Catalog", PDFTestFile.typeOf(objectList.getObj(1)));
+        assertEquals("Pages", PDFTestFile.typeOf(objectList.getObj(2)));
+        assertEquals("Page", PDFTestFile.typeOf(objectList.getObj(3)));
+        assertEquals("Hello", PDFTestFile.firstString(objectList.getDecodedStream(4)));
+    }
+
+    private static PDFObjectList open(String text) throws IOException {
+        return PDFTestFile.open(PDFTestFile.save(text.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    private static String toText(PDFTestFile pdf) {
+        return new String(pdf.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Writes the hello document with a classic cross-reference table, but leaves out the end of
+     * the file.
+     */
+    private static PDFTestFile helloWithoutEnd() {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        pdf.xref("\r\n", 0, 5);
+        pdf.trailer("/Size 5 /Root 1 0 R");
+        return pdf;
+    }
+
+    @Test
+    public void validFileIsNotRecovered() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xref("\r\n", 0, 5);
+        pdf.trailer("/Size 5 /Root 1 0 R").startxref(xref);
+        assertFalse(PDFTestFile.open(pdf.save()).wasRecovered());
+    }
+
+    @Test
+    public void startxrefPastEndOfFile() throws IOException {
+        assertRecoveredHelloDocument(open(toText(helloWithoutEnd().startxref(999999))));
+    }
+
+    @Test
+    public void startxrefIntoAnObject() throws IOException {
+        PDFTestFile pdf = helloWithoutEnd();
+        pdf.startxref(pdf.positionOf(2) + 4);
+        assertRecoveredHelloDocument(open(toText(pdf)));
+    }
+
+    @Test
+    public void startxrefNotANumber() throws IOException {
+        assertRecoveredHelloDocument(open(toText(helloWithoutEnd()) + "startxref\nxyz\n%%EOF\n"));
+    }
+
+    @Test
+    public void startxrefMissing() throws IOException {
+        assertRecoveredHelloDocument(open(toText(helloWithoutEnd())));
+    }
+
+    @Test
+    public void allPositionsShifted() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xref("\r\n", 0, 5);
+        pdf.trailer("/Size 5 /Root 1 0 R").startxref(xref);
+        // A mail gateway has added a header to the file.
+        assertRecoveredHelloDocument(open("X-Scanned-By: gateway\r\n\r\n" + toText(pdf)));
+    }
+
+    @Test
+    public void objectPositionsShifted() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xref("\r\n", 0, 5);
+        pdf.trailer("/Size 5 /Root 1 0 R").startxref(xref);
+        // The ends of line before the table have been changed to two bytes, so the objects
+        // have moved, but startxref still points to the table.
+        String text = toText(pdf);
+        int xrefKeyword = text.indexOf("xref\n");
+        String objects = text.substring(0, xrefKeyword).replace("\n", "\r\n");
+        int shift = objects.length() - xrefKeyword;
+        text = objects + text.substring(xrefKeyword).replace(
+                "startxref\n" + xref, "startxref\n" + (xref + shift));
+        assertRecoveredHelloDocument(open(text));
+    }
+
+    @Test
+    public void tableAndTrailerMissing() throws IOException {
+        // The trailer is made up for the catalog.
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertRecoveredHelloDocument(objectList);
+        assertEquals(5, objectList.getTrailerObj().getDictionary().get("Size").getInteger());
+    }
+
+    @Test
+    public void lastVersionOfObjectWins() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        pdf.object(3, "<< /Type /Page /Parent 2 0 R /Contents [4 0 R] /Rotate 90 >>");
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertRecoveredHelloDocument(objectList);
+        assertEquals(90, objectList.getObj(3).getDictionary().get("Rotate").getInteger());
+    }
+
+    @Test
+    public void objectsInObjectStreamsAreFound() throws IOException {
+        PDFTestFile pdf = new PDFTestFile();
+        pdf.stream(4, "", PDFTestFile.ascii("BT /F1 12 Tf 1 0 0 1 50 800 Tm (Hello) Tj ET"));
+        pdf.objectStream(5, 1,
+                "<< /Type /Catalog /Pages 2 0 R >>",
+                "<< /Type /Pages /Kids [3 0 R] /Count 1 >>",
+                "<< /Type /Page /Parent 2 0 R /Contents [4 0 R] >>");
+        int xref = pdf.xrefStream(6, 7, "/Root 1 0 R", new int[] {1, 4, 2}, 12, 7);
+        pdf.startxref(xref);
+        assertRecoveredHelloDocument(open("%junk\n" + toText(pdf)));
+    }
+
+    @Test
+    public void wordsEndingInObjAreNotHeaders() throws IOException {
+        PDFTestFile pdf = new PDFTestFile();
+        pdf.object(7, "(12 0 subobj 13 0 objx)");
+        pdf.helloDocument();
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertRecoveredHelloDocument(objectList);
+        assertEquals(8, objectList.numOfObjs());
+    }
+
+}
@@ -0,0 +1,361 @@
+package tuomaan.pdftest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.zip.Deflater;
+
+/**
+ * Builds small PDF files for the tests byte by byte, so that the positions of the objects and
+ * the cross-reference sections are known exactly. Objects are written one after another, and
+ * the positions of the newest version of each object are remembered for the cross-reference
+ * sections. Objects may also be put in object streams, which are listed in cross-reference
+ * streams.
+ */
+class PDFTestFile {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final HashMap<Integer, Integer> positions = new HashMap<>();
+    /** The number of the object stream and the index in it of each compressed object. */
+    private final HashMap<Integer, int[]> compressed = new HashMap<>();
+
+    PDFTestFile() {
+        write("%PDF-1.4\n");
+    }
+
+    /**
+     * Returns the position where the next bytes will be written.
+     */
+    int position() {
+        return out.size();
+    }
+
+    /**
+     * Returns the position of the newest version of an object, or 0 if it hasn't been written.
+     */
+    int positionOf(int objNum) {
+        Integer position = positions.get(objNum);
+        return position != null ? position : 0;
+    }
+
+    PDFTestFile write(String text) {
+        return write(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    PDFTestFile write(byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+        return this;
+    }
+
+    /**
+     * Writes an indirect object.
+     * @param objNum The object number.
+     * @param body The object without the obj and endobj keywords.
+     */
+    PDFTestFile object(int objNum, String body) {
+        positions.put(objNum, position());
+        compressed.remove(objNum);
+        return write(objNum + " 0 obj\n" + body + "\nendobj\n");
+    }
+
+    /**
+     * Writes a stream object. The Length entry is added to the dictionary.
+     * @param objNum The object number.
+     * @param dictionary The entries of the dictionary without the angle brackets.
+     * @param data The data of the stream as it is stored in the file.
+     */
+    PDFTestFile stream(int objNum, String dictionary, byte[] data) {
+        positions.put(objNum, position());
+        compressed.remove(objNum);
+        write(objNum + " 0 obj\n<< " + dictionary + " /Length " + data.length + " >>\nstream\n");
+        write(data);
+        return write("\nendstream\nendobj\n");
+    }
+
+    /**
+     * Writes the objects of a document with a single page with the text "Hello". The catalog is
+     * object 1, the pages object 2, the page 3 and the content stream 4.
+     */
+    PDFTestFile helloDocument() {
+        object(1, "<< /Type /Catalog /Pages 2 0 R >>");
+        object(2, "<< /Type /Pages /Kids [3 0 R] /Count 1 >>");
+        object(3, "<< /Type /Page /Parent 2 0 R /Contents [4 0 R] >>");
+        return stream(4, "", ascii("BT /F1 12 Tf 1 0 0 1 50 800 Tm (Hello) Tj ET"));
+    }
+
+    /**
+     * Writes a whole document with a page for each content stream, with a classic
+     * cross-reference section and a trailer. The catalog is object 1 and the pages object 2.
+     * @param contents The content streams of the pages.
+     */
+    static PDFTestFile textDocument(String... contents) {
+        PDFTestFile pdf = new PDFTestFile();
+        int size = 3 + 2 * contents.length;
+        StringBuilder kids = new StringBuilder();
+        for (int i=0; i < contents.length; i++) {
+            kids.append(3 + 2*i).append(" 0 R ");
+        }
+        pdf.object(1, "<< /Type /Catalog /Pages 2 0 R >>");
+        pdf.object(2, "<< /Type /Pages /Kids [" + kids + "] /Count " + contents.length + " >>");
+        for (int i=0; i < contents.length; i++) {
+            pdf.object(3 + 2*i, "<< /Type /Page /Parent 2 0 R /Contents [" + (4 + 2*i) + " 0 R] >>");
+            pdf.stream(4 + 2*i, "", ascii(contents[i]));
+        }
+        int xref = pdf.xref("\r\n", 0, size);
+        return pdf.trailer("/Size " + size + " /Root 1 0 R").startxref(xref);
+    }
+
+    /**
+     * Writes a compressed object stream with objects, whose numbers follow each other.
+     * @param objNum The number of the object stream.
+     * @param firstObjNum The number of the first object in the stream.
+     * @param bodies The objects.
+     */
+    PDFTestFile objectStream(int objNum, int firstObjNum, String... bodies) {
+        StringBuilder header = new StringBuilder();
+        StringBuilder objects = new StringBuilder();
+        for (int i=0; i < bodies.length; i++) {
+            header.append(firstObjNum + i).append(' ').append(objects.length()).append(' ');
+            objects.append(bodies[i]).append('\n');
+            compressedIn(firstObjNum + i, objNum, i);
+        }
+        return stream(objNum, "/Type /ObjStm /N " + bodies.length + " /First " + header.length()
+                + " /Filter /FlateDecode", deflate(ascii(header.toString() + objects)));
+    }
+
+    /**
+     * Tells that an object is in an object stream, whatever is written in the file.
+     */
+    PDFTestFile compressedIn(int objNum, int streamObjNum, int index) {
+        positions.remove(objNum);
+        compressed.put(objNum, new int[] {streamObjNum, index});
+        return this;
+    }
+
+    /**
+     * Writes a compressed cross-reference stream with the newest positions of objects 0 to
+     * size - 1. The stream itself is one of the objects. Objects which haven't been written are
+     * free.
+     * @param objNum The number of the stream.
+     * @param size The number of objects.
+     * @param entries More entries of the dictionary, for example the Root.
+     * @param w The widths of the fields. A type field of width 0 is left out.
+     * @param predictor 1 for no predictor, 2 for the TIFF predictor or 10 to 15 for the PNG
+     *                  predictors. With the PNG predictors, the rows use each PNG filter in
+     *                  turn.
+     * @param columns The width of the rows. It may be wider than the fields only with a
+     *                predictor, since Columns is given in the DecodeParms.
+     * @return The position of the stream.
+     */
+    int xrefStream(int objNum, int size, String entries, int[] w, int predictor, int columns) {
+        positions.put(objNum, position());
+        compressed.remove(objNum);
+        int rowLength = Math.max(columns, w[0] + w[1] + w[2]);
+        byte[] rows = new byte[size * rowLength];
+        for (int i=0; i < size; i++) {
+            int type = 0;
+            int field = 0;
+            int index = 0;
+            if (positionOf(i) > 0) {
+                type = 1;
+                field = positionOf(i);
+            } else if (compressed.get(i) != null) {
+                type = 2;
+                field = compressed.get(i)[0];
+                index = compressed.get(i)[1];
+            }
+            int at = i * rowLength;
+            at = putField(rows, at, w[0], type);
+            at = putField(rows, at, w[1], field);
+            putField(rows, at, w[2], index);
+        }
+        String decodeParms = "";
+        if (predictor == 2) {
+            rows = addTiffPredictor(rows, size, rowLength);
+            decodeParms = " /DecodeParms << /Predictor 2 /Columns " + columns + " >>";
+        } else if (predictor >= 10) {
+            rows = addPngPredictor(rows, size, rowLength);
+            decodeParms = " /DecodeParms << /Predictor " + predictor + " /Columns " + columns + " >>";
+        }
+        int xrefPosition = position();
+        stream(objNum, "/Type /XRef /Size " + size + " /W [" + w[0] + " " + w[1] + " " + w[2]
+                + "] " + entries + " /Filter /FlateDecode" + decodeParms, deflate(rows));
+        return xrefPosition;
+    }
+
+    private static int putField(byte[] rows, int at, int width, int value) {
+        for (int i=width-1; i >= 0; i--) {
+            rows[at + i] = (byte) value;
+            value >>>= 8;
+        }
+        return at + width;
+    }
+
+    private static byte[] addTiffPredictor(byte[] rows, int rowCount, int rowLength) {
+        byte[] predicted = new byte[rows.length];
+        for (int r=0; r < rowCount; r++) {
+            for (int c=0; c < rowLength; c++) {
+                int left = c > 0 ? rows[r*rowLength + c - 1] : 0;
+                predicted[r*rowLength + c] = (byte) (rows[r*rowLength + c] - left);
+            }
+        }
+        return predicted;
+    }
+
+    private static byte[] addPngPredictor(byte[] rows, int rowCount, int rowLength) {
+        byte[] predicted = new byte[rowCount * (rowLength + 1)];
+        for (int r=0; r < rowCount; r++) {
+            int filter = r % 5;
+            predicted[r * (rowLength + 1)] = (byte) filter;
+            for (int c=0; c < rowLength; c++) {
+                int left = c > 0 ? rows[r*rowLength + c - 1] & 0xff : 0;
+                int up = r > 0 ? rows[(r-1)*rowLength + c] & 0xff : 0;
+                int upLeft = r > 0 && c > 0 ? rows[(r-1)*rowLength + c - 1] & 0xff : 0;
+                int prediction;
+                switch (filter) {
+                    case 1: prediction = left; break;
+                    case 2: prediction = up; break;
+                    case 3: prediction = (left + up) / 2; break;
+                    case 4: prediction = paeth(left, up, upLeft); break;
+                    default: prediction = 0; break;
+                }
+                predicted[r * (rowLength + 1) + 1 + c] = (byte) (rows[r*rowLength + c] - prediction);
+            }
+        }
+        return predicted;
+    }
+
+    private static int paeth(int left, int up, int upLeft) {
+        int p = left + up - upLeft;
+        int pLeft = Math.abs(p - left);
+        int pUp = Math.abs(p - up);
+        int pUpLeft = Math.abs(p - upLeft);
+        if (pLeft <= pUp && pLeft <= pUpLeft) {
+            return left;
+        }
+        return pUp <= pUpLeft ? up : upLeft;
+    }
+
+    static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            deflated.write(buffer, 0, length);
+        }
+        deflater.end();
+        return deflated.toByteArray();
+    }
+
+    /**
+     * Writes a classic cross-reference section with the newest positions of the objects. Objects
+     * which haven't been written are free.
+     * @param endOfLine The end of line of the entries. The standard one is two bytes, but some
+     *                  writers use a single byte.
+     * @param subsections Pairs of the first object number and the number of objects.
+     * @return The position of the xref keyword.
+     */
+    int xref(String endOfLine, int... subsections) {
+        int xrefPosition = position();
+        write("xref\n");
+        for (int s=0; s < subsections.length; s += 2) {
+            write(subsections[s] + " " + subsections[s + 1] + "\n");
+            for (int objNum=subsections[s]; objNum < subsections[s] + subsections[s + 1]; objNum++) {
+                int position = positionOf(objNum);
+                if (position > 0) {
+                    write(String.format("%010d 00000 n%s", position, endOfLine));
+                } else {
+                    write(String.format("%010d 65535 f%s", 0, endOfLine));
+                }
+            }
+        }
+        return xrefPosition;
+    }
+
+    /**
+     * Writes a trailer dictionary after a classic cross-reference section.
+     * @param entries The entries of the dictionary without the angle brackets.
+     */
+    PDFTestFile trailer(String entries) {
+        return write("trailer\n<< " + entries + " >>\n");
+    }
+
+    /**
+     * Writes the end of the file, which tells where the last cross-reference section is.
+     */
+    PDFTestFile startxref(int xrefPosition) {
+        return write("startxref\n" + xrefPosition + "\n%%EOF\n");
+    }
+
+    byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the file to a temporary file, which is deleted when the tests end.
+     */
+    File save() throws IOException {
+        return save(toByteArray());
+    }
+
+    static File save(byte[] bytes) throws IOException {
+        File file = File.createTempFile("test", ".pdf");
+        file.deleteOnExit();
+        OutputStream fileOut = new FileOutputStream(file);
+        try {
+            fileOut.write(bytes);
+        } finally {
+            fileOut.close();
+        }
+        return file;
+    }
+
+    static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Opens a file as a PDFObjectList.
+     */
+    static PDFObjectList open(File file) {
+        PDFObjectList objectList = new PDFObjectList();
+        objectList.openFile(file);
+        return objectList;
+    }
+
+    /**
+     * Returns the first string in a content stream, or null if there is none.
+     */
+    static String firstString(PDFByteArray content) {
+        if (content == null) {
+            return null;
+        }
+        PDFLexer lexer = new PDFLexer(content, 0);
+        int type;
+        while ((type = lexer.next()) != PDFLexer.TT_EOF) {
+            if (type == PDFLexer.TT_STRING) {
+                return lexer.getString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of the Type entry of an object, or null if it has none.
+     */
+    static String typeOf(PDFObject obj) {
+        HashMap<String, PDFObject> dictionary = obj.getDictionary();
+        if (dictionary == null || dictionary.get("Type") == null) {
+            return null;
+        }
+        return dictionary.get("Type").getName();
+    }
+
+}
@@ -0,0 +1,188 @@
+package pdftextextractor;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the radix sort of PDFTextItemStore against a stable comparison sort, and the order of
+ * getTextStore against the order of getText.
+ */
+public class PDFTextItemStoreTest {
+
+    /**
+     * Returns the indexes of the keys in the order of a stable comparison sort.
+     */
+    private static int[] stableOrder(final long[] keys) {
+        Integer[] order = new Integer[keys.length];
+        for (int i=0; i < keys.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+        int[] result = new int[keys.length];
+        for (int i=0; i < keys.length; i++) {
+            result[i] = order[i];
+        }
+        return result;
+    }
+
+    @Test
+    public void emptyKeys() {
+        assertEquals(0, PDFTextItemStore.radixSort(new long[0]).length);
+    }
+
+    @Test
+    public void randomKeysInStableOrder() {
+        Random random = new Random(42);
+        long[] keys = new long[2000];
+        for (int i=0; i < keys.length; i++) {
+            // Few distinct values in every byte, so there are plenty of equal keys.
+            keys[i] = ((long) random.nextInt(4) << 48)
+                    | ((long) random.nextInt(300) << 24)
+                    | random.nextInt(300);
+        }
+        long[] copy = keys.clone();
+        assertArrayEquals(stableOrder(keys), PDFTextItemStore.radixSort(keys));
+        assertArrayEquals(copy, keys);
+    }
+
+    @Test
+    public void fullWidthKeys() {
+        Random random = new Random(7);
+        long[] keys = new long[500];
+        for (int i=0; i < keys.length; i++) {
+            keys[i] = random.nextLong() >>> 1;
+        }
+        assertArrayEquals(stableOrder(keys), PDFTextItemStore.radixSort(keys));
+    }
+
+    @Test
+    public void uniformBytesSkipped() {
+        Random random = new Random(3);
+        long[] keys = new long[300];
+        for (int i=0; i < keys.length; i++) {
+            // Only the lowest byte and the byte of the page differ. The bytes between them are
+            // the same in all keys, so their passes are skipped, and an odd number of passes is
+            // made.
+            keys[i] = ((long) random.nextInt(3) << 48) | 0x12345600L | random.nextInt(8);
+        }
+        assertArrayEquals(stableOrder(keys), PDFTextItemStore.radixSort(keys));
+
+        // A single differing byte in the middle.
+        for (int i=0; i < keys.length; i++) {
+            keys[i] = 0x0001000000ab00cdL | ((long) random.nextInt(5) << 24);
+        }
+        assertArrayEquals(stableOrder(keys), PDFTextItemStore.radixSort(keys));
+    }
+
+    @Test
+    public void equalKeysKeepTheirOrder() {
+        long[] keys = new long[100];
+        Arrays.fill(keys, 0x0000123456789abcL);
+        int[] order = PDFTextItemStore.radixSort(keys);
+        for (int i=0; i < keys.length; i++) {
+            assertEquals(i, order[i]);
+        }
+    }
+
+    private static void add(PDFTextItemStore store, int page, float topLeftX, float topLeftY, String text) {
+        store.add(page, topLeftX, topLeftY, topLeftX + 10, topLeftY + 5, topLeftX, topLeftY + 5, text);
+    }
+
+    private static String texts(PDFTextItemStore store) {
+        StringBuilder sb = new StringBuilder();
+        for (int i=0; i < store.size(); i++) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            store.appendText(i, sb);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void negativeAndRoundedCoordinates() {
+        PDFTextItemStore store = new PDFTextItemStore();
+        add(store, 1, 0, -1000, "page1");
+        add(store, 0, 5, 0.4f, "y0x5");
+        add(store, 0, -20.6f, 3, "y3");
+        // Rounds to the same y as y0x5, so it is ordered by x only.
+        add(store, 0, 2, -0.4f, "y0x2");
+        add(store, 0, 0, -0.6f, "y-1");
+        // Far outside the range of the key, so it is clamped to the smallest y.
+        add(store, 0, 100, -1e9f, "top");
+        add(store, 0, -7.5f, 3, "y3x-7");
+        // Rounds to the same x as y3x-7 and comes after it in the original order.
+        add(store, 0, -7.4f, 3, "y3x-7b");
+        store.sort();
+        assertEquals("top y-1 y0x2 y0x5 y3 y3x-7 y3x-7b page1", texts(store));
+        assertEquals("y3", store.getText(4));
+        assertEquals(-20.6f, store.getTopLeftX(4), 0);
+        assertEquals(8, store.getY(4), 0);
+        assertEquals(1, store.getPage(7));
+        assertEquals(-1000, store.getTopLeftY(7), 0);
+        assertEquals(10, store.getBottomRightX(7), 0);
+    }
+
+    @Test
+    public void growsPastTheInitialCapacity() {
+        PDFTextItemStore store = new PDFTextItemStore();
+        for (int i=0; i < 1000; i++) {
+            add(store, 0, 0, 1000 - i, "item" + i);
+        }
+        store.sort();
+        assertEquals(1000, store.size());
+        assertEquals("item999", store.getText(0));
+        assertEquals("item0", store.getText(999));
+        assertEquals(1, store.getTopLeftY(0), 0);
+    }
+
+    private static String clipped(float x, float y, String text) {
+        return "q " + x + " " + y + " 40 12 re W n BT /F1 9 Tf 1 0 0 1 " + x + " " + (y + 2)
+                + " Tm (" + text + ") Tj ET Q\n";
+    }
+
+    private static String unclipped(float x, float y, String text) {
+        return "BT /F1 9 Tf 1 0 0 1 " + x + " " + y + " Tm (" + text + ") Tj ET\n";
+    }
+
+    @Test
+    public void sameOrderAsGetText() throws Exception {
+        // The snippets of a line have exactly the same y-coordinate, like in the files of
+        // HelB. Some x-coordinates round to the same value, and some coordinates are negative
+        // after the y-axis is flipped.
+        String page0 = unclipped(20, -15.5f, "u1")
+                + clipped(300, 700.25f, "a4")
+                + clipped(400, 680, "b2")
+                + clipped(100.2f, 700.25f, "a2")
+                + clipped(50, 700.25f, "a1")
+                + unclipped(-30.4f, -15.5f, "u0")
+                + clipped(99.8f, 700.25f, "a3")
+                + clipped(60, 680, "b1");
+        String page1 = clipped(10, 500, "p2")
+                + clipped(10, 600, "p1");
+        File file = PDFTestFile.textDocument(page0, page1).save();
+
+        PDFTextExtractor extractor = new PDFTextExtractor();
+        extractor.openFile(file);
+        ArrayList<PDFTextItem> list = extractor.getText();
+        ArrayList<PDFTextItem> stored = extractor.getTextStore().toList();
+
+        StringBuilder listTexts = new StringBuilder();
+        for (PDFTextItem item : list) {
+            listTexts.append(item.text).append(' ');
+        }
+        assertEquals("a1 a2 a3 a4 b1 b2 u0 u1 p1 p2 ", listTexts.toString());
+        assertEquals(list.size(), stored.size());
+        for (int i=0; i < list.size(); i++) {
+            assertEquals(list.get(i).toString(), stored.get(i).toString());
+        }
+    }
+
+}
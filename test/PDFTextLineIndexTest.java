@@ -0,0 +1,146 @@
+package pdftextextractor;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests grouping text snippets into lines with PDFTextLineIndex, and the line methods of
+ * PDFTextExtractor.
+ */
+public class PDFTextLineIndexTest {
+
+    private static void add(PDFTextItemStore store, int page, float topLeftX, float topLeftY, String text) {
+        store.add(page, topLeftX, topLeftY, topLeftX + 10, topLeftY + 5, topLeftX, topLeftY + 5, text);
+    }
+
+    @Test
+    public void emptyStore() {
+        PDFTextLineIndex lines = new PDFTextLineIndex(new PDFTextItemStore());
+        assertEquals(0, lines.lineCount());
+    }
+
+    @Test
+    public void linesByPageAndRoundedY() {
+        PDFTextItemStore store = new PDFTextItemStore();
+        add(store, 1, 10, -50, "p1");
+        add(store, 0, 30, 20.4f, "c");
+        add(store, 0, 10, -3, "top");
+        add(store, 0, 20, 19.6f, "b");
+        add(store, 0, 5, 20, "a");
+        // The same x as b, so it stays after b.
+        add(store, 0, 20, 20, "b2");
+        PDFTextLineIndex lines = new PDFTextLineIndex(store);
+
+        assertSame(store, lines.getStore());
+        assertEquals(3, lines.lineCount());
+        assertEquals(0, lines.getLinePage(0));
+        assertEquals(-3, lines.getLineY(0));
+        assertEquals(Arrays.asList("top"), lines.getLineTexts(0));
+        assertEquals(0, lines.getLinePage(1));
+        assertEquals(20, lines.getLineY(1));
+        assertEquals(Arrays.asList("a", "b", "b2", "c"), lines.getLineTexts(1));
+        assertEquals(4, lines.lineSize(1));
+        assertEquals(1, lines.getLinePage(2));
+        assertEquals(-50, lines.getLineY(2));
+        assertEquals(Arrays.asList("p1"), lines.getLineTexts(2));
+
+        // The store isn't sorted, and the index points to the snippets in it.
+        assertEquals("p1", store.getText(0));
+        assertEquals(4, lines.getItem(1, 0));
+        assertEquals(3, lines.getItem(1, 1));
+    }
+
+    @Test
+    public void fromTextItems() {
+        ArrayList<PDFTextItem> items = new ArrayList<>();
+        PDFTextItemStore store = new PDFTextItemStore();
+        add(store, 0, 40, 100, "second");
+        add(store, 0, 10, 100, "first");
+        add(store, 0, 10, 90, "above");
+        items.addAll(store.toList());
+        PDFTextLineIndex lines = PDFTextLineIndex.of(items);
+        assertEquals(2, lines.lineCount());
+        assertEquals(Arrays.asList("above"), lines.getLineTexts(0));
+        assertEquals(Arrays.asList("first", "second"), lines.getLineTexts(1));
+    }
+
+    @Test
+    public void sameAsGroupingSortedItems() {
+        Random random = new Random(11);
+        PDFTextItemStore store = new PDFTextItemStore();
+        for (int i=0; i < 3000; i++) {
+            add(store, random.nextInt(5), random.nextInt(600), random.nextInt(400) - 200 + random.nextFloat(),
+                    "t" + i);
+        }
+        PDFTextLineIndex lines = new PDFTextLineIndex(store);
+
+        // Group the snippets by going through them in a sorted map.
+        TreeMap<Long, ArrayList<Integer>> expected = new TreeMap<>();
+        for (int i=0; i < store.size(); i++) {
+            long key = store.getPage(i) * 100000L + Math.round(store.getTopLeftY(i));
+            if (!expected.containsKey(key)) {
+                expected.put(key, new ArrayList<Integer>());
+            }
+            expected.get(key).add(i);
+        }
+        assertEquals(expected.size(), lines.lineCount());
+        int line = 0;
+        for (ArrayList<Integer> expectedLine : expected.values()) {
+            // A stable sort by x.
+            final PDFTextItemStore s = store;
+            expectedLine.sort((a, b) -> Float.compare(s.getTopLeftX(a), s.getTopLeftX(b)));
+            assertEquals(expectedLine.size(), lines.lineSize(line));
+            for (int position=0; position < expectedLine.size(); position++) {
+                assertEquals((int) expectedLine.get(position), lines.getItem(line, position));
+            }
+            line++;
+        }
+    }
+
+    private static String clipped(float x, float y, String text) {
+        return "q " + x + " " + y + " 40 12 re W n BT 1 0 0 1 " + x + " " + y + " Tm (" + text
+                + ") Tj ET Q\n";
+    }
+
+    @Test
+    public void linesOfAFile() throws Exception {
+        String page0 = clipped(200, 700, "b") + clipped(50, 700, "a") + clipped(50, 680, "c");
+        String page1 = clipped(50, 600, "e") + clipped(50, 650, "d");
+        File file = PDFTestFile.textDocument(page0, page1).save();
+        PDFTextExtractor extractor = new PDFTextExtractor();
+        extractor.openFile(file);
+
+        assertEquals(2, extractor.getPageCount());
+        PDFTextLineIndex lines = extractor.getTextLines();
+        assertEquals(4, lines.lineCount());
+        assertEquals(Arrays.asList("a", "b"), lines.getLineTexts(0));
+        assertEquals(Arrays.asList("c"), lines.getLineTexts(1));
+        assertEquals(1, lines.getLinePage(2));
+        assertEquals(Arrays.asList("d"), lines.getLineTexts(2));
+        assertEquals(Arrays.asList("e"), lines.getLineTexts(3));
+
+        // The lines hold the same snippets as getText.
+        ArrayList<PDFTextItem> items = extractor.getText();
+        PDFTextLineIndex fromItems = PDFTextLineIndex.of(items);
+        assertEquals(lines.lineCount(), fromItems.lineCount());
+        for (int line=0; line < lines.lineCount(); line++) {
+            assertEquals(fromItems.getLineTexts(line), lines.getLineTexts(line));
+        }
+
+        PDFTextLineIndex secondPage = extractor.getTextLinesOfPage(1);
+        assertEquals(2, secondPage.lineCount());
+        assertEquals(1, secondPage.getLinePage(0));
+        assertEquals(-662, secondPage.getLineY(0));
+        assertEquals(Arrays.asList("d"), secondPage.getLineTexts(0));
+        assertEquals(Arrays.asList("e"), secondPage.getLineTexts(1));
+    }
+
+}
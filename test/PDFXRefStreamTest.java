@@ -0,0 +1,175 @@
+package tuomaan.pdftest;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads files with cross-reference streams and object streams with PDFObjectList.
+ */
+public class PDFXRefStreamTest {
+
+    private static final int[] W = {1, 4, 2};
+
+    private static void assertHelloDocument(PDFObjectList objectList) {
+        assertEquals("Catalog", PDFTestFile.typeOf(objectList.getObj(1)));
+        assertEquals("Pages", PDFTestFile.typeOf(objectList.getObj(2)));
+        assertEquals("Page", PDFTestFile.typeOf(objectList.getObj(3)));
+        assertEquals("Hello", PDFTestFile.firstString(objectList.getDecodedStream(4)));
+    }
+
+    /**
+     * Makes a file with the hello document and a cross-reference stream as object 5.
+     */
+    private static PDFObjectList helloWithXRefStream(int[] w, int predictor, int columns)
+            throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xrefStream(5, 6, "/Root 1 0 R", w, predictor, columns);
+        pdf.startxref(xref);
+        return PDFTestFile.open(pdf.save());
+    }
+
+    @Test
+    public void withoutPredictor() throws IOException {
+        PDFObjectList objectList = helloWithXRefStream(W, 1, 7);
+        assertFalse(objectList.wasRecovered());
+        assertHelloDocument(objectList);
+        assertEquals("XRef", PDFTestFile.typeOf(objectList.getTrailerObj()));
+    }
+
+    @Test
+    public void pngPredictor() throws IOException {
+        // The six rows use each of the five PNG filters.
+        PDFObjectList objectList = helloWithXRefStream(new int[] {1, 2, 1}, 12, 4);
+        assertFalse(objectList.wasRecovered());
+        assertHelloDocument(objectList);
+    }
+
+    @Test
+    public void pngPredictorWithColumnsWiderThanFields() throws IOException {
+        PDFObjectList objectList = helloWithXRefStream(new int[] {1, 2, 1}, 12, 6);
+        assertFalse(objectList.wasRecovered());
+        assertHelloDocument(objectList);
+    }
+
+    @Test
+    public void tiffPredictor() throws IOException {
+        PDFObjectList objectList = helloWithXRefStream(W, 2, 7);
+        assertFalse(objectList.wasRecovered());
+        assertHelloDocument(objectList);
+    }
+
+    @Test
+    public void typeFieldLeftOut() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        // Without the type field all objects are in the file, so there must be no free ones.
+        pdf.object(0, "null");
+        int xref = pdf.xrefStream(5, 6, "/Root 1 0 R", new int[] {0, 4, 0}, 1, 4);
+        pdf.startxref(xref);
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertFalse(objectList.wasRecovered());
+        assertHelloDocument(objectList);
+    }
+
+    @Test
+    public void columnsNarrowerThanFieldsIsRecovered() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xrefStream(5, 6, "/Root 1 0 R", W, 12, 7);
+        pdf.startxref(xref);
+        String text = new String(pdf.toByteArray(), "ISO-8859-1").replace("/Columns 7", "/Columns 5");
+        PDFObjectList objectList = PDFTestFile.open(PDFTestFile.save(PDFTestFile.ascii(text)));
+        assertTrue(objectList.wasRecovered());
+        assertHelloDocument(objectList);
+    }
+
+    @Test
+    public void unknownPredictorIsRecovered() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xrefStream(5, 6, "/Root 1 0 R", W, 2, 7);
+        pdf.startxref(xref);
+        String text = new String(pdf.toByteArray(), "ISO-8859-1").replace("/Predictor 2", "/Predictor 7");
+        PDFObjectList objectList = PDFTestFile.open(PDFTestFile.save(PDFTestFile.ascii(text)));
+        assertTrue(objectList.wasRecovered());
+        assertHelloDocument(objectList);
+    }
+
+    @Test
+    public void missingSizeIsRecovered() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xrefStream(5, 6, "/Root 1 0 R", W, 1, 7);
+        pdf.startxref(xref);
+        String text = new String(pdf.toByteArray(), "ISO-8859-1").replace("/Size 6", "");
+        PDFObjectList objectList = PDFTestFile.open(PDFTestFile.save(PDFTestFile.ascii(text)));
+        assertTrue(objectList.wasRecovered());
+        assertHelloDocument(objectList);
+    }
+
+    /**
+     * Makes a file, where the catalog, the pages and the page are in object stream 5.
+     */
+    private static PDFTestFile helloInObjectStream() {
+        PDFTestFile pdf = new PDFTestFile();
+        pdf.stream(4, "", PDFTestFile.ascii("BT /F1 12 Tf 1 0 0 1 50 800 Tm (Hello) Tj ET"));
+        pdf.objectStream(5, 1,
+                "<< /Type /Catalog /Pages 2 0 R >>",
+                "<< /Type /Pages /Kids [3 0 R] /Count 1 >>",
+                "<< /Type /Page /Parent 2 0 R /Contents [4 0 R] >>");
+        return pdf;
+    }
+
+    @Test
+    public void objectStreamLookup() throws IOException {
+        PDFTestFile pdf = helloInObjectStream();
+        int xref = pdf.xrefStream(6, 7, "/Root 1 0 R", W, 12, 7);
+        pdf.startxref(xref);
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertFalse(objectList.wasRecovered());
+        assertHelloDocument(objectList);
+        assertEquals("ObjStm", PDFTestFile.typeOf(objectList.getObj(5)));
+        // The objects in the stream can be read in any order.
+        assertEquals(2, objectList.getObj(1).getDictionary().get("Pages").getIndirRefObjNum());
+        assertEquals(1, objectList.getObj(2).getDictionary().get("Count").getInteger());
+    }
+
+    @Test
+    public void objectStreamInHybridFile() throws IOException {
+        PDFTestFile pdf = helloInObjectStream();
+        int xrefStream = pdf.xrefStream(6, 7, "", W, 1, 7);
+        // The classic section lists only the plain objects.
+        int xref = pdf.xref("\r\n", 0, 1, 4, 3);
+        pdf.trailer("/Size 7 /Root 1 0 R /XRefStm " + xrefStream).startxref(xref);
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertFalse(objectList.wasRecovered());
+        assertHelloDocument(objectList);
+    }
+
+    @Test
+    public void selfReferencingObjectStreamIsRecovered() throws IOException {
+        PDFTestFile pdf = helloInObjectStream();
+        // The entry of the object stream says it is in itself.
+        pdf.compressedIn(5, 5, 0);
+        int xref = pdf.xrefStream(6, 7, "/Root 1 0 R", W, 1, 7);
+        pdf.startxref(xref);
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertTrue(objectList.wasRecovered());
+        assertHelloDocument(objectList);
+    }
+
+    @Test
+    public void objectStreamsInEachOtherAreRefused() throws IOException {
+        PDFTestFile pdf = helloInObjectStream();
+        pdf.objectStream(7, 8, "<< /Type /Extra >>");
+        pdf.compressedIn(5, 7, 0);
+        pdf.compressedIn(7, 5, 0);
+        int xref = pdf.xrefStream(6, 9, "/Root 4 0 R", W, 1, 7);
+        pdf.startxref(xref);
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertEquals(PDFObject.OT_NULL, objectList.getObj(8).getObjType());
+        assertEquals(PDFObject.OT_NULL, objectList.getObj(1).getObjType());
+    }
+
+}
@@ -0,0 +1,170 @@
+package tuomaan.pdftest;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads files with a classic cross-reference table with PDFObjectList.
+ */
+public class PDFXRefTableTest {
+
+    private static void assertHelloDocument(PDFObjectList objectList) {
+        assertFalse(objectList.wasRecovered());
+        assertEquals(1, objectList.getTrailerObj().getDictionary().get("Root").getIndirRefObjNum());
+        assertEquals("Catalog", PDFTestFile.typeOf(objectList.getObj(1)));
+        assertEquals("Pages", PDFTestFile.typeOf(objectList.getObj(2)));
+        assertEquals("Page", PDFTestFile.typeOf(objectList.getObj(3)));
+        assertEquals("Hello", PDFTestFile.firstString(objectList.getDecodedStream(4)));
+    }
+
+    @Test
+    public void singleSubsection() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xref("\r\n", 0, 5);
+        pdf.trailer("/Size 5 /Root 1 0 R").startxref(xref);
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertHelloDocument(objectList);
+        assertEquals(5, objectList.numOfObjs());
+    }
+
+    @Test
+    public void singleByteEndOfLine() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xref("\n", 0, 5);
+        pdf.trailer("/Size 5 /Root 1 0 R").startxref(xref);
+        assertHelloDocument(PDFTestFile.open(pdf.save()));
+    }
+
+    @Test
+    public void spaceAndCarriageReturnEndOfLine() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xref(" \r", 0, 5);
+        pdf.trailer("/Size 5 /Root 1 0 R").startxref(xref);
+        assertHelloDocument(PDFTestFile.open(pdf.save()));
+    }
+
+    @Test
+    public void manySubsections() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        pdf.object(9, "<< /Type /Extra >>");
+        int xref = pdf.xref("\r\n", 0, 1, 1, 3, 4, 1, 9, 1);
+        pdf.trailer("/Size 10 /Root 1 0 R").startxref(xref);
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertHelloDocument(objectList);
+        assertEquals("Extra", PDFTestFile.typeOf(objectList.getObj(9)));
+        // Objects in no subsection are empty.
+        assertEquals(PDFObject.OT_NULL, objectList.getObj(6).getObjType());
+    }
+
+    @Test
+    public void freeEntriesAreEmpty() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xref("\r\n", 0, 7);
+        pdf.trailer("/Size 7 /Root 1 0 R").startxref(xref);
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertHelloDocument(objectList);
+        assertEquals(PDFObject.OT_NULL, objectList.getObj(0).getObjType());
+        assertEquals(PDFObject.OT_NULL, objectList.getObj(5).getObjType());
+        assertEquals(PDFObject.OT_NULL, objectList.getObj(6).getObjType());
+    }
+
+    @Test
+    public void moreObjectsThanSize() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        pdf.object(5, "<< /Type /Extra >>");
+        int xref = pdf.xref("\r\n", 0, 6);
+        pdf.trailer("/Size 3 /Root 1 0 R").startxref(xref);
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertHelloDocument(objectList);
+        assertEquals(6, objectList.numOfObjs());
+        assertEquals("Extra", PDFTestFile.typeOf(objectList.getObj(5)));
+    }
+
+    @Test
+    public void incrementalUpdate() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int firstXref = pdf.xref("\r\n", 0, 5);
+        pdf.trailer("/Size 5 /Root 1 0 R").startxref(firstXref);
+        // The update changes the page and adds a new object.
+        pdf.object(3, "<< /Type /Page /Parent 2 0 R /Contents [4 0 R] /Rotate 90 >>");
+        pdf.object(5, "<< /Type /Extra >>");
+        int secondXref = pdf.xref("\r\n", 0, 1, 3, 1, 5, 1);
+        pdf.trailer("/Size 6 /Root 1 0 R /Prev " + firstXref).startxref(secondXref);
+        PDFObjectList objectList = PDFTestFile.open(pdf.save());
+        assertHelloDocument(objectList);
+        assertEquals(90, objectList.getObj(3).getDictionary().get("Rotate").getInteger());
+        assertEquals("Extra", PDFTestFile.typeOf(objectList.getObj(5)));
+    }
+
+    @Test
+    public void prevLoopEnds() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.position();
+        pdf.xref("\r\n", 0, 5);
+        pdf.trailer("/Size 5 /Root 1 0 R /Prev " + xref).startxref(xref);
+        assertHelloDocument(PDFTestFile.open(pdf.save()));
+    }
+
+    @Test
+    public void missingObjectHasNoType() throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xref("\r\n", 0, 5);
+        pdf.trailer("/Size 5 /Root 1 0 R").startxref(xref);
+        assertNull(PDFTestFile.typeOf(PDFTestFile.open(pdf.save()).getObj(42)));
+    }
+
+    /**
+     * Makes a file with the hello document and a table, changes the table, and opens the file.
+     * The objects themselves are where they were, so the file can be recovered.
+     */
+    private static PDFObjectList openWithChangedTable(String from, String to) throws IOException {
+        PDFTestFile pdf = new PDFTestFile().helloDocument();
+        int xref = pdf.xref("\r\n", 0, 5);
+        pdf.trailer("/Size 5 /Root 1 0 R").startxref(xref);
+        String text = new String(pdf.toByteArray(), StandardCharsets.ISO_8859_1);
+        int table = text.indexOf("xref\n");
+        String changed = text.substring(0, table) + text.substring(table).replaceFirst(from, to);
+        return PDFTestFile.open(PDFTestFile.save(changed.getBytes(StandardCharsets.ISO_8859_1)));
+    }
+
+    private static void assertRecovered(PDFObjectList objectList) {
+        assertTrue(objectList.wasRecovered());
+        assertEquals("Catalog", PDFTestFile.typeOf(objectList.getObj(1)));
+        assertEquals("Page", PDFTestFile.typeOf(objectList.getObj(3)));
+    }
+
+    @Test
+    public void positionWithGarbageIsBroken() throws IOException {
+        assertRecovered(openWithChangedTable("00000 n", "0x000 n"));
+    }
+
+    @Test
+    public void unknownTypeIsBroken() throws IOException {
+        assertRecovered(openWithChangedTable("00000 n", "00000 x"));
+    }
+
+    @Test
+    public void missingSeparatorIsBroken() throws IOException {
+        assertRecovered(openWithChangedTable(" 00000 n", "000000 n"));
+    }
+
+    @Test
+    public void tableCutShortIsBroken() throws IOException {
+        // The subsection says there are more entries than there are before the trailer.
+        assertRecovered(openWithChangedTable("0 5\n", "0 7\n"));
+    }
+
+    @Test
+    public void shiftedTableIsBroken() throws IOException {
+        // Two bytes have been lost from the first entry, so the rest of the entries are off.
+        assertRecovered(openWithChangedTable("0000000000 65535 f", "00000000 65535 f"));
+    }
+
+}